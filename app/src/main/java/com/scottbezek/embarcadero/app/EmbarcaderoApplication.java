@@ -5,6 +5,8 @@ import com.scottbezek.embarcadero.app.model.UserStateManager;
 
 import android.app.Application;
 
+import java.io.File;
+
 public class EmbarcaderoApplication extends Application {
 
     private DbxAccountManager mAccountManager;
@@ -16,7 +18,7 @@ public class EmbarcaderoApplication extends Application {
 
         mAccountManager = DbxAccountManager
                 .getInstance(this, DropboxApiKey.APP_KEY, DropboxApiKey.APP_SECRET);
-        mUserStateManager = new UserStateManager(mAccountManager);
+        mUserStateManager = new UserStateManager(mAccountManager, new File(getFilesDir(), "fixlogs"));
     }
 
     public DbxAccountManager getAccountManager() {
@@ -0,0 +1,176 @@
+package com.scottbezek.embarcadero.app.model;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoordReader;
+import com.scottbezek.embarcadero.app.model.data.PathListItem;
+import com.scottbezek.embarcadero.app.model.data.PathRecordFields;
+import com.scottbezek.embarcadero.app.model.data.PathStats;
+import com.scottbezek.embarcadero.app.model.store.ChangeSet;
+import com.scottbezek.embarcadero.app.model.store.StoreException;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+import com.scottbezek.embarcadero.app.model.store.StoreTable;
+import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreQuery;
+import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreWithLock;
+import com.scottbezek.embarcadero.app.util.InstrumentedReadWriteLock.Hold;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Query for the list of paths, newest first (see
+ * {@link PathListItem#sDescendingStartTimeComparator}), maintained incrementally: only the records named in a sync's
+ * change set are re-read. Path stats come from the record's stored stats where they're up to date;
+ * otherwise they're computed, and a path that was only appended to has its stats extended with
+ * just the new coordinates. Items for unchanged paths are carried over as-is.
+ */
+@ThreadSafe
+public class PathListIndex implements DatastoreQuery<List<PathListItem>> {
+
+    static final String TABLE_ID = "paths";
+
+    private static final String LOCK_CALLER = "pathListIndex";
+
+    @GuardedBy("this")
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /**
+     * The items of {@link #mEntries}, kept in the order they're returned in.
+     */
+    @GuardedBy("this")
+    private final TreeSet<PathListItem> mSortedItems = new TreeSet<>(PathListItem.sDescendingStartTimeComparator);
+
+    @GuardedBy("this")
+    private long mFullRebuildCount = 0;
+    @GuardedBy("this")
+    private long mRecordUpdateCount = 0;
+
+    @Override
+    public synchronized List<PathListItem> executeOnDatastore(DatastoreWithLock datastoreWithLock, @Nonnull ChangeSet changes) throws StoreException {
+        final Hold hold = datastoreWithLock.lockForRead(LOCK_CALLER);
+        try {
+            final StoreTable table = datastoreWithLock.getStore().getTable(TABLE_ID);
+            if (changes.isEverything()) {
+                rebuild(table);
+            } else {
+                for (String recordId : changes.getRecordIds(TABLE_ID)) {
+                    update(recordId, table.get(recordId));
+                }
+            }
+        } finally {
+            hold.release();
+        }
+
+        return Collections.unmodifiableList(new ArrayList<>(mSortedItems));
+    }
+
+    @Override
+    public boolean isAffectedBy(@Nonnull ChangeSet changes) {
+        return changes.affectsTable(TABLE_ID);
+    }
+
+    /**
+     * Number of times every record was re-read, e.g. for the first execution.
+     */
+    public synchronized long getFullRebuildCount() {
+        return mFullRebuildCount;
+    }
+
+    /**
+     * Number of individual records re-read because they changed, including during full rebuilds.
+     */
+    public synchronized long getRecordUpdateCount() {
+        return mRecordUpdateCount;
+    }
+
+    @GuardedBy("this")
+    private void rebuild(StoreTable table) throws StoreException {
+        mFullRebuildCount++;
+        final Set<String> seen = new HashSet<>();
+        for (StoreRecord record : table.query()) {
+            seen.add(record.getId());
+            update(record.getId(), record);
+        }
+        for (Iterator<Entry> it = mEntries.values().iterator(); it.hasNext(); ) {
+            final Entry entry = it.next();
+            if (!seen.contains(entry.mItem.getRecordId())) {
+                mSortedItems.remove(entry.mItem);
+                it.remove();
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void update(String recordId, @CheckForNull StoreRecord record) {
+        mRecordUpdateCount++;
+        final Entry previous = mEntries.remove(recordId);
+        if (previous != null) {
+            mSortedItems.remove(previous.mItem);
+        }
+        if (record == null || record.isDeleted()) {
+            return;
+        }
+
+        final PathStats storedStats = PathStats.readFrom(record);
+        final PathStats.Accumulator accumulator = storedStats != null ? null : extendOrRecompute(
+                previous != null ? previous.mAccumulator : null, record);
+        final PathListItem item = new PathListItem(
+                recordId,
+                record.hasField("name") ? record.getString("name") : null,
+                record.getLong(PathRecordFields.START_TIME),
+                record.hasField(PathRecordFields.STOP_TIME) ? record.getLong(PathRecordFields.STOP_TIME) : null,
+                storedStats != null ? storedStats : accumulator.toStats());
+        mEntries.put(recordId, new Entry(item, accumulator));
+        mSortedItems.add(item);
+    }
+
+    /**
+     * Extends the previous stats with the record's new coordinates if the record was only appended
+     * to since, i.e. it still has the last coordinate they included. Otherwise reads every
+     * coordinate.
+     */
+    private static PathStats.Accumulator extendOrRecompute(
+            @CheckForNull PathStats.Accumulator previous, StoreRecord record) {
+        final int count = PathCoordReader.getCount(record);
+        if (previous != null && count >= previous.getPointCount()) {
+            final int seenCount = previous.getPointCount();
+            if (seenCount == 0) {
+                previous.addAll(PathCoordReader.from(record));
+                return previous;
+            }
+            final PathCoordReader reader = PathCoordReader.from(record, seenCount - 1);
+            if (reader.moveToNext() && reader.getTime() == previous.getLastTime()) {
+                previous.addAll(reader);
+                return previous;
+            }
+        }
+        final PathStats.Accumulator accumulator = new PathStats.Accumulator();
+        accumulator.addAll(PathCoordReader.from(record));
+        return accumulator;
+    }
+
+    private static class Entry {
+
+        private final PathListItem mItem;
+        /**
+         * Only kept for paths without up to date stored stats.
+         */
+        @CheckForNull
+        private final PathStats.Accumulator mAccumulator;
+
+        Entry(PathListItem item, @CheckForNull PathStats.Accumulator accumulator) {
+            mItem = item;
+            mAccumulator = accumulator;
+        }
+    }
+}
@@ -1,34 +1,61 @@
 package com.scottbezek.embarcadero.app.model;
 
 import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
 
-import com.dropbox.sync.android.DbxDatastore;
-import com.dropbox.sync.android.DbxException;
-import com.dropbox.sync.android.DbxFields;
-import com.dropbox.sync.android.DbxRecord;
-import com.dropbox.sync.android.DbxTable;
-import com.dropbox.sync.android.DbxTable.QueryResult;
+import com.scottbezek.embarcadero.app.model.data.FixLog;
 import com.scottbezek.embarcadero.app.model.data.PathCoord;
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.data.PathCoordReader;
+import com.scottbezek.embarcadero.app.model.data.PathCoordUpdate;
+import com.scottbezek.embarcadero.app.model.data.PathCoordWriter;
 import com.scottbezek.embarcadero.app.model.data.PathListItem;
+import com.scottbezek.embarcadero.app.model.data.PathRecordFields;
+import com.scottbezek.embarcadero.app.model.data.PathRecordMigrator;
+import com.scottbezek.embarcadero.app.model.data.PathStats;
+import com.scottbezek.embarcadero.app.model.export.PathExportFormat;
+import com.scottbezek.embarcadero.app.model.export.PathExportWriter;
+import com.scottbezek.embarcadero.app.model.location.LocationFilter;
+import com.scottbezek.embarcadero.app.model.location.LocationFilterChain;
 import com.scottbezek.embarcadero.app.model.location.LocationUpdateProvider;
 import com.scottbezek.embarcadero.app.model.location.LocationUpdateQueue;
+import com.scottbezek.embarcadero.app.model.store.ChangeSet;
+import com.scottbezek.embarcadero.app.model.store.Store;
+import com.scottbezek.embarcadero.app.model.store.StoreException;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+import com.scottbezek.embarcadero.app.model.store.StoreTable;
+import com.scottbezek.embarcadero.app.util.CoalescingRunner;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils.AutoSyncingDatastoreWithLock;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils.DataStream;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreQuery;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreRowQuery;
-import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreTableQuery;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreWithLock;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreWithLock.OnSyncListener;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils.QueryLoader;
+import com.scottbezek.embarcadero.app.util.InstrumentedReadWriteLock.Hold;
 import com.scottbezek.embarcadero.app.util.RefCountedObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.Immutable;
 
 import rx.Observable;
@@ -36,6 +63,8 @@ import rx.Scheduler;
 import rx.Scheduler.Worker;
 import rx.Subscriber;
 import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.functions.Func1;
 import rx.subjects.BehaviorSubject;
 import rx.subscriptions.Subscriptions;
 
@@ -43,14 +72,74 @@ import rx.subscriptions.Subscriptions;
  */
 public class PathManager {
 
+    private static final String TAG = PathManager.class.getName();
+
+    private static final String LOCK_CALLER_RECORDING = "recording";
+    private static final String LOCK_CALLER_MIGRATION = "migration";
+    private static final String LOCK_CALLER_BACKFILL = "statsBackfill";
+    private static final String LOCK_CALLER_FIX_LOG_REPLAY = "fixLogReplay";
+    private static final String LOCK_CALLER_EXPORT = "export";
+
+    /**
+     * Coordinates read under each hold while exporting. The output stream is only written to between
+     * holds, so however slow it is, a recording never waits longer than it takes to read this many.
+     */
+    private static final int EXPORT_COORDS_PER_HOLD = 4096;
+
+    private static final int BACKFILL_BATCH_SIZE = 20;
+
+    /**
+     * Most location updates applied under one hold of the write lock, so that catching up after a
+     * stall doesn't hold it for too long.
+     */
+    private static final int MAX_RECORDING_BATCH_SIZE = 100;
+
+    private static final int MAX_IDLE_CACHED_QUERIES = 8;
+
+    private static final String FIX_LOG_SUFFIX = ".fixlog";
+    private static final int FIX_LOG_MAX_UNFORCED_FIXES = 10;
+    private static final long FIX_LOG_MAX_UNFORCED_MILLIS = 5 * 1000;
+
     private final RefCountedObject<AutoSyncingDatastoreWithLock> mDatastoreRef;
+    private final File mFixLogDir;
+
+    /**
+     * Ids of the paths whose fix logs are in use, either by a recording or being replayed.
+     */
+    @GuardedBy("mClaimedFixLogs")
+    private final Set<String> mClaimedFixLogs = new HashSet<>();
+
+    /**
+     * Runs recordings, one at a time. Recordings don't belong to any UI, so they carry on (holding
+     * their reference to the datastore) when it goes away.
+     */
+    private final ExecutorService mRecordingExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            return new Thread(runnable, "PathRecorder");
+        }
+    });
 
-    private Thread mPathRecordThread = null;
-    private final AtomicBoolean mShouldStopPathRecording = new AtomicBoolean();
+    private final Object mRecordingLock = new Object();
+    @GuardedBy("mRecordingLock")
+    @CheckForNull
+    private Future<?> mRecording = null;
+    @GuardedBy("mRecordingLock")
+    @CheckForNull
+    private AtomicBoolean mStopRequested = null;
     private final BehaviorSubject<RecordingState> mRecordingStateSubject = BehaviorSubject.create(new RecordingState(false, null));
+    private final RecordingStats mRecordingStats = new RecordingStats();
+    private final QueryCache mQueryCache;
+    private final PathListIndex mPathListIndex = new PathListIndex();
 
-    public PathManager(@Nonnull RefCountedObject<AutoSyncingDatastoreWithLock> datastoreRef) {
+    /**
+     * @param fixLogDir where fixes are logged while recording, until they're synced
+     */
+    public PathManager(@Nonnull RefCountedObject<AutoSyncingDatastoreWithLock> datastoreRef,
+            @Nonnull File fixLogDir) {
         mDatastoreRef = datastoreRef;
+        mFixLogDir = fixLogDir;
+        mQueryCache = new QueryCache(datastoreRef, MAX_IDLE_CACHED_QUERIES);
     }
 
     @Immutable
@@ -76,56 +165,184 @@ public class PathManager {
         }
     }
 
-    public void startRecording(final LocationUpdateProvider locationProvider) {
-        if (mPathRecordThread != null) {
-            throw new IllegalStateException("Already recording!");
+    public void startRecording(LocationUpdateProvider locationProvider) {
+        startRecording(locationProvider, SyncPolicy.DEFAULT);
+    }
+
+    /**
+     * Start recording a new path.
+     *
+     * @param locationProvider source of location updates to record
+     * @param syncPolicy how often newly recorded locations are synced to the datastore
+     */
+    public void startRecording(LocationUpdateProvider locationProvider, SyncPolicy syncPolicy) {
+        startRecording(locationProvider, syncPolicy, LocationFilter.DEFAULT);
+    }
+
+    /**
+     * Start recording a new path.
+     *
+     * @param locationProvider source of location updates to record
+     * @param syncPolicy how often newly recorded locations are synced to the datastore
+     * @param locationFilters rules deciding which location updates are recorded, applied in order
+     */
+    public void startRecording(LocationUpdateProvider locationProvider, SyncPolicy syncPolicy,
+            List<? extends LocationFilter> locationFilters) {
+        record(null, locationProvider, syncPolicy, locationFilters);
+    }
+
+    public void resumeRecording(@Nonnull String pathRecordId, LocationUpdateProvider locationProvider) {
+        resumeRecording(pathRecordId, locationProvider, SyncPolicy.DEFAULT, LocationFilter.DEFAULT);
+    }
+
+    /**
+     * Continue recording a path whose recording was cut short, e.g. by the process dying. Any
+     * fixes left in the path's fix log are added first, and the path's stop time is cleared.
+     *
+     * @param pathRecordId the path to append to
+     * @param locationProvider source of location updates to record
+     * @param syncPolicy how often newly recorded locations are synced to the datastore
+     * @param locationFilters rules deciding which location updates are recorded, applied in order
+     */
+    public void resumeRecording(@Nonnull String pathRecordId, LocationUpdateProvider locationProvider,
+            SyncPolicy syncPolicy, List<? extends LocationFilter> locationFilters) {
+        record(pathRecordId, locationProvider, syncPolicy, locationFilters);
+    }
+
+    public boolean isRecording() {
+        synchronized (mRecordingLock) {
+            return mRecording != null;
         }
-        mRecordingStateSubject.onNext(new RecordingState(true, null));
-        mShouldStopPathRecording.set(false);
-        mPathRecordThread = new ThreadWithDatastore(mDatastoreRef) {
+    }
+
+    private void record(@CheckForNull final String resumePathRecordId,
+            final LocationUpdateProvider locationProvider, final SyncPolicy syncPolicy,
+            final List<? extends LocationFilter> locationFilters) {
+        final AtomicBoolean stopRequested = new AtomicBoolean();
+        final TaskWithDatastore recording = new TaskWithDatastore(mDatastoreRef) {
             @Override
             protected void runWithDatastore(DatastoreWithLock datastoreWithLock) {
-                final DbxDatastore datastore = datastoreWithLock.getDatastore();
-                final Object datastoreLock = datastoreWithLock.getLock();
-                final DbxTable pathsTable = datastore.getTable("paths");
+                // Waits for the log to finish replaying, if it's being replayed. Only fails if the
+                // recording was stopped in the meantime.
+                if (resumePathRecordId != null && !claimFixLog(resumePathRecordId, true)) {
+                    return;
+                }
+                final Store store = datastoreWithLock.getStore();
+                final StoreTable pathsTable = store.getTable("paths");
                 final LocationUpdateQueue locationUpdateQueue = new LocationUpdateQueue(locationProvider);
+                final LocationFilterChain filterChain = new LocationFilterChain(locationFilters);
 
                 final Location lastLocation = locationProvider.getLastLocation();
 
                 final PathRecordWriter pathWriter;
-                synchronized (datastoreLock) {
-                    DbxRecord pathRecord = pathsTable.insert();
-                    pathWriter = new PathRecordWriter(pathRecord);
-                    pathWriter.setStartTime(System.currentTimeMillis());
-
-                    // If we know our current location, add it immediately so the path starts with at least one coord
-                    if (lastLocation != null) {
-                        // TODO(sbezek): ignore if last location is too old?
+                // Fixes are logged before they're added to the datastore, and marked as applied once
+                // synced, so they can be replayed if the process dies in between
+                FixLog fixLog;
+                final String pathRecordId;
+                final Hold startHold = datastoreWithLock.lockForWrite(LOCK_CALLER_RECORDING);
+                try {
+                    final StoreRecord pathRecord;
+                    if (resumePathRecordId == null) {
+                        pathRecord = pathsTable.insert();
+                        claimFixLog(pathRecord.getId(), false);
+                        fixLog = createFixLog(pathRecord.getId());
+                        pathWriter = new PathRecordWriter(pathRecord);
+                        pathWriter.setStartTime(System.currentTimeMillis());
+                    } else {
+                        pathRecord = getResumableRecord(pathsTable, resumePathRecordId);
+                        if (pathRecord == null) {
+                            releaseFixLog(resumePathRecordId);
+                            return;
+                        }
+                        fixLog = reopenFixLog(pathRecord);
+                        pathRecord.deleteField(PathRecordFields.STOP_TIME);
+                        pathWriter = new PathRecordWriter(pathRecord);
+                    }
+                    pathRecordId = pathRecord.getId();
+
+                    // If we know our current location, add it immediately so the path starts with at
+                    // least one coord, unless it's too old or the filters reject it
+                    if (lastLocation != null && LocationFilter.LAST_KNOWN_MAX_AGE.accept(lastLocation, null)
+                            && filterChain.accept(lastLocation)) {
+                        fixLog = appendToFixLog(fixLog, Collections.singletonList(lastLocation));
                         pathWriter.addLocation(lastLocation);
+                        mRecordingStats.onFixesRecorded(1);
                     }
 
                     if (!DatastoreUtils.syncQuietly(datastoreWithLock)) {
+                        closeFixLog(fixLog);
+                        releaseFixLog(pathRecordId);
                         return;
                     }
+                    mRecordingStats.onSynced();
+                    markFixLogApplied(fixLog);
                     mRecordingStateSubject.onNext(new RecordingState(true, pathRecord.getId()));
+                } finally {
+                    startHold.release();
                 }
                 locationUpdateQueue.enableProducer();
 
-                // TODO(sbezek): maybe want to split out a "resumeRecording" method for Service restarts following process death?
-                // TODO(sbezek): Aquire wakelocks, start services, and all that jazz!
-
-                // Pull Location updates from the queue and apply them to the PathRecordWriter
-                while (true){
+                // Pull batches of Location updates from the queue and apply them to the
+                // PathRecordWriter, syncing only as often as the SyncPolicy requires
+                final List<Location> batch = new ArrayList<>();
+                Location lastSyncedLocation = filterChain.getLastAccepted();
+                Location lastAddedLocation = lastSyncedLocation;
+                int pendingFixes = 0;
+                long firstPendingTime = 0;
+                float pendingDistance = 0;
+                while (true) {
                     try {
-                        Location updatedLocation = locationUpdateQueue.take();
-                        synchronized (datastoreLock) {
-                            pathWriter.addLocation(updatedLocation);
-                            if (!DatastoreUtils.syncQuietly(datastoreWithLock)) {
-                                break;
+                        final Location updatedLocation;
+                        if (pendingFixes == 0 || syncPolicy.getMaxPendingMillis() == 0) {
+                            updatedLocation = locationUpdateQueue.take();
+                        } else {
+                            final long waitMillis = firstPendingTime + syncPolicy.getMaxPendingMillis()
+                                    - SystemClock.elapsedRealtime();
+                            updatedLocation = locationUpdateQueue.poll(Math.max(waitMillis, 0), TimeUnit.MILLISECONDS);
+                        }
+
+                        batch.clear();
+                        if (updatedLocation != null) {
+                            batch.add(updatedLocation);
+                            locationUpdateQueue.drainTo(batch, MAX_RECORDING_BATCH_SIZE - 1);
+                            filterChain.filter(batch);
+                            fixLog = appendToFixLog(fixLog, batch);
+                        }
+                        final Hold batchHold = datastoreWithLock.lockForWrite(LOCK_CALLER_RECORDING);
+                        try {
+                            pathWriter.addLocations(batch);
+                            mRecordingStats.onFixesRecorded(batch.size());
+
+                            if (pendingFixes == 0 && !batch.isEmpty()) {
+                                firstPendingTime = SystemClock.elapsedRealtime();
+                            }
+                            pendingFixes += batch.size();
+                            for (Location location : batch) {
+                                if (lastSyncedLocation != null) {
+                                    pendingDistance = Math.max(pendingDistance, lastSyncedLocation.distanceTo(location));
+                                }
+                                lastAddedLocation = location;
+                            }
+
+                            final long pendingMillis = SystemClock.elapsedRealtime() - firstPendingTime;
+                            if (syncPolicy.isSyncDue(pendingFixes, pendingMillis, pendingDistance)) {
+                                if (!DatastoreUtils.syncQuietly(datastoreWithLock)) {
+                                    break;
+                                }
+                                mRecordingStats.onSynced();
+                                mRecordingStats.onSyncsAvoided(Math.max(batch.size() - 1, 0));
+                                markFixLogApplied(fixLog);
+                                lastSyncedLocation = lastAddedLocation;
+                                pendingFixes = 0;
+                                pendingDistance = 0;
+                            } else {
+                                mRecordingStats.onSyncsAvoided(batch.size());
                             }
+                        } finally {
+                            batchHold.release();
                         }
                     } catch (InterruptedException e) {
-                        if (mShouldStopPathRecording.get()) {
+                        if (stopRequested.get()) {
                             // We were requested to stop, so shut down cleanly
                             break;
                         } else {
@@ -136,34 +353,575 @@ public class PathManager {
                 }
 
                 locationUpdateQueue.disableProducer();
-                synchronized (datastoreLock) {
+
+                // Flush anything still queued or pending along with the stop time
+                batch.clear();
+                locationUpdateQueue.drainTo(batch);
+                filterChain.filter(batch);
+                fixLog = appendToFixLog(fixLog, batch);
+                final Hold stopHold = datastoreWithLock.lockForWrite(LOCK_CALLER_RECORDING);
+                try {
+                    pathWriter.addLocations(batch);
+                    mRecordingStats.onFixesRecorded(batch.size());
                     pathWriter.setStopTime(System.currentTimeMillis());
-                    DatastoreUtils.syncQuietly(datastoreWithLock);
+                    if (DatastoreUtils.syncQuietly(datastoreWithLock)) {
+                        mRecordingStats.onSynced();
+                        deleteFixLog(fixLog);
+                    } else {
+                        // Leave the log to be replayed later
+                        closeFixLog(fixLog);
+                    }
+                } finally {
+                    stopHold.release();
+                    releaseFixLog(pathRecordId);
                 }
+                Log.d(TAG, "Finished recording: " + mRecordingStats);
+                Log.d(TAG, "Location filter stats: " + filterChain);
+                Log.d(TAG, "Location queue stats: " + locationUpdateQueue.getQueueStats()
+                        + ", coalesced=" + locationUpdateQueue.getCoalescedCount());
+                Log.d(TAG, "Datastore lock stats: " + datastoreWithLock.getLockStats());
+                Log.d(TAG, "Datastore query stats: " + datastoreWithLock.getQueryStats());
+                Log.d(TAG, "Datastore sync stats: " + datastoreWithLock.getSyncStats());
             }
         };
-        mPathRecordThread.start();
+
+        synchronized (mRecordingLock) {
+            if (mRecording != null) {
+                throw new IllegalStateException("Already recording!");
+            }
+            mRecordingStateSubject.onNext(new RecordingState(true, resumePathRecordId));
+            mStopRequested = stopRequested;
+            mRecording = mRecordingExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        recording.run();
+                    } catch (Throwable t) {
+                        Log.e(TAG, "Recording failed", t);
+                    } finally {
+                        onRecordingEnded(stopRequested);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Called whenever a recording task finishes, whether because it was stopped, it gave up (e.g.
+     * on a failed sync) or it threw.
+     */
+    private void onRecordingEnded(AtomicBoolean stopRequested) {
+        synchronized (mRecordingLock) {
+            // Already cleared up if it was stopped, and there may be a newer recording by now
+            if (mStopRequested != stopRequested) {
+                return;
+            }
+            mRecording = null;
+            mStopRequested = null;
+            mRecordingStateSubject.onNext(new RecordingState(false, null));
+        }
+    }
+
+    /**
+     * Returns the path record to resume recording to, or null if it's gone.
+     */
+    @CheckForNull
+    private static StoreRecord getResumableRecord(StoreTable pathsTable, String pathRecordId) {
+        try {
+            final StoreRecord record = pathsTable.get(pathRecordId);
+            if (record == null || record.isDeleted()) {
+                Log.w(TAG, "Path " + pathRecordId + " no longer exists, not resuming");
+                return null;
+            }
+            return record;
+        } catch (StoreException e) {
+            Log.w(TAG, "Unable to read path " + pathRecordId + ", not resuming", e);
+            return null;
+        }
+    }
+
+    /**
+     * Claims the path's fix log, so that it's not replayed while it's being recorded to, or by two
+     * threads at once.
+     *
+     * @param wait whether to wait for the log to be released if it's already claimed
+     * @return false if the log was already claimed and <code>wait</code> was false
+     */
+    private boolean claimFixLog(String pathRecordId, boolean wait) {
+        synchronized (mClaimedFixLogs) {
+            while (mClaimedFixLogs.contains(pathRecordId)) {
+                if (!wait) {
+                    return false;
+                }
+                try {
+                    mClaimedFixLogs.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            mClaimedFixLogs.add(pathRecordId);
+            return true;
+        }
+    }
+
+    private void releaseFixLog(String pathRecordId) {
+        synchronized (mClaimedFixLogs) {
+            mClaimedFixLogs.remove(pathRecordId);
+            mClaimedFixLogs.notifyAll();
+        }
+    }
+
+    private File getFixLogFile(String pathRecordId) {
+        return new File(mFixLogDir, pathRecordId + FIX_LOG_SUFFIX);
+    }
+
+    /**
+     * Returns a new fix log for the path, or null if one couldn't be created, in which case the
+     * path is recorded without one.
+     */
+    @CheckForNull
+    private FixLog createFixLog(String pathRecordId) {
+        if (!mFixLogDir.isDirectory() && !mFixLogDir.mkdirs()) {
+            Log.w(TAG, "Unable to create " + mFixLogDir + ", recording without a fix log");
+            return null;
+        }
+        try {
+            return FixLog.create(getFixLogFile(pathRecordId), FIX_LOG_MAX_UNFORCED_FIXES,
+                    FIX_LOG_MAX_UNFORCED_MILLIS);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to create fix log, recording without one", e);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the fix log left by the path's previous recording and adds any fixes from it that
+     * weren't synced, or creates a new log if there isn't one. Must hold the write lock.
+     */
+    @CheckForNull
+    private FixLog reopenFixLog(StoreRecord pathRecord) {
+        final File file = getFixLogFile(pathRecord.getId());
+        if (!file.exists()) {
+            return createFixLog(pathRecord.getId());
+        }
+        final FixLog fixLog;
+        try {
+            fixLog = FixLog.open(file, FIX_LOG_MAX_UNFORCED_FIXES, FIX_LOG_MAX_UNFORCED_MILLIS);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to open fix log " + file + ", starting a new one", e);
+            return createFixLog(pathRecord.getId());
+        }
+        final int replayed = addUnappliedFixes(pathRecord, fixLog);
+        Log.d(TAG, "Resuming " + pathRecord.getId() + " with " + replayed + " fixes from its log");
+        return fixLog;
+    }
+
+    /**
+     * Appends the fixes in the log that haven't been synced yet to the path, and updates its stats.
+     * Must hold the write lock.
+     * <p>
+     * Fixes are only marked as applied after the sync that added them, so if the process died in
+     * between (or the applied count never reached the disk), some of the "unapplied" fixes are
+     * already in the path. Recorded fixes have strictly increasing times (see
+     * {@link LocationFilter.IncreasingTime}), so those are the ones no later than the path's last
+     * coordinate, and are skipped.
+     *
+     * @return the number of fixes added
+     */
+    private static int addUnappliedFixes(StoreRecord pathRecord, FixLog fixLog) {
+        final List<PathCoord> coords = fixLog.readUnapplied();
+        if (coords.isEmpty()) {
+            return 0;
+        }
+        final long lastTime = getLastCoordTime(pathRecord);
+        final PathCoordWriter writer = new PathCoordWriter(pathRecord);
+        int added = 0;
+        for (PathCoord coord : coords) {
+            if (coord.getTime() <= lastTime) {
+                continue;
+            }
+            writer.add(coord.getTime(), coord.getLatitude(), coord.getLongitude(),
+                    coord.getAccuracy(), coord.getAltitude());
+            added++;
+        }
+        if (added == 0) {
+            return 0;
+        }
+        writer.flush();
+        PathStats.compute(pathRecord).writeTo(pathRecord);
+        return added;
+    }
+
+    /**
+     * Returns the time of the path's last coordinate, or {@link Long#MIN_VALUE} if it has none.
+     */
+    private static long getLastCoordTime(StoreRecord pathRecord) {
+        final int count = PathCoordReader.getCount(pathRecord);
+        if (count == 0) {
+            return Long.MIN_VALUE;
+        }
+        final PathCoordReader reader = PathCoordReader.from(pathRecord, count - 1);
+        return reader.moveToNext() ? reader.getTime() : Long.MIN_VALUE;
+    }
+
+    /**
+     * Appends the locations to the fix log. If that fails, the log is deleted (it would otherwise
+     * be replayed with fixes missing) and null is returned so the rest of the path is recorded
+     * without one.
+     */
+    @CheckForNull
+    private static FixLog appendToFixLog(@CheckForNull FixLog fixLog, List<Location> locations) {
+        if (fixLog == null) {
+            return null;
+        }
+        try {
+            for (Location location : locations) {
+                fixLog.append(location.getTime(), location.getLatitude(), location.getLongitude(),
+                        location.getAccuracy(), location.getAltitude());
+            }
+            return fixLog;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write fix log, continuing without one", e);
+            deleteFixLog(fixLog);
+            return null;
+        }
+    }
+
+    private static void markFixLogApplied(@CheckForNull FixLog fixLog) {
+        if (fixLog != null) {
+            fixLog.markApplied(fixLog.getWrittenCount());
+        }
+    }
+
+    private static void closeFixLog(@CheckForNull FixLog fixLog) {
+        if (fixLog == null) {
+            return;
+        }
+        try {
+            fixLog.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to close fix log", e);
+        }
+    }
+
+    private static void deleteFixLog(@CheckForNull FixLog fixLog) {
+        if (fixLog == null) {
+            return;
+        }
+        try {
+            fixLog.delete();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to delete fix log", e);
+        }
     }
 
     public void stopRecording() {
-        if (mPathRecordThread == null) {
-            throw new IllegalStateException("Not recording");
+        synchronized (mRecordingLock) {
+            if (mRecording == null || mStopRequested == null) {
+                throw new IllegalStateException("Not recording");
+            }
+            mStopRequested.set(true);
+            mRecordingStateSubject.onNext(new RecordingState(false, null));
+            mRecording.cancel(true);
+
+            mRecording = null;
+            mStopRequested = null;
+        }
+    }
+
+    /**
+     * Converts any paths still stored in the legacy coordinate format to the chunked format, on a
+     * background thread. Each path is synced as soon as it has been migrated.
+     */
+    public void migrateLegacyPaths() {
+        new Thread(new TaskWithDatastore(mDatastoreRef) {
+            @Override
+            protected void runWithDatastore(DatastoreWithLock datastoreWithLock) {
+                final List<StoreRecord> legacyRecords = new ArrayList<>();
+                final Hold queryHold = datastoreWithLock.lockForRead(LOCK_CALLER_MIGRATION);
+                try {
+                    for (StoreRecord record : datastoreWithLock.getStore().getTable("paths").query()) {
+                        if (PathRecordMigrator.needsMigration(record)) {
+                            legacyRecords.add(record);
+                        }
+                    }
+                } catch (StoreException e) {
+                    Log.w(TAG, "Unable to query paths for migration", e);
+                    return;
+                } finally {
+                    queryHold.release();
+                }
+
+                for (StoreRecord record : legacyRecords) {
+                    final Hold migrateHold = datastoreWithLock.lockForWrite(LOCK_CALLER_MIGRATION);
+                    try {
+                        if (record.isDeleted()) {
+                            continue;
+                        }
+                        PathRecordMigrator.migrate(record);
+                        if (!DatastoreUtils.syncQuietly(datastoreWithLock)) {
+                            return;
+                        }
+                    } finally {
+                        migrateHold.release();
+                    }
+                }
+                Log.d(TAG, "Migrated " + legacyRecords.size() + " legacy paths");
+            }
+        }).start();
+    }
+
+    /**
+     * Computes and stores {@link PathStats} for any paths recorded before stats were kept, on a
+     * background thread. Paths are processed and synced in batches.
+     */
+    public void backfillPathStats() {
+        new Thread(new TaskWithDatastore(mDatastoreRef) {
+            @Override
+            protected void runWithDatastore(DatastoreWithLock datastoreWithLock) {
+                final List<StoreRecord> staleRecords = new ArrayList<>();
+                final Hold queryHold = datastoreWithLock.lockForRead(LOCK_CALLER_BACKFILL);
+                try {
+                    for (StoreRecord record : datastoreWithLock.getStore().getTable("paths").query()) {
+                        if (PathStats.readFrom(record) == null) {
+                            staleRecords.add(record);
+                        }
+                    }
+                } catch (StoreException e) {
+                    Log.w(TAG, "Unable to query paths for stats backfill", e);
+                    return;
+                } finally {
+                    queryHold.release();
+                }
+
+                for (int start = 0; start < staleRecords.size(); start += BACKFILL_BATCH_SIZE) {
+                    final int end = Math.min(start + BACKFILL_BATCH_SIZE, staleRecords.size());
+                    final Hold backfillHold = datastoreWithLock.lockForWrite(LOCK_CALLER_BACKFILL);
+                    try {
+                        for (StoreRecord record : staleRecords.subList(start, end)) {
+                            // Skip paths deleted, or recorded to, since the query
+                            if (!record.isDeleted() && PathStats.readFrom(record) == null) {
+                                PathStats.compute(record).writeTo(record);
+                            }
+                        }
+                        if (!DatastoreUtils.syncQuietly(datastoreWithLock)) {
+                            return;
+                        }
+                    } finally {
+                        backfillHold.release();
+                    }
+                }
+                Log.d(TAG, "Backfilled stats for " + staleRecords.size() + " paths");
+            }
+        }).start();
+    }
+
+    /**
+     * Adds any fixes left in fix logs to their paths, on a background thread. Logs are only left
+     * behind if the process died while recording (or a path's final sync failed), so paths without
+     * a stop time are also stopped at their last fix.
+     */
+    public void replayFixLogs() {
+        final File[] files = mFixLogDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        new Thread(new TaskWithDatastore(mDatastoreRef) {
+            @Override
+            protected void runWithDatastore(DatastoreWithLock datastoreWithLock) {
+                for (File file : files) {
+                    final String name = file.getName();
+                    if (!name.endsWith(FIX_LOG_SUFFIX)) {
+                        continue;
+                    }
+                    final String pathRecordId = name.substring(0, name.length() - FIX_LOG_SUFFIX.length());
+                    if (!claimFixLog(pathRecordId, false)) {
+                        // Being recorded to
+                        continue;
+                    }
+                    try {
+                        // The log may have been finished with by a recording since it was listed
+                        if (!file.exists()) {
+                            continue;
+                        }
+                        final FixLog fixLog;
+                        try {
+                            fixLog = FixLog.open(file, FIX_LOG_MAX_UNFORCED_FIXES, FIX_LOG_MAX_UNFORCED_MILLIS);
+                        } catch (IOException e) {
+                            Log.w(TAG, "Unable to open fix log " + file + ", discarding it", e);
+                            file.delete();
+                            continue;
+                        }
+                        if (!replayFixLog(datastoreWithLock, pathRecordId, fixLog)) {
+                            closeFixLog(fixLog);
+                            return;
+                        }
+                    } finally {
+                        releaseFixLog(pathRecordId);
+                    }
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * @return false if the datastore couldn't be synced, in which case the log is left as it was
+     */
+    private static boolean replayFixLog(DatastoreWithLock datastoreWithLock, String pathRecordId,
+            FixLog fixLog) {
+        final Hold hold = datastoreWithLock.lockForWrite(LOCK_CALLER_FIX_LOG_REPLAY);
+        try {
+            final StoreRecord record = datastoreWithLock.getStore().getTable("paths").get(pathRecordId);
+            if (record == null || record.isDeleted()) {
+                deleteFixLog(fixLog);
+                return true;
+            }
+            final int replayed = addUnappliedFixes(record, fixLog);
+            if (!record.hasField(PathRecordFields.STOP_TIME)) {
+                final PathStats stats = PathStats.readFrom(record);
+                record.set(PathRecordFields.STOP_TIME, stats != null && stats.getPointCount() > 0
+                        ? stats.getLastTimeMillis() : record.getLong(PathRecordFields.START_TIME));
+            }
+            if (!DatastoreUtils.syncQuietly(datastoreWithLock)) {
+                return false;
+            }
+            Log.d(TAG, "Replayed " + replayed + " fixes into " + pathRecordId);
+            deleteFixLog(fixLog);
+            return true;
+        } catch (StoreException e) {
+            Log.w(TAG, "Unable to replay fix log for " + pathRecordId, e);
+            closeFixLog(fixLog);
+            return true;
+        } finally {
+            hold.release();
+        }
+    }
+
+    /**
+     * Writes a path to the stream in the given format, then closes the stream (even on failure).
+     * Blocks until it's written, so call it from a background thread.
+     */
+    public void exportPath(@Nonnull String pathRecordId, @Nonnull PathExportFormat format,
+            @Nonnull OutputStream out) throws IOException {
+        exportPaths(Collections.singletonList(pathRecordId), format, out);
+    }
+
+    /**
+     * Writes every path to the stream in the given format, like {@link #exportPath}.
+     */
+    public void exportAllPaths(@Nonnull PathExportFormat format, @Nonnull OutputStream out) throws IOException {
+        exportPaths(null, format, out);
+    }
+
+    private void exportPaths(@CheckForNull List<String> pathRecordIds, @Nonnull PathExportFormat format,
+            @Nonnull OutputStream out) throws IOException {
+        final DatastoreWithLock datastoreWithLock = mDatastoreRef.acquire();
+        boolean closed = false;
+        try {
+            final StoreTable pathsTable = datastoreWithLock.getStore().getTable("paths");
+            final boolean allPaths = pathRecordIds == null;
+            if (allPaths) {
+                pathRecordIds = new ArrayList<>();
+                final Hold queryHold = datastoreWithLock.lockForRead(LOCK_CALLER_EXPORT);
+                try {
+                    for (StoreRecord record : pathsTable.query()) {
+                        pathRecordIds.add(record.getId());
+                    }
+                } catch (StoreException e) {
+                    throw new IOException("Unable to query paths for export", e);
+                } finally {
+                    queryHold.release();
+                }
+            }
+
+            final PathExportWriter writer = PathExportWriter.create(format, out);
+            for (String pathRecordId : pathRecordIds) {
+                final long startTime;
+                final long stopTime;
+                final Hold hold = datastoreWithLock.lockForRead(LOCK_CALLER_EXPORT);
+                try {
+                    final StoreRecord record = pathsTable.get(pathRecordId);
+                    if (record == null || record.isDeleted()) {
+                        if (allPaths) {
+                            // Deleted since the query
+                            continue;
+                        }
+                        throw new IOException("No path " + pathRecordId);
+                    }
+                    startTime = record.getLong(PathRecordFields.START_TIME);
+                    stopTime = record.hasField(PathRecordFields.STOP_TIME)
+                            ? record.getLong(PathRecordFields.STOP_TIME) : -1;
+                } catch (StoreException e) {
+                    throw new IOException("Unable to read path " + pathRecordId, e);
+                } finally {
+                    hold.release();
+                }
+                // The coordinates are read a batch at a time under holds of their own, so that
+                // writing them out never keeps a recording from writing
+                writer.writePath(pathRecordId, startTime, stopTime,
+                        new ExportCoordSource(datastoreWithLock, pathsTable, pathRecordId));
+            }
+            writer.close();
+            closed = true;
+            Log.d(TAG, "Exported " + writer.getPathCount() + " paths, " + writer.getPointCount()
+                    + " points as " + format);
+        } finally {
+            if (!closed) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to close export stream", e);
+                }
+            }
+            mDatastoreRef.release(datastoreWithLock);
         }
-        mShouldStopPathRecording.set(true);
-        mRecordingStateSubject.onNext(new RecordingState(false, null));
-        mPathRecordThread.interrupt();
+    }
+
+    /**
+     * Reads a path's coordinates for export, taking a read hold for each batch.
+     */
+    private static class ExportCoordSource implements PathExportWriter.CoordSource {
 
-        mPathRecordThread = null;
+        private final DatastoreWithLock mDatastoreWithLock;
+        private final StoreTable mPathsTable;
+        private final String mPathRecordId;
+
+        ExportCoordSource(DatastoreWithLock datastoreWithLock, StoreTable pathsTable, String pathRecordId) {
+            mDatastoreWithLock = datastoreWithLock;
+            mPathsTable = pathsTable;
+            mPathRecordId = pathRecordId;
+        }
+
+        @Nonnull
+        @Override
+        public PathCoordBuffer read(int startIndex) throws IOException {
+            final Hold hold = mDatastoreWithLock.lockForRead(LOCK_CALLER_EXPORT);
+            try {
+                // Fetched afresh every time, since the path may have changed between holds
+                final StoreRecord record = mPathsTable.get(mPathRecordId);
+                if (record == null || record.isDeleted()) {
+                    Log.w(TAG, "Path " + mPathRecordId + " deleted while exporting, after "
+                            + startIndex + " points");
+                    return PathCoordBuffer.EMPTY;
+                }
+                return PathExportWriter.readCoords(record, startIndex, EXPORT_COORDS_PER_HOLD);
+            } catch (StoreException e) {
+                throw new IOException("Unable to read path " + mPathRecordId, e);
+            } finally {
+                hold.release();
+            }
+        }
     }
 
     /**
-     * Helper for running something in a background thread while holding a reference to the datastore.
+     * Helper for running something in the background while holding a reference to the datastore.
      */
-    private static abstract class ThreadWithDatastore extends Thread {
+    private static abstract class TaskWithDatastore implements Runnable {
 
         private final RefCountedObject<? extends DatastoreWithLock> mDatastoreRef;
 
-        public ThreadWithDatastore(RefCountedObject<? extends DatastoreWithLock> datastoreRef) {
+        public TaskWithDatastore(RefCountedObject<? extends DatastoreWithLock> datastoreRef) {
             mDatastoreRef = datastoreRef;
         }
 
@@ -180,55 +938,122 @@ public class PathManager {
         protected abstract void runWithDatastore(DatastoreWithLock datastore);
     }
 
-    private static final DatastoreQuery<List<PathListItem>> PATH_LIST_QUERY =
-            new DatastoreTableQuery<List<PathListItem>>("paths", new DbxFields()) {
+    /**
+     * Query that reads only the coordinates appended since its previous execution. Holds a cursor,
+     * so each instance must only be shared through the {@link QueryCache}.
+     */
+    private static class IncrementalPathCoordsQuery extends DatastoreRowQuery<PathCoordUpdate> {
+
+        @CheckForNull
+        private PathCoordBuffer mLastCoords = null;
+
+        public IncrementalPathCoordsQuery(String pathRecordId) {
+            super("paths", pathRecordId);
+        }
+
         @Override
-        public List<PathListItem> createImmutableSnapshot(QueryResult queryResult) {
-            List<PathListItem> result = new ArrayList<>();
-            for (DbxRecord record : queryResult) {
-                final PathListItem item = new PathListItem(
-                        record.getId(),
-                        record.hasField("name") ? record.getString("name") : null,
-                        record.getLong("start_time"),
-                        record.hasField("stop_time") ? record.getLong("stop_time") : null,
-                        record.hasField("coord_time") ? record.getList("coord_time").size() : 0);
-                result.add(item);
+        public synchronized PathCoordUpdate createImmutableSnapshot(@CheckForNull StoreRecord result) {
+            if (result == null) {
+                // TODO(sbezek): make a useful RuntimeException subclass: RecordNotFoundException?
+                throw new RuntimeException("Record not found");
+            }
+            final PathCoordBuffer last = mLastCoords;
+            final PathCoordUpdate update;
+            if (last != null && isAppendOnlyChangeFrom(last, result)) {
+                final PathCoordBuffer.Builder builder = new PathCoordBuffer.Builder(last);
+                builder.addAll(PathCoordReader.from(result, last.size()));
+                update = new PathCoordUpdate(builder.build(), last.size(), false);
+            } else {
+                update = new PathCoordUpdate(PathCoordBuffer.from(PathCoordReader.from(result)), 0, true);
             }
-            return result;
+            mLastCoords = update.getCoords();
+            return update;
         }
-    };
 
-    private static DatastoreQuery<List<PathCoord>> getPathCoordsQuery(String pathRecordId) {
-        return new DatastoreRowQuery<List<PathCoord>>("paths", pathRecordId) {
-            @Override
-            public List<PathCoord> createImmutableSnapshot(@CheckForNull DbxRecord result) {
-                if (result == null) {
-                    // TODO(sbezek): make a useful RuntimeException subclass: RecordNotFoundException?
-                    throw new RuntimeException("Record not found");
-                } else {
-                    return PathCoord.listFrom(result);
-                }
+        /**
+         * Checks whether the record still starts with the previously read coordinates, by checking
+         * that the count hasn't shrunk and the last coordinate we saw hasn't changed.
+         */
+        private static boolean isAppendOnlyChangeFrom(PathCoordBuffer last, StoreRecord record) {
+            if (PathCoordReader.getCount(record) < last.size()) {
+                return false;
             }
-        };
+            if (last.isEmpty()) {
+                return true;
+            }
+            final int lastIndex = last.size() - 1;
+            final PathCoordReader reader = PathCoordReader.from(record, lastIndex);
+            return reader.moveToNext() && reader.getTime() == last.getTime(lastIndex);
+        }
     }
 
     public DataStream<List<PathListItem>> getPathListLoader() {
-        return new QueryLoader<>(mDatastoreRef, PATH_LIST_QUERY);
+        return new QueryLoader<>(mDatastoreRef, mPathListIndex);
     }
 
+    /**
+     * Returns every path, newest first (see {@link PathListItem#sDescendingStartTimeComparator}).
+     */
     public Observable<List<PathListItem>> getPathList(Scheduler queryExecutionScheduler) {
-        return QueryObservable.createObservable(mDatastoreRef, PATH_LIST_QUERY, queryExecutionScheduler);
+        return mQueryCache.get(mPathListIndex, new Func0<DatastoreQuery<List<PathListItem>>>() {
+            @Override
+            public DatastoreQuery<List<PathListItem>> call() {
+                return mPathListIndex;
+            }
+        }, queryExecutionScheduler, null);
     }
 
-    public Observable<List<PathCoord>> getPathCoords(String pathRecordId, Scheduler queryExecutionScheduler) {
-        return QueryObservable.createObservable(mDatastoreRef, getPathCoordsQuery(pathRecordId), queryExecutionScheduler);
+    /**
+     * Returns the path's coordinates, re-emitting whenever they change. Consecutive emissions share
+     * backing arrays where possible, since reloads only read newly appended coordinates.
+     */
+    public Observable<PathCoordBuffer> getPathCoords(String pathRecordId, Scheduler queryExecutionScheduler) {
+        return getPathCoordUpdates(pathRecordId, queryExecutionScheduler)
+                .map(new Func1<PathCoordUpdate, PathCoordBuffer>() {
+                    @Override
+                    public PathCoordBuffer call(PathCoordUpdate update) {
+                        return update.getCoords();
+                    }
+                });
+    }
+
+    /**
+     * Returns incremental updates to the path's coordinates. The first update (and any following a
+     * remote rewrite of the path) is a reset containing every coordinate; after that, each reload
+     * only reads and emits coordinates appended since the previous one.
+     */
+    public Observable<PathCoordUpdate> getPathCoordUpdates(final String pathRecordId, final Scheduler queryExecutionScheduler) {
+        return mQueryCache.get("coords:" + pathRecordId, new Func0<DatastoreQuery<PathCoordUpdate>>() {
+            @Override
+            public DatastoreQuery<PathCoordUpdate> call() {
+                return new IncrementalPathCoordsQuery(pathRecordId);
+            }
+        }, queryExecutionScheduler, new Func1<PathCoordUpdate, PathCoordUpdate>() {
+            @Override
+            public PathCoordUpdate call(PathCoordUpdate latest) {
+                // Late subscribers haven't seen any of the previous coordinates
+                return latest.asReset();
+            }
+        }).filter(new Func1<PathCoordUpdate, Boolean>() {
+            @Override
+            public Boolean call(PathCoordUpdate update) {
+                return update.isReset() || update.getNewCount() > 0;
+            }
+        });
     }
 
     public Observable<RecordingState> getRecordingState() {
         return mRecordingStateSubject.asObservable();
     }
 
-    private static class QueryObservable<T> implements Observable.OnSubscribe<T> {
+    /**
+     * Returns counters for all recordings made by this PathManager.
+     */
+    public RecordingStats getRecordingStats() {
+        return mRecordingStats;
+    }
+
+    static class QueryObservable<T> implements Observable.OnSubscribe<T> {
 
         private final RefCountedObject<? extends DatastoreWithLock> mDatastoreRef;
         private final DatastoreQuery<T> mQuery;
@@ -249,29 +1074,47 @@ public class PathManager {
             final Worker worker = mScheduler.createWorker();
 
             final DatastoreWithLock datastore = mDatastoreRef.acquire();
-            // Register a change listener for recurring loads
-            final OnSyncListener requeryTrigger = new OnSyncListener() {
+            final ChangeSet.Pending pendingChanges = new ChangeSet.Pending();
+
+            // Requery on the worker, coalescing bursts of syncs into at most one pending query
+            final CoalescingRunner requery = new CoalescingRunner(new Executor() {
                 @Override
-                public void onSynced() {
+                public void execute(final Runnable command) {
                     worker.schedule(new Action0() {
                         @Override
                         public void call() {
-                            try {
-                                subscriber.onNext(mQuery.executeOnDatastore(datastore));
-                            } catch (DbxException e) {
-                                subscriber.onError(e);
-                                // TODO(sbezek): unregister change listener and stop emitting data?
-                            } catch (Throwable e) {
-                                subscriber.onError(e);
-                            }
+                            command.run();
                         }
                     });
                 }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        subscriber.onNext(datastore.executeQuery(mQuery, pendingChanges.take()));
+                    } catch (StoreException e) {
+                        subscriber.onError(e);
+                        // TODO(sbezek): unregister change listener and stop emitting data?
+                    } catch (Throwable e) {
+                        subscriber.onError(e);
+                    }
+                }
+            });
+
+            // Register a change listener for recurring loads
+            final OnSyncListener requeryTrigger = new OnSyncListener() {
+                @Override
+                public void onSynced(@Nonnull ChangeSet changes) {
+                    if (datastore.needsRequery(mQuery, changes)) {
+                        pendingChanges.add(changes);
+                        requery.request();
+                    }
+                }
             };
             datastore.addSyncListener(requeryTrigger);
 
             // Trigger an initial load...
-            requeryTrigger.onSynced();
+            requery.request();
 
             // When unsubscribed, unregister the change listener and release the datastore
             subscriber.add(Subscriptions.create(new Action0() {
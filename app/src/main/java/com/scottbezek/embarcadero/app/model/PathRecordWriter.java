@@ -2,28 +2,65 @@ package com.scottbezek.embarcadero.app.model;
 
 import android.location.Location;
 
-import com.dropbox.sync.android.DbxRecord;
+import com.scottbezek.embarcadero.app.model.data.PathCoordReader;
+import com.scottbezek.embarcadero.app.model.data.PathCoordWriter;
 import com.scottbezek.embarcadero.app.model.data.PathRecordFields;
-import com.scottbezek.embarcadero.app.util.Asserts;
+import com.scottbezek.embarcadero.app.model.data.PathStats;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+
+import java.util.Collection;
 
 /**
+ * Appends coordinates to a new path record, keeping the record's {@link PathStats} up to date as
+ * they're added.
  */
 public class PathRecordWriter {
 
-    private final DbxRecord mPathRecord;
+    private final StoreRecord mPathRecord;
+    private final PathCoordWriter mCoordWriter;
+    private final PathStats.Accumulator mStats = new PathStats.Accumulator();
 
-    PathRecordWriter(DbxRecord pathRecord) {
+    /**
+     * Creates a writer that appends to the given path record, which may already have coordinates
+     * (e.g. when resuming a recording).
+     */
+    PathRecordWriter(StoreRecord pathRecord) {
         mPathRecord = pathRecord;
+        mCoordWriter = new PathCoordWriter(pathRecord);
+        if (PathCoordReader.getCount(pathRecord) > 0) {
+            mStats.addAll(PathCoordReader.from(pathRecord));
+        }
     }
 
     public void addLocation(Location location) {
-        Asserts.assertAllEqual(
-                mPathRecord.getOrCreateList(PathRecordFields.COORD_TIME).add(location.getTime()).size(),
-                mPathRecord.getOrCreateList(PathRecordFields.COORD_LATITUDE).add(location.getLatitude()).size(),
-                mPathRecord.getOrCreateList(PathRecordFields.COORD_LONGITUDE).add(location.getLongitude()).size(),
-                mPathRecord.getOrCreateList(PathRecordFields.COORD_ACCURACY).add(location.getAccuracy()).size(),
-                mPathRecord.getOrCreateList(PathRecordFields.COORD_ALTITUDE).add(location.getAltitude()).size());
-        //        mPathRecord.getOrCreateList("coord_provider").add(location.getProvider()).size()
+        appendLocation(location);
+        flush();
+    }
+
+    /**
+     * Appends a batch of locations in one pass, rewriting the record's open coordinate chunk only
+     * once.
+     */
+    public void addLocations(Collection<Location> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+        for (Location location : locations) {
+            appendLocation(location);
+        }
+        flush();
+    }
+
+    private void appendLocation(Location location) {
+        mCoordWriter.add(location.getTime(), location.getLatitude(), location.getLongitude(),
+                location.getAccuracy(), location.getAltitude());
+        mStats.add(location.getTime(), location.getLatitude(), location.getLongitude(),
+                location.getAltitude());
+    }
+
+    private void flush() {
+        mCoordWriter.flush();
+        mStats.toStats().writeTo(mPathRecord);
     }
 
     public void setStartTime(long timeMillis) {
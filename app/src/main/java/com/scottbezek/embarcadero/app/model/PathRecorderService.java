@@ -1,60 +1,168 @@
 package com.scottbezek.embarcadero.app.model;
 
+import android.app.Notification;
+import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.PowerManager.WakeLock;
+import android.util.Log;
 
+import com.scottbezek.embarcadero.app.EmbarcaderoApplication;
+import com.scottbezek.embarcadero.app.R;
+import com.scottbezek.embarcadero.app.model.PathManager.RecordingState;
+import com.scottbezek.embarcadero.app.model.UserStateManager.UserState;
+import com.scottbezek.embarcadero.app.model.location.AdaptiveLocationUpdateProvider;
+import com.scottbezek.embarcadero.app.ui.MainActivity;
+
+import javax.annotation.CheckForNull;
+
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+
+/**
+ * Foreground service that keeps the process, and so the recording, alive while a path is being
+ * recorded, whether or not any UI is showing. The id of the path being recorded is saved, so if the
+ * process is killed anyway the service is restarted and resumes recording to the same path.
+ */
 public class PathRecorderService extends Service {
 
-//    private static final String EXTRA_PATH_RECORD_ID = "EXTRA_PATH_RECORD_ID";
-//    private static final String EXTRA_USER_STATE = "EXTRA_USER_STATE";
-//
-//    private CountDownLatch mStopLatch;
-//
-//    public static Intent getStartIntent(Context context, String pathRecordId, UserState userState) {
-//        final Intent intent = new Intent(context, PathRecorderService.class);
-//        intent.putExtra(EXTRA_PATH_RECORD_ID, pathRecordId);
-//        intent.putExtra(EXTRA_USER_STATE, userState.toBundle());
-//        return intent;
-//    }
-//
+    private static final String TAG = PathRecorderService.class.getName();
+
+    private static final String ACTION_START = "com.scottbezek.embarcadero.app.action.START_RECORDING";
+    private static final String ACTION_STOP = "com.scottbezek.embarcadero.app.action.STOP_RECORDING";
+
+    private static final String PREFS_NAME = "PathRecorderService";
+    private static final String PREF_PATH_RECORD_ID = "path_record_id";
+
+    private static final int NOTIFICATION_ID = 1;
+
+    @CheckForNull
+    private PathManager mPathManager = null;
+    @CheckForNull
+    private Subscription mRecordingStateSubscription = null;
+    @CheckForNull
+    private WakeLock mWakeLock = null;
+
+    public static void startRecording(Context context) {
+        context.startService(new Intent(context, PathRecorderService.class).setAction(ACTION_START));
+    }
+
+    public static void stopRecording(Context context) {
+        context.startService(new Intent(context, PathRecorderService.class).setAction(ACTION_STOP));
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         throw new UnsupportedOperationException("Binding not supported");
     }
-//
-//    @Override
-//    public int onStartCommand(Intent intent, int flags, int startId) {
-//        if (!intent.hasExtra(EXTRA_PATH_RECORD_ID)
-//                || !intent.hasExtra(EXTRA_USER_STATE)) {
-//            stopSelf();
-//            return START_NOT_STICKY;
-//        }
-//        if (mStopLatch != null) {
-//            throw new IllegalStateException("Already running?");
-//        }
-//        mStopLatch = new CountDownLatch(1);
-//        UserStateManager userStateManager = ((EmbarcaderoApplication)getApplication()).getUserStateManager();
-//        UserState userState = UserState.fromBundle(userStateManager, intent.getBundleExtra(EXTRA_USER_STATE));
-//        final PathManager pathManager = userState.getPathManager();
-//
-//        new Thread() {
-//            @Override
-//            public void run() {
-//                try {
-//
-//                }
-//            }
-//        }.start();
-//
-//        return START_REDELIVER_INTENT;
-//    }
-//
-//    @Override
-//    public void onDestroy() {
-//        super.onDestroy();
-//        if (!mRunning.compareAndSet(true, false)) {
-//            throw new IllegalStateException("Destroyed service that isn't running");
-//        }
-//    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // A null intent means the service is being restarted after the process was killed
+        final String action = intent != null ? intent.getAction() : null;
+        if (ACTION_STOP.equals(action)) {
+            stopRecordingAndSelf();
+            return START_NOT_STICKY;
+        }
+        if (mPathManager != null && mPathManager.isRecording()) {
+            return START_STICKY;
+        }
+
+        final UserState userState = ((EmbarcaderoApplication)getApplication()).getUserStateManager().getMainUserState();
+        if (userState == null) {
+            Log.w(TAG, "Not signed in, can't record");
+            stopRecordingAndSelf();
+            return START_NOT_STICKY;
+        }
+        mPathManager = userState.getPathManager();
+        if (mPathManager.isRecording()) {
+            return START_STICKY;
+        }
+
+        startForeground(NOTIFICATION_ID, createNotification());
+        final PowerManager powerManager = (PowerManager)getSystemService(Context.POWER_SERVICE);
+        mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+        mWakeLock.acquire();
+
+        final AdaptiveLocationUpdateProvider locationProvider =
+                new AdaptiveLocationUpdateProvider(this, Looper.getMainLooper());
+        final String savedPathRecordId = getPrefs().getString(PREF_PATH_RECORD_ID, null);
+        if (savedPathRecordId != null) {
+            Log.d(TAG, "Resuming recording of " + savedPathRecordId);
+            mPathManager.resumeRecording(savedPathRecordId, locationProvider);
+        } else {
+            mPathManager.startRecording(locationProvider);
+        }
+
+        mRecordingStateSubscription = mPathManager.getRecordingState()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Action1<RecordingState>() {
+                    @Override
+                    public void call(RecordingState state) {
+                        if (!state.isRecording()) {
+                            // Stopped elsewhere, or the path to resume was gone
+                            stopRecordingAndSelf();
+                        } else if (state.getPathRecordId() != null) {
+                            getPrefs().edit().putString(PREF_PATH_RECORD_ID, state.getPathRecordId()).apply();
+                        }
+                    }
+                });
+        return START_STICKY;
+    }
+
+    private void stopRecordingAndSelf() {
+        if (mRecordingStateSubscription != null) {
+            mRecordingStateSubscription.unsubscribe();
+            mRecordingStateSubscription = null;
+        }
+        if (mPathManager != null && mPathManager.isRecording()) {
+            mPathManager.stopRecording();
+        }
+        mPathManager = null;
+        getPrefs().edit().remove(PREF_PATH_RECORD_ID).apply();
+        releaseWakeLock();
+        stopForeground(true);
+        stopSelf();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mRecordingStateSubscription != null) {
+            mRecordingStateSubscription.unsubscribe();
+            mRecordingStateSubscription = null;
+        }
+        releaseWakeLock();
+    }
+
+    private void releaseWakeLock() {
+        if (mWakeLock != null && mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
+        mWakeLock = null;
+    }
+
+    private SharedPreferences getPrefs() {
+        return getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @SuppressWarnings("deprecation")
+    private Notification createNotification() {
+        final PendingIntent contentIntent = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        // getNotification() rather than build(), which needs API 16
+        return new Notification.Builder(this)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(getString(R.string.recording_notification_text))
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setOngoing(true)
+                .setContentIntent(contentIntent)
+                .getNotification();
+    }
 }
@@ -0,0 +1,333 @@
+package com.scottbezek.embarcadero.app.model;
+
+import android.util.Log;
+
+import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreQuery;
+import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreWithLock;
+import com.scottbezek.embarcadero.app.util.RefCountedObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Shares query executions between subscribers. However many subscribers a cached query has, it's
+ * only executed once per sync, and each new subscriber is immediately sent its latest result.
+ * <p>
+ * Queries with no subscribers stop executing, but their latest result is kept so that
+ * resubscribing doesn't start from nothing. Only a limited number of these idle queries are kept,
+ * with the least recently used evicted first.
+ * <p>
+ * Results are sent to subscribers without holding any of the cache's locks, so subscribers are
+ * free to unsubscribe from onNext. A subscriber that throws is sent the error and dropped, without
+ * affecting the query or its other subscribers.
+ */
+@ThreadSafe
+public class QueryCache {
+
+    private static final String TAG = QueryCache.class.getName();
+
+    private final RefCountedObject<? extends DatastoreWithLock> mDatastoreRef;
+    private final int mMaxIdleEntries;
+
+    /**
+     * Entries in least to most recently used order.
+     */
+    @GuardedBy("mEntries")
+    private final LinkedHashMap<Object, Entry<?>> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public QueryCache(@Nonnull RefCountedObject<? extends DatastoreWithLock> datastoreRef, int maxIdleEntries) {
+        mDatastoreRef = datastoreRef;
+        mMaxIdleEntries = maxIdleEntries;
+    }
+
+    /**
+     * Returns an Observable of the results of the query cached under the given key, creating the
+     * query if it isn't cached yet. Queries run on the scheduler passed in by whichever subscriber
+     * caused them to start running.
+     *
+     * @param key identifies the query; every query cached under a key must produce the same type
+     * @param queryFactory creates the query if it isn't already cached
+     * @param replayTransform applied to the latest result before sending it to a new subscriber,
+     *            for results that are only meaningful relative to the previous one
+     */
+    @Nonnull
+    public <T> Observable<T> get(@Nonnull final Object key, @Nonnull final Func0<? extends DatastoreQuery<T>> queryFactory,
+            @Nonnull final Scheduler scheduler, @CheckForNull final Func1<T, T> replayTransform) {
+        return Observable.create(new Observable.OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> subscriber) {
+                final Entry<T> entry;
+                final Receiver<T> receiver;
+                synchronized (mEntries) {
+                    entry = getOrCreateEntry(key, queryFactory, replayTransform);
+                    receiver = entry.addSubscriber(subscriber);
+                    if (entry.mSubscriberCount++ == 0) {
+                        entry.connect(scheduler);
+                    }
+                }
+                subscriber.add(Subscriptions.create(new Action0() {
+                    @Override
+                    public void call() {
+                        removeSubscriber(entry, subscriber);
+                    }
+                }));
+                // Outside the locks, since this runs the subscriber's whole chain on this thread
+                receiver.replay();
+            }
+        });
+    }
+
+    public int size() {
+        synchronized (mEntries) {
+            return mEntries.size();
+        }
+    }
+
+    @GuardedBy("mEntries")
+    @SuppressWarnings("unchecked")
+    private <T> Entry<T> getOrCreateEntry(Object key, Func0<? extends DatastoreQuery<T>> queryFactory,
+            @CheckForNull Func1<T, T> replayTransform) {
+        Entry<T> entry = (Entry<T>) mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry<>(key, queryFactory.call(), replayTransform);
+            mEntries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the subscriber from the entry, if it hasn't been already.
+     */
+    private <T> void removeSubscriber(Entry<T> entry, Subscriber<? super T> subscriber) {
+        if (!entry.removeSubscriber(subscriber)) {
+            return;
+        }
+        synchronized (mEntries) {
+            if (--entry.mSubscriberCount == 0) {
+                entry.disconnect();
+                trimIdleEntries();
+            }
+        }
+    }
+
+    @GuardedBy("mEntries")
+    private void trimIdleEntries() {
+        int idleCount = 0;
+        for (Entry<?> entry : mEntries.values()) {
+            if (entry.mSubscriberCount == 0) {
+                idleCount++;
+            }
+        }
+        final Iterator<Entry<?>> it = mEntries.values().iterator();
+        while (idleCount > mMaxIdleEntries && it.hasNext()) {
+            if (it.next().mSubscriberCount == 0) {
+                it.remove();
+                idleCount--;
+            }
+        }
+    }
+
+    private void onEntryFailed(Entry<?> entry) {
+        synchronized (mEntries) {
+            // Start over with a fresh query on the next subscription
+            if (mEntries.get(entry.mKey) == entry) {
+                mEntries.remove(entry.mKey);
+            }
+        }
+    }
+
+    private class Entry<T> {
+
+        private final Object mKey;
+        private final DatastoreQuery<T> mQuery;
+        @CheckForNull
+        private final Func1<T, T> mReplayTransform;
+
+        @GuardedBy("mEntries")
+        private int mSubscriberCount = 0;
+        @GuardedBy("mEntries")
+        @CheckForNull
+        private Subscription mConnection = null;
+
+        @GuardedBy("this")
+        private final List<Receiver<T>> mReceivers = new ArrayList<>();
+        @GuardedBy("this")
+        private boolean mHasLatest = false;
+        @GuardedBy("this")
+        @CheckForNull
+        private T mLatest = null;
+
+        Entry(Object key, DatastoreQuery<T> query, @CheckForNull Func1<T, T> replayTransform) {
+            mKey = key;
+            mQuery = query;
+            mReplayTransform = replayTransform;
+        }
+
+        @GuardedBy("mEntries")
+        void connect(Scheduler scheduler) {
+            mConnection = PathManager.QueryObservable.createObservable(mDatastoreRef, mQuery, scheduler)
+                    .subscribe(new Subscriber<T>() {
+                        @Override
+                        public void onCompleted() {
+                        }
+
+                        @Override
+                        public void onError(Throwable e) {
+                            onEntryFailed(Entry.this);
+                            publishError(e);
+                        }
+
+                        @Override
+                        public void onNext(T result) {
+                            publish(result);
+                        }
+                    });
+        }
+
+        @GuardedBy("mEntries")
+        void disconnect() {
+            if (mConnection != null) {
+                mConnection.unsubscribe();
+                mConnection = null;
+            }
+        }
+
+        /**
+         * Adds the subscriber, returning its receiver. The latest result isn't sent until
+         * {@link Receiver#replay()} is called.
+         */
+        synchronized Receiver<T> addSubscriber(Subscriber<? super T> subscriber) {
+            final Receiver<T> receiver = new Receiver<>(this, subscriber, mHasLatest, mLatest);
+            mReceivers.add(receiver);
+            return receiver;
+        }
+
+        /**
+         * @return whether the subscriber was still subscribed
+         */
+        synchronized boolean removeSubscriber(Subscriber<? super T> subscriber) {
+            for (Iterator<Receiver<T>> it = mReceivers.iterator(); it.hasNext(); ) {
+                if (it.next().mSubscriber == subscriber) {
+                    it.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void publish(T result) {
+            final List<Receiver<T>> toNotify;
+            synchronized (this) {
+                mLatest = result;
+                mHasLatest = true;
+                toNotify = new ArrayList<>(mReceivers);
+            }
+            for (Receiver<T> receiver : toNotify) {
+                receiver.send(result);
+            }
+        }
+
+        void publishError(Throwable e) {
+            final List<Receiver<T>> toNotify;
+            synchronized (this) {
+                toNotify = new ArrayList<>(mReceivers);
+                mReceivers.clear();
+            }
+            for (Receiver<T> receiver : toNotify) {
+                receiver.sendError(e);
+            }
+        }
+    }
+
+    /**
+     * Sends results to one subscriber, starting with the entry's latest result at the time it
+     * subscribed, if any. Sends to a subscriber are serialized by its receiver alone, so the
+     * replayed result always comes first however it races with newly published ones.
+     */
+    private class Receiver<T> {
+
+        private final Entry<T> mEntry;
+        private final Subscriber<? super T> mSubscriber;
+
+        @GuardedBy("this")
+        private boolean mHasReplay;
+        @GuardedBy("this")
+        @CheckForNull
+        private T mReplay;
+
+        Receiver(Entry<T> entry, Subscriber<? super T> subscriber, boolean hasReplay, @CheckForNull T replay) {
+            mEntry = entry;
+            mSubscriber = subscriber;
+            mHasReplay = hasReplay;
+            mReplay = replay;
+        }
+
+        /**
+         * Sends the result that was latest when the subscriber subscribed, unless it's been sent.
+         */
+        synchronized void replay() {
+            if (!mHasReplay) {
+                return;
+            }
+            final T replay = mReplay;
+            mHasReplay = false;
+            mReplay = null;
+            if (mSubscriber.isUnsubscribed()) {
+                return;
+            }
+            try {
+                mSubscriber.onNext(mEntry.mReplayTransform != null ? mEntry.mReplayTransform.call(replay) : replay);
+            } catch (Throwable t) {
+                onSubscriberFailed(t);
+            }
+        }
+
+        synchronized void send(T result) {
+            replay();
+            if (mSubscriber.isUnsubscribed()) {
+                return;
+            }
+            try {
+                mSubscriber.onNext(result);
+            } catch (Throwable t) {
+                onSubscriberFailed(t);
+            }
+        }
+
+        synchronized void sendError(Throwable e) {
+            if (!mSubscriber.isUnsubscribed()) {
+                mSubscriber.onError(e);
+            }
+        }
+
+        @GuardedBy("this")
+        private void onSubscriberFailed(Throwable t) {
+            Exceptions.throwIfFatal(t);
+            Log.w(TAG, "Subscriber to " + mEntry.mKey + " failed, dropping it", t);
+            try {
+                mSubscriber.onError(t);
+            } catch (Throwable e) {
+                Exceptions.throwIfFatal(e);
+                Log.e(TAG, "Subscriber to " + mEntry.mKey + " failed to handle its error", e);
+            }
+            removeSubscriber(mEntry, mSubscriber);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.scottbezek.embarcadero.app.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Counters describing how much work the path recording loop has done.
+ */
+@ThreadSafe
+public class RecordingStats {
+
+    private final AtomicLong mFixesRecorded = new AtomicLong();
+    private final AtomicLong mSyncs = new AtomicLong();
+    private final AtomicLong mSyncsAvoided = new AtomicLong();
+
+    void onFixesRecorded(int count) {
+        mFixesRecorded.addAndGet(count);
+    }
+
+    void onSynced() {
+        mSyncs.incrementAndGet();
+    }
+
+    /**
+     * Called when a batch of fixes was added without syncing. Each fix would have cost a sync
+     * before batching.
+     */
+    void onSyncsAvoided(int count) {
+        mSyncsAvoided.addAndGet(count);
+    }
+
+    public long getFixesRecorded() {
+        return mFixesRecorded.get();
+    }
+
+    public long getSyncCount() {
+        return mSyncs.get();
+    }
+
+    public long getSyncsAvoided() {
+        return mSyncsAvoided.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RecordingStats{fixes=" + getFixesRecorded() + ", syncs=" + getSyncCount()
+                + ", syncsAvoided=" + getSyncsAvoided() + "}";
+    }
+}
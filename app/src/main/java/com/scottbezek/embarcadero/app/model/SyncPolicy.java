@@ -0,0 +1,65 @@
+package com.scottbezek.embarcadero.app.model;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Decides how often the path recording loop syncs newly added locations to the datastore. Rather
+ * than syncing after every single fix, locations are accumulated until enough fixes, time or
+ * distance have built up since the last sync. A final sync is always forced when recording stops.
+ */
+@Immutable
+public class SyncPolicy {
+
+    /**
+     * Syncs after every location update, which is the behavior from before batching existed.
+     */
+    public static final SyncPolicy EVERY_FIX = new SyncPolicy(1, 0, 0);
+
+    /**
+     * Syncs every 30 fixes, 15 seconds, or 100 meters traveled, whichever comes first.
+     */
+    public static final SyncPolicy DEFAULT = new SyncPolicy(30, 15 * 1000, 100);
+
+    private final int mMaxPendingFixes;
+    private final long mMaxPendingMillis;
+    private final float mMaxPendingDistanceMeters;
+
+    /**
+     * @param maxPendingFixes sync once this many fixes haven't been synced yet
+     * @param maxPendingMillis sync once the oldest unsynced fix has been waiting this long. A value of
+     *            0 disables the time limit.
+     * @param maxPendingDistanceMeters sync once the path has moved this far since the last sync. A
+     *            value of 0 disables the distance limit.
+     */
+    public SyncPolicy(int maxPendingFixes, long maxPendingMillis, float maxPendingDistanceMeters) {
+        if (maxPendingFixes < 1) {
+            throw new IllegalArgumentException("Must allow at least 1 pending fix");
+        }
+        if (maxPendingMillis < 0 || maxPendingDistanceMeters < 0) {
+            throw new IllegalArgumentException("Limits must not be negative");
+        }
+        mMaxPendingFixes = maxPendingFixes;
+        mMaxPendingMillis = maxPendingMillis;
+        mMaxPendingDistanceMeters = maxPendingDistanceMeters;
+    }
+
+    /**
+     * Returns true if the pending (added, but not yet synced) fixes should be synced now.
+     */
+    public boolean isSyncDue(int pendingFixes, long pendingMillis, float pendingDistanceMeters) {
+        if (pendingFixes <= 0) {
+            return false;
+        }
+        return pendingFixes >= mMaxPendingFixes
+                || (mMaxPendingMillis > 0 && pendingMillis >= mMaxPendingMillis)
+                || (mMaxPendingDistanceMeters > 0 && pendingDistanceMeters >= mMaxPendingDistanceMeters);
+    }
+
+    /**
+     * Returns how long the recording loop may wait for more fixes before the pending ones need to
+     * be synced, or 0 if there's no time limit.
+     */
+    public long getMaxPendingMillis() {
+        return mMaxPendingMillis;
+    }
+}
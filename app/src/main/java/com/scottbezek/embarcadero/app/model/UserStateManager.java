@@ -11,12 +11,14 @@ import com.dropbox.sync.android.DbxDatastore;
 import com.dropbox.sync.android.DbxDatastore.SyncStatusListener;
 import com.dropbox.sync.android.DbxDatastoreStatus;
 import com.dropbox.sync.android.DbxException;
+import com.scottbezek.embarcadero.app.model.store.DbxStore;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils.AutoSyncingDatastoreWithLock;
 import com.scottbezek.embarcadero.app.util.ObservableUtil;
 import com.scottbezek.embarcadero.app.util.RefCountedObject;
 import com.scottbezek.embarcadero.app.util.RefCountedObject.Closer;
 import com.scottbezek.embarcadero.app.util.RefCountedObject.Factory;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -32,12 +34,17 @@ import rx.Observable;
 public class UserStateManager {
 
     private final DbxAccountManager mAccountManager;
+    private final File mFixLogDir;
 
     @GuardedBy("mUserStateMap")
     private final Map<String, UserState> mUserStateMap = new HashMap<>();
 
-    public UserStateManager(DbxAccountManager accountManager) {
+    /**
+     * @param fixLogDir where each user's recorded fixes are logged until they're synced
+     */
+    public UserStateManager(DbxAccountManager accountManager, File fixLogDir) {
         mAccountManager = accountManager;
+        mFixLogDir = fixLogDir;
         mAccountManager.addListener(new AccountListener() {
             @Override
             public void onLinkedAccountChange(DbxAccountManager accountManager,
@@ -58,7 +65,8 @@ public class UserStateManager {
             if (account != null) {
                 currentUids.add(account.getUserId());
                 if (!existingUids.contains(account.getUserId())) {
-                    mUserStateMap.put(account.getUserId(), new UserState(account));
+                    mUserStateMap.put(account.getUserId(), new UserState(account,
+                            new File(mFixLogDir, account.getUserId())));
                 }
             }
 
@@ -107,14 +115,14 @@ public class UserStateManager {
             }
         };
 
-        UserState(final DbxAccount account) {
+        UserState(final DbxAccount account, File fixLogDir) {
             mDatastoreRef = new RefCountedObject<>(new Factory<AutoSyncingDatastoreWithLock>() {
                 @Nonnull
                 @Override
                 public AutoSyncingDatastoreWithLock create() {
                     try {
                         DbxDatastore datastore = DbxDatastore.openDefault(account);
-                        return new AutoSyncingDatastoreWithLock(datastore);
+                        return new AutoSyncingDatastoreWithLock(new DbxStore(datastore));
                     } catch (DbxException e) {
                         throw new RuntimeException(e);
                     }
@@ -125,7 +133,10 @@ public class UserStateManager {
                     object.close();
                 }
             });
-            mPathManager = new PathManager(mDatastoreRef);
+            mPathManager = new PathManager(mDatastoreRef, fixLogDir);
+            mPathManager.migrateLegacyPaths();
+            mPathManager.replayFixLogs();
+            mPathManager.backfillPathStats();
             mUserId = account.getUserId();
             mDbxAccountInfo = ObservableUtil.createAccountInfoObservable(account);
         }
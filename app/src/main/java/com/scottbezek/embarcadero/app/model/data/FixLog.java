@@ -0,0 +1,225 @@
+package com.scottbezek.embarcadero.app.model.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Append-only, memory-mapped log of the fixes recorded for one path, written before the fixes are
+ * added to the datastore so that they survive the process dying before a sync.
+ * <p>
+ * The file is a 16 byte header (magic, version, number of fixes written, number of fixes applied
+ * to the datastore) followed by fixed-size 36 byte records. The written count is only bumped once
+ * a record is complete, so a partially written record is ignored. Writes to the mapping survive
+ * the process dying straight away; {@link #force()} makes them survive the device losing power
+ * too, and is called whenever enough fixes or time have built up since the last one.
+ */
+@NotThreadSafe
+public class FixLog {
+
+    private static final int FILE_MAGIC = 0x454d4657;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_WRITTEN_COUNT = 8;
+    private static final int OFFSET_APPLIED_COUNT = 12;
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Time (8), latitude (8), longitude (8), accuracy (4), altitude (8).
+     */
+    static final int RECORD_SIZE = 36;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final int mMaxUnforcedFixes;
+    private final long mMaxUnforcedMillis;
+
+    private MappedByteBuffer mBuffer;
+    private int mCapacity;
+    private int mWrittenCount;
+    private int mAppliedCount;
+
+    private int mUnforcedFixes = 0;
+    private long mLastForceMillis;
+    private long mForceCount = 0;
+
+    private FixLog(File file, boolean create, int maxUnforcedFixes, long maxUnforcedMillis) throws IOException {
+        mFile = file;
+        mMaxUnforcedFixes = maxUnforcedFixes;
+        mMaxUnforcedMillis = maxUnforcedMillis;
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        try {
+            if (create) {
+                mRandomAccessFile.setLength(0);
+                map(INITIAL_CAPACITY);
+                mBuffer.putInt(OFFSET_MAGIC, FILE_MAGIC);
+                mBuffer.putInt(OFFSET_VERSION, FORMAT_VERSION);
+                mBuffer.putInt(OFFSET_WRITTEN_COUNT, 0);
+                mBuffer.putInt(OFFSET_APPLIED_COUNT, 0);
+                mBuffer.force();
+            } else {
+                final long length = mChannel.size();
+                if (length < HEADER_SIZE) {
+                    throw new IOException("Truncated fix log " + file);
+                }
+                map((int)((length - HEADER_SIZE) / RECORD_SIZE));
+                if (mBuffer.getInt(OFFSET_MAGIC) != FILE_MAGIC
+                        || mBuffer.getInt(OFFSET_VERSION) != FORMAT_VERSION) {
+                    throw new IOException("Unrecognized fix log " + file);
+                }
+                mWrittenCount = mBuffer.getInt(OFFSET_WRITTEN_COUNT);
+                mAppliedCount = mBuffer.getInt(OFFSET_APPLIED_COUNT);
+                if (mWrittenCount < 0 || mWrittenCount > mCapacity
+                        || mAppliedCount < 0 || mAppliedCount > mWrittenCount) {
+                    throw new IOException("Corrupt fix log " + file);
+                }
+            }
+        } catch (IOException e) {
+            mRandomAccessFile.close();
+            throw e;
+        }
+        mLastForceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates an empty log, replacing the file if it exists.
+     *
+     * @param maxUnforcedFixes force the log to disk once this many fixes have been appended since
+     *            it last was
+     * @param maxUnforcedMillis force the log to disk when appending a fix this long after it last
+     *            was
+     */
+    @Nonnull
+    public static FixLog create(@Nonnull File file, int maxUnforcedFixes, long maxUnforcedMillis) throws IOException {
+        return new FixLog(file, true, maxUnforcedFixes, maxUnforcedMillis);
+    }
+
+    /**
+     * Opens an existing log, e.g. to replay it after the process died while recording.
+     */
+    @Nonnull
+    public static FixLog open(@Nonnull File file, int maxUnforcedFixes, long maxUnforcedMillis) throws IOException {
+        return new FixLog(file, false, maxUnforcedFixes, maxUnforcedMillis);
+    }
+
+    private void map(int capacity) throws IOException {
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)capacity * RECORD_SIZE);
+        mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        mCapacity = capacity;
+    }
+
+    @Nonnull
+    public File getFile() {
+        return mFile;
+    }
+
+    public void append(long time, double latitude, double longitude, double accuracy, double altitude) throws IOException {
+        if (mWrittenCount == mCapacity) {
+            // Forced first, so nothing written to the old mapping is left unforced
+            mBuffer.force();
+            map(Math.max(mCapacity * 2, INITIAL_CAPACITY));
+        }
+        final int offset = HEADER_SIZE + mWrittenCount * RECORD_SIZE;
+        mBuffer.putLong(offset, time);
+        mBuffer.putDouble(offset + 8, latitude);
+        mBuffer.putDouble(offset + 16, longitude);
+        mBuffer.putFloat(offset + 24, (float)accuracy);
+        mBuffer.putDouble(offset + 28, altitude);
+        mWrittenCount++;
+        mBuffer.putInt(OFFSET_WRITTEN_COUNT, mWrittenCount);
+
+        mUnforcedFixes++;
+        if (mUnforcedFixes >= mMaxUnforcedFixes
+                || System.currentTimeMillis() - mLastForceMillis >= mMaxUnforcedMillis) {
+            force();
+        }
+    }
+
+    /**
+     * Writes everything appended so far through to the disk.
+     */
+    public void force() {
+        mBuffer.force();
+        mUnforcedFixes = 0;
+        mLastForceMillis = System.currentTimeMillis();
+        mForceCount++;
+    }
+
+    /**
+     * Number of fixes appended.
+     */
+    public int getWrittenCount() {
+        return mWrittenCount;
+    }
+
+    /**
+     * Number of fixes, from the start of the log, known to be synced to the datastore.
+     */
+    public int getAppliedCount() {
+        return mAppliedCount;
+    }
+
+    /**
+     * Records that the first <code>count</code> fixes have been synced to the datastore, so they
+     * won't be replayed.
+     * <p>
+     * The count isn't forced to disk. Whoever replays the log has to skip fixes that are already in
+     * the datastore anyway, since the process can die between a sync and marking its fixes applied,
+     * so a count that lags behind only costs some rereading.
+     */
+    public void markApplied(int count) {
+        if (count < mAppliedCount || count > mWrittenCount) {
+            throw new IllegalArgumentException("Invalid applied count " + count);
+        }
+        mAppliedCount = count;
+        mBuffer.putInt(OFFSET_APPLIED_COUNT, count);
+    }
+
+    /**
+     * Returns the fixes that haven't been marked as applied, oldest first.
+     */
+    @Nonnull
+    public List<PathCoord> readUnapplied() {
+        final List<PathCoord> coords = new ArrayList<>(mWrittenCount - mAppliedCount);
+        for (int i = mAppliedCount; i < mWrittenCount; i++) {
+            final int offset = HEADER_SIZE + i * RECORD_SIZE;
+            coords.add(new PathCoord(mBuffer.getLong(offset), mBuffer.getDouble(offset + 8),
+                    mBuffer.getDouble(offset + 16), mBuffer.getFloat(offset + 24),
+                    mBuffer.getDouble(offset + 28)));
+        }
+        return coords;
+    }
+
+    public long getForceCount() {
+        return mForceCount;
+    }
+
+    public void close() throws IOException {
+        mChannel.close();
+        mRandomAccessFile.close();
+    }
+
+    /**
+     * Closes and deletes the log, once every fix in it has been synced.
+     */
+    public void delete() throws IOException {
+        close();
+        if (!mFile.delete()) {
+            throw new IOException("Unable to delete " + mFile);
+        }
+    }
+}
@@ -2,9 +2,7 @@ package com.scottbezek.embarcadero.app.model.data;
 
 import android.location.Location;
 
-import com.dropbox.sync.android.DbxList;
-import com.dropbox.sync.android.DbxRecord;
-import com.scottbezek.embarcadero.app.util.Asserts;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -30,6 +28,10 @@ public class PathCoord {
         mAltitude = altitude;
     }
 
+    public long getTime() {
+        return mTime;
+    }
+
     public double getLongitude() {
         return mLongitude;
     }
@@ -38,38 +40,63 @@ public class PathCoord {
         return mLatitude;
     }
 
-    public static List<PathCoord> listFrom(@Nonnull DbxRecord pathRecord) {
-        // TODO(sbezek): probably want to pool PathCoords and make PathCoord mutable/reusable -- otherwise we're going to be creating a ton of garbage on every datastore change
-        Asserts.assertAllEqual(pathRecord.hasField(PathRecordFields.COORD_TIME),
-                pathRecord.hasField(PathRecordFields.COORD_LATITUDE),
-                pathRecord.hasField(PathRecordFields.COORD_LONGITUDE),
-                pathRecord.hasField(PathRecordFields.COORD_ACCURACY),
-                pathRecord.hasField(PathRecordFields.COORD_ALTITUDE));
+    public double getAccuracy() {
+        return mAccuracy;
+    }
 
-        if (!pathRecord.hasField(PathRecordFields.COORD_TIME)) {
+    public double getAltitude() {
+        return mAltitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PathCoord)) {
+            return false;
+        }
+        final PathCoord other = (PathCoord)o;
+        return mTime == other.mTime
+                && Double.compare(mLatitude, other.mLatitude) == 0
+                && Double.compare(mLongitude, other.mLongitude) == 0
+                && Double.compare(mAccuracy, other.mAccuracy) == 0
+                && Double.compare(mAltitude, other.mAltitude) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int)(mTime ^ (mTime >>> 32));
+        result = 31 * result + hashDouble(mLatitude);
+        result = 31 * result + hashDouble(mLongitude);
+        result = 31 * result + hashDouble(mAccuracy);
+        result = 31 * result + hashDouble(mAltitude);
+        return result;
+    }
+
+    static int hashDouble(double value) {
+        final long bits = Double.doubleToLongBits(value);
+        return (int)(bits ^ (bits >>> 32));
+    }
+
+    public static List<PathCoord> listFrom(@Nonnull StoreRecord pathRecord) {
+        return listFrom(PathCoordReader.from(pathRecord));
+    }
+
+    public static List<PathCoord> listFrom(@Nonnull PathCoordReader reader) {
+        // TODO(sbezek): probably want to pool PathCoords and make PathCoord mutable/reusable -- otherwise we're going to be creating a ton of garbage on every datastore change
+        if (reader.size() == 0) {
             return Collections.emptyList();
         }
 
-        final DbxList times = pathRecord.getList(PathRecordFields.COORD_TIME);
-        final DbxList latitudes = pathRecord.getList(PathRecordFields.COORD_LATITUDE);
-        final DbxList longitudes = pathRecord.getList(PathRecordFields.COORD_LONGITUDE);
-        final DbxList accuracies = pathRecord.getList(PathRecordFields.COORD_ACCURACY);
-        final DbxList altitudes = pathRecord.getList(PathRecordFields.COORD_ALTITUDE);
-        Asserts.assertAllEqual(
-                times.size(),
-                latitudes.size(),
-                longitudes.size(),
-                accuracies.size(),
-                altitudes.size());
-
-        List<PathCoord> coords = new ArrayList<>(times.size());
-        for (int i = 0; i < times.size(); i++) {
+        List<PathCoord> coords = new ArrayList<>(reader.size());
+        while (reader.moveToNext()) {
             coords.add(new PathCoord(
-                    times.getLong(i),
-                    latitudes.getDouble(i),
-                    longitudes.getDouble(i),
-                    accuracies.getDouble(i),
-                    altitudes.getDouble(i)));
+                    reader.getTime(),
+                    reader.getLatitude(),
+                    reader.getLongitude(),
+                    reader.getAccuracy(),
+                    reader.getAltitude()));
         }
         return coords;
     }
@@ -0,0 +1,287 @@
+package com.scottbezek.embarcadero.app.model.data;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Immutable, indexed view of a path's coordinates, backed by parallel primitive arrays instead of
+ * a list of {@link PathCoord} objects.
+ * <p>
+ * Buffers that extend one another can share backing arrays: a {@link Builder} started from the
+ * most recent buffer appends in place after that buffer's last coordinate, which no existing view
+ * can see. Appending to an older buffer (or one that's already been appended to) falls back to
+ * copying, so existing views never change. Buffers must be handed between threads with the usual
+ * happens-before guarantees (e.g. via an {@link rx.Observable}).
+ */
+@Immutable
+public final class PathCoordBuffer {
+
+    public static final PathCoordBuffer EMPTY = new Builder(0).build();
+
+    private final Storage mStorage;
+    private final int mSize;
+
+    /**
+     * Lazily computed, 0 if not yet. Racy but safe, like {@link String#hashCode()}.
+     */
+    private int mHashCode = 0;
+
+    private PathCoordBuffer(Storage storage, int size) {
+        mStorage = storage;
+        mSize = size;
+    }
+
+    /**
+     * Reads all remaining coordinates from the reader into a new buffer.
+     */
+    @Nonnull
+    public static PathCoordBuffer from(@Nonnull PathCoordReader reader) {
+        final Builder builder = new Builder(reader.size());
+        builder.addAll(reader);
+        return builder.build();
+    }
+
+    @Nonnull
+    public static PathCoordBuffer of(@Nonnull PathCoord coord) {
+        return new Builder(1)
+                .add(coord.getTime(), coord.getLatitude(), coord.getLongitude(), coord.getAccuracy(), coord.getAltitude())
+                .build();
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public long getTime(int index) {
+        checkIndex(index);
+        return mStorage.mTimes[index];
+    }
+
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return mStorage.mLatitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return mStorage.mLongitudes[index];
+    }
+
+    public double getAccuracy(int index) {
+        checkIndex(index);
+        return mStorage.mAccuracies[index];
+    }
+
+    public double getAltitude(int index) {
+        checkIndex(index);
+        return mStorage.mAltitudes[index];
+    }
+
+    /**
+     * Returns the coordinate at the given index as a new {@link PathCoord}. Prefer the primitive
+     * accessors in loops.
+     */
+    @Nonnull
+    public PathCoord get(int index) {
+        return new PathCoord(getTime(index), getLatitude(index), getLongitude(index),
+                getAccuracy(index), getAltitude(index));
+    }
+
+    /**
+     * Buffers are equal if they have the same coordinates. Buffers sharing backing arrays (e.g.
+     * consecutive snapshots of a path being recorded) are compared by size alone.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PathCoordBuffer)) {
+            return false;
+        }
+        final PathCoordBuffer other = (PathCoordBuffer)o;
+        if (mSize != other.mSize) {
+            return false;
+        }
+        if (mStorage == other.mStorage) {
+            // Claimed coordinates are never modified, so these are the same coordinates
+            return true;
+        }
+        if (mHashCode != 0 && other.mHashCode != 0 && mHashCode != other.mHashCode) {
+            return false;
+        }
+        final Storage a = mStorage;
+        final Storage b = other.mStorage;
+        for (int i = mSize - 1; i >= 0; i--) {
+            // Newest coordinates first, since that's where paths usually differ
+            if (a.mTimes[i] != b.mTimes[i]
+                    || Double.compare(a.mLatitudes[i], b.mLatitudes[i]) != 0
+                    || Double.compare(a.mLongitudes[i], b.mLongitudes[i]) != 0
+                    || Double.compare(a.mAccuracies[i], b.mAccuracies[i]) != 0
+                    || Double.compare(a.mAltitudes[i], b.mAltitudes[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mHashCode;
+        if (result == 0) {
+            result = mSize;
+            for (int i = 0; i < mSize; i++) {
+                result = 31 * result + (int)(mStorage.mTimes[i] ^ (mStorage.mTimes[i] >>> 32));
+                result = 31 * result + PathCoord.hashDouble(mStorage.mLatitudes[i]);
+                result = 31 * result + PathCoord.hashDouble(mStorage.mLongitudes[i]);
+            }
+            mHashCode = result;
+        }
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+    }
+
+    /**
+     * Backing arrays, shared by buffers that extend one another. Array contents below
+     * {@link #mClaimedSize} are never modified.
+     */
+    private static class Storage {
+        private static final int UNCLAIMED = -1;
+
+        final long[] mTimes;
+        final double[] mLatitudes;
+        final double[] mLongitudes;
+        final double[] mAccuracies;
+        final double[] mAltitudes;
+
+        @GuardedBy("this")
+        private int mClaimedSize = 0;
+
+        Storage(int capacity) {
+            mTimes = new long[capacity];
+            mLatitudes = new double[capacity];
+            mLongitudes = new double[capacity];
+            mAccuracies = new double[capacity];
+            mAltitudes = new double[capacity];
+        }
+
+        Storage(Storage source, int size, int capacity) {
+            mTimes = Arrays.copyOf(source.mTimes, capacity);
+            mLatitudes = Arrays.copyOf(source.mLatitudes, capacity);
+            mLongitudes = Arrays.copyOf(source.mLongitudes, capacity);
+            mAccuracies = Arrays.copyOf(source.mAccuracies, capacity);
+            mAltitudes = Arrays.copyOf(source.mAltitudes, capacity);
+            mClaimedSize = size;
+        }
+
+        int capacity() {
+            return mTimes.length;
+        }
+
+        /**
+         * Claims exclusive write access past <code>size</code>, which only succeeds if no one has
+         * written past it already.
+         */
+        synchronized boolean tryClaim(int size) {
+            if (mClaimedSize != size) {
+                return false;
+            }
+            mClaimedSize = UNCLAIMED;
+            return true;
+        }
+
+        synchronized void release(int size) {
+            mClaimedSize = size;
+        }
+    }
+
+    /**
+     * Builds a {@link PathCoordBuffer}. A builder can only build once.
+     */
+    @NotThreadSafe
+    public static class Builder {
+
+        private Storage mStorage;
+        private int mSize;
+        private boolean mBuilt = false;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int initialCapacity) {
+            mStorage = new Storage(initialCapacity);
+            mStorage.tryClaim(0);
+            mSize = 0;
+        }
+
+        /**
+         * Starts with the coordinates of an existing buffer, sharing its backing arrays if possible.
+         */
+        public Builder(@Nonnull PathCoordBuffer base) {
+            mSize = base.mSize;
+            if (base.mStorage.tryClaim(base.mSize)) {
+                mStorage = base.mStorage;
+            } else {
+                mStorage = new Storage(base.mStorage, base.mSize, Math.max(base.mSize * 2, 16));
+                mStorage.tryClaim(base.mSize);
+            }
+        }
+
+        public Builder add(long time, double latitude, double longitude, double accuracy, double altitude) {
+            if (mBuilt) {
+                throw new IllegalStateException("Already built");
+            }
+            if (mSize == mStorage.capacity()) {
+                final Storage grown = new Storage(mStorage, mSize, Math.max(mSize * 2, 16));
+                grown.tryClaim(mSize);
+                mStorage = grown;
+            }
+            mStorage.mTimes[mSize] = time;
+            mStorage.mLatitudes[mSize] = latitude;
+            mStorage.mLongitudes[mSize] = longitude;
+            mStorage.mAccuracies[mSize] = accuracy;
+            mStorage.mAltitudes[mSize] = altitude;
+            mSize++;
+            return this;
+        }
+
+        /**
+         * Adds all remaining coordinates from the reader.
+         */
+        public Builder addAll(@Nonnull PathCoordReader reader) {
+            while (reader.moveToNext()) {
+                add(reader.getTime(), reader.getLatitude(), reader.getLongitude(),
+                        reader.getAccuracy(), reader.getAltitude());
+            }
+            return this;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        @Nonnull
+        public PathCoordBuffer build() {
+            if (mBuilt) {
+                throw new IllegalStateException("Already built");
+            }
+            mBuilt = true;
+            mStorage.release(mSize);
+            return new PathCoordBuffer(mStorage, mSize);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.scottbezek.embarcadero.app.model.data;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Binary encoding for compact chunks of path coordinates.
+ * <p>
+ * Each chunk holds up to {@link #POINTS_PER_CHUNK} coordinates as a format version byte followed
+ * by one entry per coordinate. Each entry stores the difference from the previous coordinate in the
+ * chunk (the first coordinate is relative to zero) as variable-length zigzag integers:
+ * <ul>
+ * <li>time, in milliseconds</li>
+ * <li>latitude and longitude, in fixed-point units of 1e-7 degrees (about 1cm)</li>
+ * <li>accuracy and altitude, quantized to decimeters</li>
+ * </ul>
+ * Since consecutive fixes are close together in both time and space, a typical coordinate takes
+ * around 8 bytes instead of the 40+ bytes needed for five separate list entries.
+ */
+public class PathCoordChunks {
+
+    private PathCoordChunks() {}
+
+    public static final int POINTS_PER_CHUNK = 256;
+
+    static final byte FORMAT_VERSION = 1;
+
+    private static final double DEGREES_SCALE = 1e7;
+    private static final double METERS_SCALE = 10;
+
+    /**
+     * Builds up a chunk of coordinates. Can be restored from a previously encoded chunk in order to
+     * continue appending to it.
+     */
+    @NotThreadSafe
+    public static class Encoder {
+
+        private byte[] mBuffer = new byte[64];
+        private int mLength;
+        private int mCount;
+
+        private long mPrevTime;
+        private long mPrevLatitude;
+        private long mPrevLongitude;
+        private long mPrevAccuracy;
+        private long mPrevAltitude;
+
+        public Encoder() {
+            reset();
+        }
+
+        public void reset() {
+            mBuffer[0] = FORMAT_VERSION;
+            mLength = 1;
+            mCount = 0;
+            mPrevTime = 0;
+            mPrevLatitude = 0;
+            mPrevLongitude = 0;
+            mPrevAccuracy = 0;
+            mPrevAltitude = 0;
+        }
+
+        /**
+         * Resets this encoder to contain exactly the coordinates in the given encoded chunk.
+         */
+        public void restore(@Nonnull byte[] chunk) {
+            reset();
+            final Decoder decoder = new Decoder(chunk);
+            while (decoder.moveToNext()) {
+                append(decoder.getTime(), decoder.getLatitude(), decoder.getLongitude(),
+                        decoder.getAccuracy(), decoder.getAltitude());
+            }
+        }
+
+        public void append(long time, double latitude, double longitude, double accuracy, double altitude) {
+            if (isFull()) {
+                throw new IllegalStateException("Chunk is full");
+            }
+            final long lat = Math.round(latitude * DEGREES_SCALE);
+            final long lng = Math.round(longitude * DEGREES_SCALE);
+            final long acc = Math.round(accuracy * METERS_SCALE);
+            final long alt = Math.round(altitude * METERS_SCALE);
+
+            ensureCapacity(mLength + 5 * 10);
+            writeSigned(time - mPrevTime);
+            writeSigned(lat - mPrevLatitude);
+            writeSigned(lng - mPrevLongitude);
+            writeSigned(acc - mPrevAccuracy);
+            writeSigned(alt - mPrevAltitude);
+
+            mPrevTime = time;
+            mPrevLatitude = lat;
+            mPrevLongitude = lng;
+            mPrevAccuracy = acc;
+            mPrevAltitude = alt;
+            mCount++;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public boolean isFull() {
+            return mCount >= POINTS_PER_CHUNK;
+        }
+
+        @Nonnull
+        public byte[] toByteArray() {
+            return Arrays.copyOf(mBuffer, mLength);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (mBuffer.length < capacity) {
+                mBuffer = Arrays.copyOf(mBuffer, Math.max(capacity, mBuffer.length * 2));
+            }
+        }
+
+        private void writeSigned(long value) {
+            // zigzag encode so small negative deltas stay small
+            long v = (value << 1) ^ (value >> 63);
+            while ((v & ~0x7FL) != 0) {
+                mBuffer[mLength++] = (byte)((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            mBuffer[mLength++] = (byte)v;
+        }
+    }
+
+    /**
+     * Cursor over the coordinates in an encoded chunk. Starts positioned before the first
+     * coordinate.
+     */
+    @NotThreadSafe
+    public static class Decoder {
+
+        private final byte[] mChunk;
+        private int mOffset;
+
+        private long mTime;
+        private long mLatitude;
+        private long mLongitude;
+        private long mAccuracy;
+        private long mAltitude;
+
+        public Decoder(@Nonnull byte[] chunk) {
+            if (chunk.length == 0 || chunk[0] != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported path chunk format");
+            }
+            mChunk = chunk;
+            mOffset = 1;
+        }
+
+        /**
+         * Advances to the next coordinate, returning false if there are no more.
+         */
+        public boolean moveToNext() {
+            if (mOffset >= mChunk.length) {
+                return false;
+            }
+            mTime += readSigned();
+            mLatitude += readSigned();
+            mLongitude += readSigned();
+            mAccuracy += readSigned();
+            mAltitude += readSigned();
+            return true;
+        }
+
+        public long getTime() {
+            return mTime;
+        }
+
+        public double getLatitude() {
+            return mLatitude / DEGREES_SCALE;
+        }
+
+        public double getLongitude() {
+            return mLongitude / DEGREES_SCALE;
+        }
+
+        public double getAccuracy() {
+            return mAccuracy / METERS_SCALE;
+        }
+
+        public double getAltitude() {
+            return mAltitude / METERS_SCALE;
+        }
+
+        private long readSigned() {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mChunk[mOffset++];
+                v |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+}
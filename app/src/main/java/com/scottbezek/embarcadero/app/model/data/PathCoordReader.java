@@ -0,0 +1,233 @@
+package com.scottbezek.embarcadero.app.model.data;
+
+import com.scottbezek.embarcadero.app.model.store.StoreList;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+import com.scottbezek.embarcadero.app.util.Asserts;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Cursor over the coordinates stored in a path record, regardless of which storage format the
+ * record uses. Starts positioned before the first coordinate; call {@link #moveToNext()} to
+ * advance.
+ * <p>
+ * Reads directly from the record, so it must only be used while holding the datastore read
+ * (or write) lock.
+ */
+@NotThreadSafe
+public abstract class PathCoordReader {
+
+    /**
+     * Returns a reader for the coordinates in the given path record.
+     */
+    @Nonnull
+    public static PathCoordReader from(@Nonnull StoreRecord pathRecord) {
+        return from(pathRecord, 0);
+    }
+
+    /**
+     * Returns a reader for the coordinates in the given path record, starting at the specified
+     * index. {@link #size()} still counts every coordinate in the record.
+     */
+    @Nonnull
+    public static PathCoordReader from(@Nonnull StoreRecord pathRecord, int startIndex) {
+        if (startIndex < 0) {
+            throw new IllegalArgumentException("Invalid start index " + startIndex);
+        }
+        if (isChunked(pathRecord)) {
+            return new ChunkedReader(pathRecord, startIndex);
+        } else {
+            return new LegacyReader(pathRecord, startIndex);
+        }
+    }
+
+    /**
+     * Returns the number of coordinates in the path record, without reading any of them.
+     */
+    public static int getCount(@Nonnull StoreRecord pathRecord) {
+        if (isChunked(pathRecord)) {
+            return pathRecord.hasField(PathRecordFields.COORD_COUNT) ?
+                    (int)pathRecord.getLong(PathRecordFields.COORD_COUNT) : 0;
+        } else {
+            return pathRecord.hasField(PathRecordFields.COORD_TIME) ?
+                    pathRecord.getList(PathRecordFields.COORD_TIME).size() : 0;
+        }
+    }
+
+    static boolean isChunked(@Nonnull StoreRecord pathRecord) {
+        return pathRecord.hasField(PathRecordFields.COORD_FORMAT)
+                && pathRecord.getLong(PathRecordFields.COORD_FORMAT) == PathRecordFields.COORD_FORMAT_CHUNKED;
+    }
+
+    /**
+     * Total number of coordinates available from this reader.
+     */
+    public abstract int size();
+
+    /**
+     * Advances to the next coordinate, returning false if there are no more.
+     */
+    public abstract boolean moveToNext();
+
+    public abstract long getTime();
+
+    public abstract double getLatitude();
+
+    public abstract double getLongitude();
+
+    public abstract double getAccuracy();
+
+    public abstract double getAltitude();
+
+    /**
+     * Reads the five parallel coordinate lists of the original storage format.
+     */
+    private static class LegacyReader extends PathCoordReader {
+
+        private final int mSize;
+        private int mPosition;
+
+        private StoreList mTimes;
+        private StoreList mLatitudes;
+        private StoreList mLongitudes;
+        private StoreList mAccuracies;
+        private StoreList mAltitudes;
+
+        LegacyReader(StoreRecord pathRecord, int startIndex) {
+            mPosition = startIndex - 1;
+            Asserts.assertAllEqual(pathRecord.hasField(PathRecordFields.COORD_TIME),
+                    pathRecord.hasField(PathRecordFields.COORD_LATITUDE),
+                    pathRecord.hasField(PathRecordFields.COORD_LONGITUDE),
+                    pathRecord.hasField(PathRecordFields.COORD_ACCURACY),
+                    pathRecord.hasField(PathRecordFields.COORD_ALTITUDE));
+
+            if (!pathRecord.hasField(PathRecordFields.COORD_TIME)) {
+                mSize = 0;
+                return;
+            }
+            mTimes = pathRecord.getList(PathRecordFields.COORD_TIME);
+            mLatitudes = pathRecord.getList(PathRecordFields.COORD_LATITUDE);
+            mLongitudes = pathRecord.getList(PathRecordFields.COORD_LONGITUDE);
+            mAccuracies = pathRecord.getList(PathRecordFields.COORD_ACCURACY);
+            mAltitudes = pathRecord.getList(PathRecordFields.COORD_ALTITUDE);
+            Asserts.assertAllEqual(
+                    mTimes.size(),
+                    mLatitudes.size(),
+                    mLongitudes.size(),
+                    mAccuracies.size(),
+                    mAltitudes.size());
+            mSize = mTimes.size();
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            if (mPosition + 1 >= mSize) {
+                return false;
+            }
+            mPosition++;
+            return true;
+        }
+
+        @Override
+        public long getTime() {
+            return mTimes.getLong(mPosition);
+        }
+
+        @Override
+        public double getLatitude() {
+            return mLatitudes.getDouble(mPosition);
+        }
+
+        @Override
+        public double getLongitude() {
+            return mLongitudes.getDouble(mPosition);
+        }
+
+        @Override
+        public double getAccuracy() {
+            return mAccuracies.getDouble(mPosition);
+        }
+
+        @Override
+        public double getAltitude() {
+            return mAltitudes.getDouble(mPosition);
+        }
+    }
+
+    /**
+     * Reads coordinates packed into {@link PathCoordChunks}.
+     */
+    private static class ChunkedReader extends PathCoordReader {
+
+        private final StoreList mChunks;
+        private final int mSize;
+        private int mChunkIndex = -1;
+        private PathCoordChunks.Decoder mDecoder = null;
+
+        ChunkedReader(StoreRecord pathRecord, int startIndex) {
+            mChunks = pathRecord.hasField(PathRecordFields.COORD_CHUNKS) ?
+                    pathRecord.getList(PathRecordFields.COORD_CHUNKS) : null;
+            mSize = getCount(pathRecord);
+
+            // Every chunk but the last is full, so we can jump straight to the right one
+            final int chunkIndex = startIndex / PathCoordChunks.POINTS_PER_CHUNK;
+            if (startIndex > 0 && mChunks != null && chunkIndex < mChunks.size()) {
+                mChunkIndex = chunkIndex;
+                mDecoder = new PathCoordChunks.Decoder(mChunks.getBytes(chunkIndex));
+                for (int i = 0; i < startIndex % PathCoordChunks.POINTS_PER_CHUNK; i++) {
+                    mDecoder.moveToNext();
+                }
+            } else if (startIndex > 0) {
+                mChunkIndex = mChunks == null ? 0 : mChunks.size();
+            }
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            while (mDecoder == null || !mDecoder.moveToNext()) {
+                if (mChunks == null || mChunkIndex + 1 >= mChunks.size()) {
+                    return false;
+                }
+                mChunkIndex++;
+                mDecoder = new PathCoordChunks.Decoder(mChunks.getBytes(mChunkIndex));
+            }
+            return true;
+        }
+
+        @Override
+        public long getTime() {
+            return mDecoder.getTime();
+        }
+
+        @Override
+        public double getLatitude() {
+            return mDecoder.getLatitude();
+        }
+
+        @Override
+        public double getLongitude() {
+            return mDecoder.getLongitude();
+        }
+
+        @Override
+        public double getAccuracy() {
+            return mDecoder.getAccuracy();
+        }
+
+        @Override
+        public double getAltitude() {
+            return mDecoder.getAltitude();
+        }
+    }
+}
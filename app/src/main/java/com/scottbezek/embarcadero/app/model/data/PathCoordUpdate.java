@@ -0,0 +1,84 @@
+package com.scottbezek.embarcadero.app.model.data;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Incremental update to a path's coordinates. Recording only ever appends coordinates, so most
+ * updates just add new coordinates to the end of the previously emitted ones. If the path was
+ * rewritten (e.g. by a remote change), the update is instead marked as a reset and consumers should
+ * discard everything they had.
+ */
+@Immutable
+public class PathCoordUpdate {
+
+    private final PathCoordBuffer mCoords;
+    private final int mFirstNewIndex;
+    private final boolean mReset;
+
+    public PathCoordUpdate(@Nonnull PathCoordBuffer coords, int firstNewIndex, boolean reset) {
+        if (firstNewIndex < 0 || firstNewIndex > coords.size() || (reset && firstNewIndex != 0)) {
+            throw new IllegalArgumentException("Invalid first new index " + firstNewIndex);
+        }
+        mCoords = coords;
+        mFirstNewIndex = firstNewIndex;
+        mReset = reset;
+    }
+
+    /**
+     * All of the path's coordinates, including the ones that were already emitted.
+     */
+    @Nonnull
+    public PathCoordBuffer getCoords() {
+        return mCoords;
+    }
+
+    /**
+     * Index in {@link #getCoords()} of the first coordinate that's new in this update.
+     */
+    public int getFirstNewIndex() {
+        return mFirstNewIndex;
+    }
+
+    public int getNewCount() {
+        return mCoords.size() - mFirstNewIndex;
+    }
+
+    /**
+     * Whether previously emitted coordinates should be discarded. Always the case for the first
+     * update.
+     */
+    public boolean isReset() {
+        return mReset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PathCoordUpdate)) {
+            return false;
+        }
+        final PathCoordUpdate other = (PathCoordUpdate)o;
+        return mFirstNewIndex == other.mFirstNewIndex
+                && mReset == other.mReset
+                && mCoords.equals(other.mCoords);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mCoords.hashCode();
+        result = 31 * result + mFirstNewIndex;
+        result = 31 * result + (mReset ? 1 : 0);
+        return result;
+    }
+
+    /**
+     * Returns this update as a reset, for consumers that haven't seen the earlier coordinates.
+     */
+    @Nonnull
+    public PathCoordUpdate asReset() {
+        return mReset ? this : new PathCoordUpdate(mCoords, 0, true);
+    }
+}
@@ -0,0 +1,83 @@
+package com.scottbezek.embarcadero.app.model.data;
+
+import com.scottbezek.embarcadero.app.model.store.StoreList;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Appends coordinates to a path record in the chunked storage format (see {@link PathCoordChunks}).
+ * <p>
+ * Coordinates are buffered in the open chunk until {@link #flush()} writes it to the record, so
+ * a batch of coordinates only rewrites the open chunk once. Writes directly to the record, so it must
+ * only be used while holding the datastore write lock.
+ */
+@NotThreadSafe
+public class PathCoordWriter {
+
+    private final StoreRecord mPathRecord;
+    private final PathCoordChunks.Encoder mOpenChunk = new PathCoordChunks.Encoder();
+
+    private int mCount;
+    private boolean mOpenChunkStored;
+    private boolean mDirty = false;
+
+    /**
+     * Creates a writer that appends to the given path record, which must either be empty or
+     * already use the chunked format.
+     */
+    public PathCoordWriter(@Nonnull StoreRecord pathRecord) {
+        if (!PathCoordReader.isChunked(pathRecord)) {
+            if (pathRecord.hasField(PathRecordFields.COORD_TIME)) {
+                throw new IllegalArgumentException("Path record uses the legacy format, migrate it first");
+            }
+            pathRecord.set(PathRecordFields.COORD_FORMAT, PathRecordFields.COORD_FORMAT_CHUNKED);
+            pathRecord.set(PathRecordFields.COORD_COUNT, 0L);
+        }
+        mPathRecord = pathRecord;
+        mCount = PathCoordReader.getCount(pathRecord);
+
+        // Pick up where the last writer left off if its final chunk still has room
+        final StoreList chunks = pathRecord.getOrCreateList(PathRecordFields.COORD_CHUNKS);
+        if (chunks.size() > 0 && mCount % PathCoordChunks.POINTS_PER_CHUNK != 0) {
+            mOpenChunk.restore(chunks.getBytes(chunks.size() - 1));
+            mOpenChunkStored = true;
+        } else {
+            mOpenChunkStored = false;
+        }
+    }
+
+    public void add(long time, double latitude, double longitude, double accuracy, double altitude) {
+        if (mOpenChunk.isFull()) {
+            flush();
+            mOpenChunk.reset();
+            mOpenChunkStored = false;
+        }
+        mOpenChunk.append(time, latitude, longitude, accuracy, altitude);
+        mCount++;
+        mDirty = true;
+    }
+
+    /**
+     * Writes any buffered coordinates to the path record.
+     */
+    public void flush() {
+        if (!mDirty) {
+            return;
+        }
+        final StoreList chunks = mPathRecord.getOrCreateList(PathRecordFields.COORD_CHUNKS);
+        if (mOpenChunkStored) {
+            chunks.set(chunks.size() - 1, mOpenChunk.toByteArray());
+        } else {
+            chunks.add(mOpenChunk.toByteArray());
+            mOpenChunkStored = true;
+        }
+        mPathRecord.set(PathRecordFields.COORD_COUNT, (long)mCount);
+        mDirty = false;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+}
@@ -22,14 +22,20 @@ public class PathListItem {
     @CheckForNull
     private final Long mStopTimeMillis;
 
-    private final int mPathSegmentCount;
+    @Nonnull
+    private final PathStats mStats;
+
+    /**
+     * Lazily computed, 0 if not yet. Racy but safe, like {@link String#hashCode()}.
+     */
+    private int mHashCode = 0;
 
-    public PathListItem(@Nonnull String recordId, @CheckForNull String name, long startTimeMillis, @CheckForNull Long stopTimeMillis, int pathSegmentCount) {
+    public PathListItem(@Nonnull String recordId, @CheckForNull String name, long startTimeMillis, @CheckForNull Long stopTimeMillis, @Nonnull PathStats stats) {
         mRecordId = recordId;
         mName = name;
         mStartTimeMillis = startTimeMillis;
         mStopTimeMillis = stopTimeMillis;
-        mPathSegmentCount = pathSegmentCount;
+        mStats = stats;
     }
 
     @Nonnull
@@ -52,7 +58,45 @@ public class PathListItem {
     }
 
     public int getPathSegmentCount() {
-        return mPathSegmentCount;
+        return mStats.getPointCount();
+    }
+
+    @Nonnull
+    public PathStats getStats() {
+        return mStats;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PathListItem)) {
+            return false;
+        }
+        final PathListItem other = (PathListItem)o;
+        if (mHashCode != 0 && other.mHashCode != 0 && mHashCode != other.mHashCode) {
+            return false;
+        }
+        return mStartTimeMillis == other.mStartTimeMillis
+                && mRecordId.equals(other.mRecordId)
+                && (mName == null ? other.mName == null : mName.equals(other.mName))
+                && (mStopTimeMillis == null ? other.mStopTimeMillis == null : mStopTimeMillis.equals(other.mStopTimeMillis))
+                && mStats.equals(other.mStats);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mHashCode;
+        if (result == 0) {
+            result = mRecordId.hashCode();
+            result = 31 * result + (mName != null ? mName.hashCode() : 0);
+            result = 31 * result + (int)(mStartTimeMillis ^ (mStartTimeMillis >>> 32));
+            result = 31 * result + (mStopTimeMillis != null ? mStopTimeMillis.hashCode() : 0);
+            result = 31 * result + mStats.hashCode();
+            mHashCode = result;
+        }
+        return result;
     }
 
     public static final Comparator<PathListItem> sAscendingStartTimeComparator = new Comparator<PathListItem>() {
@@ -69,4 +113,16 @@ public class PathListItem {
                 }
             }
     };
+
+    /**
+     * Newest first, breaking ties by record id so that no two paths compare equal. This is the
+     * order of {@link com.scottbezek.embarcadero.app.model.PathManager#getPathList}.
+     */
+    public static final Comparator<PathListItem> sDescendingStartTimeComparator = new Comparator<PathListItem>() {
+            @Override
+            public int compare(PathListItem lhs, PathListItem rhs) {
+                final int byTime = sAscendingStartTimeComparator.compare(rhs, lhs);
+                return byTime != 0 ? byTime : lhs.getRecordId().compareTo(rhs.getRecordId());
+            }
+    };
 }
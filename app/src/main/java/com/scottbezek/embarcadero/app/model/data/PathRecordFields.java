@@ -7,9 +7,37 @@ public class PathRecordFields {
     public static final String START_TIME = "start_time";
     public static final String STOP_TIME = "stop_time";
 
+    /**
+     * Summary of the path's coordinates, kept up to date while recording (see {@link PathStats}).
+     * Stale if {@link #STAT_POINT_COUNT} doesn't match the number of coordinates.
+     */
+    public static final String STAT_POINT_COUNT = "stat_point_count";
+    public static final String STAT_FIRST_TIME = "stat_first_time";
+    public static final String STAT_LAST_TIME = "stat_last_time";
+    public static final String STAT_MIN_LATITUDE = "stat_min_latitude";
+    public static final String STAT_MAX_LATITUDE = "stat_max_latitude";
+    public static final String STAT_MIN_LONGITUDE = "stat_min_longitude";
+    public static final String STAT_MAX_LONGITUDE = "stat_max_longitude";
+    public static final String STAT_DISTANCE = "stat_distance_m";
+    public static final String STAT_ELEVATION_GAIN = "stat_elevation_gain_m";
+    public static final String STAT_MAX_SPEED = "stat_max_speed_mps";
+
     public static final String COORD_LATITUDE = "coord_latitude";
     public static final String COORD_LONGITUDE = "coord_longitude";
     public static final String COORD_TIME = "coord_time";
     public static final String COORD_ACCURACY = "coord_accuracy";
     public static final String COORD_ALTITUDE = "coord_altitude";
+
+    /**
+     * Storage format of the path's coordinates. Absent for records that store them in the five
+     * legacy <code>coord_*</code> lists above.
+     */
+    public static final String COORD_FORMAT = "coord_format";
+    public static final long COORD_FORMAT_CHUNKED = 2;
+
+    /**
+     * List of encoded {@link PathCoordChunks}, used by {@link #COORD_FORMAT_CHUNKED} records.
+     */
+    public static final String COORD_CHUNKS = "coord_chunks";
+    public static final String COORD_COUNT = "coord_count";
 }
@@ -0,0 +1,59 @@
+package com.scottbezek.embarcadero.app.model.data;
+
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Converts path records from the original storage format (five parallel lists of coordinate
+ * values) to the chunked format written by {@link PathCoordWriter}.
+ */
+public class PathRecordMigrator {
+
+    private PathRecordMigrator() {}
+
+    /**
+     * Returns true if the record still stores its coordinates in the legacy format.
+     */
+    public static boolean needsMigration(@Nonnull StoreRecord pathRecord) {
+        return !PathCoordReader.isChunked(pathRecord)
+                && pathRecord.hasField(PathRecordFields.COORD_TIME);
+    }
+
+    /**
+     * Rewrites the coordinates of a legacy path record in the chunked format and removes the legacy
+     * fields. Must be called while holding the datastore write lock, and followed by a sync.
+     */
+    public static void migrate(@Nonnull StoreRecord pathRecord) {
+        if (!needsMigration(pathRecord)) {
+            return;
+        }
+        final PathCoordReader legacyReader = PathCoordReader.from(pathRecord);
+        final PathCoordChunks.Encoder encoder = new PathCoordChunks.Encoder();
+        final List<byte[]> chunks = new ArrayList<>();
+        while (legacyReader.moveToNext()) {
+            if (encoder.isFull()) {
+                chunks.add(encoder.toByteArray());
+                encoder.reset();
+            }
+            encoder.append(legacyReader.getTime(), legacyReader.getLatitude(),
+                    legacyReader.getLongitude(), legacyReader.getAccuracy(),
+                    legacyReader.getAltitude());
+        }
+        if (encoder.getCount() > 0) {
+            chunks.add(encoder.toByteArray());
+        }
+
+        pathRecord.setBytesList(PathRecordFields.COORD_CHUNKS, chunks);
+        pathRecord.set(PathRecordFields.COORD_COUNT, (long)legacyReader.size());
+        pathRecord.set(PathRecordFields.COORD_FORMAT, PathRecordFields.COORD_FORMAT_CHUNKED);
+        pathRecord.deleteField(PathRecordFields.COORD_TIME);
+        pathRecord.deleteField(PathRecordFields.COORD_LATITUDE);
+        pathRecord.deleteField(PathRecordFields.COORD_LONGITUDE);
+        pathRecord.deleteField(PathRecordFields.COORD_ACCURACY);
+        pathRecord.deleteField(PathRecordFields.COORD_ALTITUDE);
+    }
+}
@@ -0,0 +1,314 @@
+package com.scottbezek.embarcadero.app.model.data;
+
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Summary of a path's coordinates: how many there are, when they span, the area they cover, how
+ * far they go and how fast. Stored in the path record's <code>stat_*</code> fields so that it can be
+ * shown without reading any coordinates.
+ */
+@Immutable
+public class PathStats {
+
+    public static final PathStats EMPTY = new PathStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    private static final double EARTH_RADIUS_METERS = 6371009;
+
+    /**
+     * Altitude changes smaller than this are treated as GPS noise when adding up elevation gain.
+     */
+    private static final double ELEVATION_NOISE_METERS = 5;
+
+    private final int mPointCount;
+    private final long mFirstTimeMillis;
+    private final long mLastTimeMillis;
+    private final double mMinLatitude;
+    private final double mMaxLatitude;
+    private final double mMinLongitude;
+    private final double mMaxLongitude;
+    private final double mDistanceMeters;
+    private final double mElevationGainMeters;
+    private final double mMaxSpeedMetersPerSecond;
+
+    public PathStats(int pointCount, long firstTimeMillis, long lastTimeMillis,
+            double minLatitude, double maxLatitude, double minLongitude, double maxLongitude,
+            double distanceMeters, double elevationGainMeters, double maxSpeedMetersPerSecond) {
+        mPointCount = pointCount;
+        mFirstTimeMillis = firstTimeMillis;
+        mLastTimeMillis = lastTimeMillis;
+        mMinLatitude = minLatitude;
+        mMaxLatitude = maxLatitude;
+        mMinLongitude = minLongitude;
+        mMaxLongitude = maxLongitude;
+        mDistanceMeters = distanceMeters;
+        mElevationGainMeters = elevationGainMeters;
+        mMaxSpeedMetersPerSecond = maxSpeedMetersPerSecond;
+    }
+
+    /**
+     * Returns the stats stored in the path record, or null if there are none or they don't cover
+     * every coordinate in the record.
+     */
+    @CheckForNull
+    public static PathStats readFrom(@Nonnull StoreRecord pathRecord) {
+        if (!pathRecord.hasField(PathRecordFields.STAT_POINT_COUNT)) {
+            return null;
+        }
+        final int pointCount = (int)pathRecord.getLong(PathRecordFields.STAT_POINT_COUNT);
+        if (pointCount != PathCoordReader.getCount(pathRecord)) {
+            return null;
+        }
+        if (pointCount == 0) {
+            return EMPTY;
+        }
+        return new PathStats(pointCount,
+                pathRecord.getLong(PathRecordFields.STAT_FIRST_TIME),
+                pathRecord.getLong(PathRecordFields.STAT_LAST_TIME),
+                pathRecord.getDouble(PathRecordFields.STAT_MIN_LATITUDE),
+                pathRecord.getDouble(PathRecordFields.STAT_MAX_LATITUDE),
+                pathRecord.getDouble(PathRecordFields.STAT_MIN_LONGITUDE),
+                pathRecord.getDouble(PathRecordFields.STAT_MAX_LONGITUDE),
+                pathRecord.getDouble(PathRecordFields.STAT_DISTANCE),
+                pathRecord.getDouble(PathRecordFields.STAT_ELEVATION_GAIN),
+                pathRecord.getDouble(PathRecordFields.STAT_MAX_SPEED));
+    }
+
+    /**
+     * Computes stats from every coordinate in the path record.
+     */
+    @Nonnull
+    public static PathStats compute(@Nonnull StoreRecord pathRecord) {
+        final Accumulator accumulator = new Accumulator();
+        accumulator.addAll(PathCoordReader.from(pathRecord));
+        return accumulator.toStats();
+    }
+
+    /**
+     * Stores these stats in the path record. Must be called while holding the datastore write lock.
+     */
+    public void writeTo(@Nonnull StoreRecord pathRecord) {
+        pathRecord.set(PathRecordFields.STAT_POINT_COUNT, (long)mPointCount);
+        if (mPointCount == 0) {
+            return;
+        }
+        pathRecord.set(PathRecordFields.STAT_FIRST_TIME, mFirstTimeMillis);
+        pathRecord.set(PathRecordFields.STAT_LAST_TIME, mLastTimeMillis);
+        pathRecord.set(PathRecordFields.STAT_MIN_LATITUDE, mMinLatitude);
+        pathRecord.set(PathRecordFields.STAT_MAX_LATITUDE, mMaxLatitude);
+        pathRecord.set(PathRecordFields.STAT_MIN_LONGITUDE, mMinLongitude);
+        pathRecord.set(PathRecordFields.STAT_MAX_LONGITUDE, mMaxLongitude);
+        pathRecord.set(PathRecordFields.STAT_DISTANCE, mDistanceMeters);
+        pathRecord.set(PathRecordFields.STAT_ELEVATION_GAIN, mElevationGainMeters);
+        pathRecord.set(PathRecordFields.STAT_MAX_SPEED, mMaxSpeedMetersPerSecond);
+    }
+
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    public long getFirstTimeMillis() {
+        return mFirstTimeMillis;
+    }
+
+    public long getLastTimeMillis() {
+        return mLastTimeMillis;
+    }
+
+    /**
+     * Time between the first and last coordinates.
+     */
+    public long getDurationMillis() {
+        return mLastTimeMillis - mFirstTimeMillis;
+    }
+
+    /**
+     * Whether the bounding box is meaningful, i.e. there's at least one point.
+     */
+    public boolean hasBounds() {
+        return mPointCount > 0;
+    }
+
+    public double getMinLatitude() {
+        return mMinLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return mMaxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return mMinLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return mMaxLongitude;
+    }
+
+    /**
+     * Length of the path along the surface of the earth, following every point.
+     */
+    public double getDistanceMeters() {
+        return mDistanceMeters;
+    }
+
+    /**
+     * Total of every climb along the path, ignoring altitude changes that look like GPS noise.
+     */
+    public double getElevationGainMeters() {
+        return mElevationGainMeters;
+    }
+
+    public double getAverageSpeedMetersPerSecond() {
+        final long durationMillis = getDurationMillis();
+        return durationMillis > 0 ? mDistanceMeters * 1000 / durationMillis : 0;
+    }
+
+    /**
+     * Fastest speed between any two consecutive points.
+     */
+    public double getMaxSpeedMetersPerSecond() {
+        return mMaxSpeedMetersPerSecond;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PathStats)) {
+            return false;
+        }
+        final PathStats other = (PathStats)o;
+        return mPointCount == other.mPointCount
+                && mFirstTimeMillis == other.mFirstTimeMillis
+                && mLastTimeMillis == other.mLastTimeMillis
+                && Double.compare(mMinLatitude, other.mMinLatitude) == 0
+                && Double.compare(mMaxLatitude, other.mMaxLatitude) == 0
+                && Double.compare(mMinLongitude, other.mMinLongitude) == 0
+                && Double.compare(mMaxLongitude, other.mMaxLongitude) == 0
+                && Double.compare(mDistanceMeters, other.mDistanceMeters) == 0
+                && Double.compare(mElevationGainMeters, other.mElevationGainMeters) == 0
+                && Double.compare(mMaxSpeedMetersPerSecond, other.mMaxSpeedMetersPerSecond) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        // Paths rarely share a point count and last time, so the rest isn't worth hashing
+        int result = mPointCount;
+        result = 31 * result + (int)(mLastTimeMillis ^ (mLastTimeMillis >>> 32));
+        result = 31 * result + PathCoord.hashDouble(mDistanceMeters);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PathStats{points=" + mPointCount + ", duration=" + getDurationMillis()
+                + "ms, distance=" + mDistanceMeters + "m, elevationGain=" + mElevationGainMeters
+                + "m, maxSpeed=" + mMaxSpeedMetersPerSecond + "m/s}";
+    }
+
+    /**
+     * Great-circle distance between two points, using the haversine formula.
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        final double dLat = Math.toRadians(lat2 - lat1);
+        final double dLng = Math.toRadians(lng2 - lng1);
+        final double sinLat = Math.sin(dLat / 2);
+        final double sinLng = Math.sin(dLng / 2);
+        final double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * Builds up {@link PathStats} one coordinate at a time, so that stats for a path that's being
+     * appended to can be extended rather than recomputed.
+     */
+    @NotThreadSafe
+    public static class Accumulator {
+
+        private int mPointCount = 0;
+        private long mFirstTime;
+        private double mMinLatitude;
+        private double mMaxLatitude;
+        private double mMinLongitude;
+        private double mMaxLongitude;
+        private double mDistanceMeters = 0;
+        private double mElevationGainMeters = 0;
+        private double mMaxSpeedMetersPerSecond = 0;
+
+        private long mLastTime;
+        private double mLastLatitude;
+        private double mLastLongitude;
+        private double mElevationReference;
+
+        public void add(long time, double latitude, double longitude, double altitude) {
+            if (mPointCount == 0) {
+                mFirstTime = time;
+                mMinLatitude = mMaxLatitude = latitude;
+                mMinLongitude = mMaxLongitude = longitude;
+                mElevationReference = altitude;
+            } else {
+                mMinLatitude = Math.min(mMinLatitude, latitude);
+                mMaxLatitude = Math.max(mMaxLatitude, latitude);
+                mMinLongitude = Math.min(mMinLongitude, longitude);
+                mMaxLongitude = Math.max(mMaxLongitude, longitude);
+
+                final double segmentMeters = distanceMeters(mLastLatitude, mLastLongitude, latitude, longitude);
+                mDistanceMeters += segmentMeters;
+                if (time > mLastTime) {
+                    mMaxSpeedMetersPerSecond = Math.max(mMaxSpeedMetersPerSecond,
+                            segmentMeters * 1000 / (time - mLastTime));
+                }
+
+                // Only move the reference once the altitude has clearly changed, so that jitter
+                // around a constant altitude doesn't add up to a climb
+                if (altitude - mElevationReference >= ELEVATION_NOISE_METERS) {
+                    mElevationGainMeters += altitude - mElevationReference;
+                    mElevationReference = altitude;
+                } else if (mElevationReference - altitude >= ELEVATION_NOISE_METERS) {
+                    mElevationReference = altitude;
+                }
+            }
+            mPointCount++;
+            mLastTime = time;
+            mLastLatitude = latitude;
+            mLastLongitude = longitude;
+        }
+
+        /**
+         * Adds every remaining coordinate from the reader.
+         */
+        public void addAll(@Nonnull PathCoordReader reader) {
+            while (reader.moveToNext()) {
+                add(reader.getTime(), reader.getLatitude(), reader.getLongitude(), reader.getAltitude());
+            }
+        }
+
+        public int getPointCount() {
+            return mPointCount;
+        }
+
+        /**
+         * Time of the most recently added coordinate. Only meaningful if at least one was added.
+         */
+        public long getLastTime() {
+            return mLastTime;
+        }
+
+        @Nonnull
+        public PathStats toStats() {
+            if (mPointCount == 0) {
+                return EMPTY;
+            }
+            return new PathStats(mPointCount, mFirstTime, mLastTime, mMinLatitude, mMaxLatitude,
+                    mMinLongitude, mMaxLongitude, mDistanceMeters, mElevationGainMeters,
+                    mMaxSpeedMetersPerSecond);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.scottbezek.embarcadero.app.model.export;
+
+import javax.annotation.Nonnull;
+
+/**
+ * File formats that paths can be exported to by {@link PathExportWriter}.
+ */
+public enum PathExportFormat {
+
+    GPX("gpx", "application/gpx+xml"),
+    KML("kml", "application/vnd.google-earth.kml+xml"),
+    GEOJSON("geojson", "application/geo+json");
+
+    private final String mFileExtension;
+    private final String mMimeType;
+
+    PathExportFormat(String fileExtension, String mimeType) {
+        mFileExtension = fileExtension;
+        mMimeType = mimeType;
+    }
+
+    /**
+     * Extension for exported files, without the dot.
+     */
+    @Nonnull
+    public String getFileExtension() {
+        return mFileExtension;
+    }
+
+    @Nonnull
+    public String getMimeType() {
+        return mMimeType;
+    }
+}
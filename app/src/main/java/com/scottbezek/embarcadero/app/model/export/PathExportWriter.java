@@ -0,0 +1,515 @@
+package com.scottbezek.embarcadero.app.model.export;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.data.PathCoordReader;
+import com.scottbezek.embarcadero.app.model.data.PathRecordFields;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Streams path records out to a file format that other apps understand. Coordinates are read from a
+ * {@link CoordSource} a batch at a time and formatted into a fixed-size buffer, so exporting takes
+ * the same amount of memory however long the paths are.
+ * <p>
+ * Writing to the stream can block for as long as it likes, so the datastore lock shouldn't be held
+ * while writing a path. Instead, the source can take the lock just long enough to read each batch.
+ */
+@NotThreadSafe
+public abstract class PathExportWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Coordinates read at a time by {@link #writePath(StoreRecord)}.
+     */
+    private static final int COORDS_PER_READ = 4096;
+
+    /**
+     * Coordinates are stored to 1e-7 degrees, and altitudes to decimeters.
+     */
+    private static final int DEGREES_DECIMALS = 7;
+    private static final int METERS_DECIMALS = 1;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000};
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private final Writer mOut;
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+    private int mLength = 0;
+    private final char[] mDigits = new char[20];
+
+    private final SimpleDateFormat mDayFormat;
+    private final Date mDate = new Date();
+    private long mDayStartMillis = Long.MIN_VALUE;
+    private String mDayPrefix;
+
+    private boolean mStarted = false;
+    private int mPathCount = 0;
+    private long mPointCount = 0;
+
+    protected PathExportWriter(@Nonnull Writer out) {
+        mOut = out;
+        mDayFormat = new SimpleDateFormat("yyyy-MM-dd'T'", Locale.US);
+        mDayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Returns a writer for the given format, writing UTF-8 to the stream. The stream is closed
+     * along with the writer.
+     */
+    @Nonnull
+    public static PathExportWriter create(@Nonnull PathExportFormat format, @Nonnull OutputStream out) {
+        final Writer writer = new OutputStreamWriter(out, UTF_8);
+        switch (format) {
+            case GPX:
+                return new Gpx(writer);
+            case KML:
+                return new Kml(writer);
+            case GEOJSON:
+                return new GeoJson(writer);
+            default:
+                throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
+    /**
+     * Supplies the coordinates of the path being written, a batch at a time.
+     */
+    public interface CoordSource {
+
+        /**
+         * Returns the coordinates from the given index on, or as many of them as make up a batch.
+         * Returns an empty buffer once there are none left.
+         */
+        @Nonnull
+        PathCoordBuffer read(int startIndex) throws IOException;
+    }
+
+    /**
+     * Reads up to maxCount of the record's coordinates, from the given index on. Must only be called
+     * while holding the datastore read (or write) lock.
+     */
+    @Nonnull
+    public static PathCoordBuffer readCoords(@Nonnull StoreRecord pathRecord, int startIndex, int maxCount) {
+        final int count = Math.min(maxCount, PathCoordReader.getCount(pathRecord) - startIndex);
+        if (count <= 0) {
+            return PathCoordBuffer.EMPTY;
+        }
+        final PathCoordReader reader = PathCoordReader.from(pathRecord, startIndex);
+        final PathCoordBuffer.Builder builder = new PathCoordBuffer.Builder(count);
+        while (builder.size() < count && reader.moveToNext()) {
+            builder.add(reader.getTime(), reader.getLatitude(), reader.getLongitude(),
+                    reader.getAccuracy(), reader.getAltitude());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Appends the path in the given record, reading it directly. Must only be called while holding
+     * the datastore read (or write) lock, for the whole time it takes to write the path.
+     */
+    public final void writePath(@Nonnull final StoreRecord pathRecord) throws IOException {
+        final long startTime = pathRecord.getLong(PathRecordFields.START_TIME);
+        final long stopTime = pathRecord.hasField(PathRecordFields.STOP_TIME)
+                ? pathRecord.getLong(PathRecordFields.STOP_TIME) : -1;
+        writePath(pathRecord.getId(), startTime, stopTime, new CoordSource() {
+            @Nonnull
+            @Override
+            public PathCoordBuffer read(int startIndex) {
+                return readCoords(pathRecord, startIndex, COORDS_PER_READ);
+            }
+        });
+    }
+
+    /**
+     * Appends a path, reading its coordinates from the source.
+     *
+     * @param stopTime negative if the path is still being recorded
+     */
+    public final void writePath(@Nonnull String pathRecordId, long startTime, long stopTime,
+            @Nonnull CoordSource coords) throws IOException {
+        if (!mStarted) {
+            writeHeader();
+            mStarted = true;
+        }
+        mPointCount += appendPath(pathRecordId, startTime, stopTime, coords);
+        mPathCount++;
+    }
+
+    /**
+     * Finishes the file and closes the underlying stream. Paths can't be written afterwards.
+     */
+    public void close() throws IOException {
+        if (!mStarted) {
+            writeHeader();
+            mStarted = true;
+        }
+        writeFooter();
+        flushBuffer();
+        mOut.close();
+    }
+
+    public int getPathCount() {
+        return mPathCount;
+    }
+
+    public long getPointCount() {
+        return mPointCount;
+    }
+
+    protected abstract void writeHeader() throws IOException;
+
+    /**
+     * @param stopTime negative if the path is still being recorded
+     * @return the number of coordinates written
+     */
+    protected abstract int appendPath(@Nonnull String pathRecordId, long startTime, long stopTime,
+            @Nonnull CoordSource coords) throws IOException;
+
+    protected abstract void writeFooter() throws IOException;
+
+    /**
+     * Name given to an exported path. Paths don't have names of their own, so they're named after
+     * when they started.
+     */
+    protected void appendPathName(long startTime) throws IOException {
+        append("Path ");
+        appendTime(startTime);
+    }
+
+    protected void append(char c) throws IOException {
+        if (mLength == mBuffer.length) {
+            flushBuffer();
+        }
+        mBuffer[mLength++] = c;
+    }
+
+    protected void append(@Nonnull String s) throws IOException {
+        for (int start = 0; start < s.length(); ) {
+            if (mLength == mBuffer.length) {
+                flushBuffer();
+            }
+            final int count = Math.min(s.length() - start, mBuffer.length - mLength);
+            s.getChars(start, start + count, mBuffer, mLength);
+            mLength += count;
+            start += count;
+        }
+    }
+
+    protected void appendLong(long value) throws IOException {
+        if (value < 0) {
+            append('-');
+            if (value == Long.MIN_VALUE) {
+                append(Long.toString(value).substring(1));
+                return;
+            }
+            value = -value;
+        }
+        int i = mDigits.length;
+        do {
+            mDigits[--i] = (char)('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (i < mDigits.length) {
+            append(mDigits[i++]);
+        }
+    }
+
+    /**
+     * Appends the value in plain decimal notation (never exponent notation, which XML schemas and
+     * some JSON readers reject), rounded to the given number of decimal places.
+     */
+    protected void appendFixed(double value, int decimals) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // Not representable in any of the formats
+            append('0');
+            return;
+        }
+        final long scale = POWERS_OF_TEN[decimals];
+        final long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            append('-');
+        }
+        appendLong(scaled / scale);
+        if (decimals > 0) {
+            append('.');
+            long fraction = scaled % scale;
+            for (int i = decimals - 1; i >= 0; i--) {
+                mDigits[i] = (char)('0' + fraction % 10);
+                fraction /= 10;
+            }
+            for (int i = 0; i < decimals; i++) {
+                append(mDigits[i]);
+            }
+        }
+    }
+
+    protected void appendDegrees(double degrees) throws IOException {
+        appendFixed(degrees, DEGREES_DECIMALS);
+    }
+
+    protected void appendMeters(double meters) throws IOException {
+        appendFixed(meters, METERS_DECIMALS);
+    }
+
+    /**
+     * Appends the time as an ISO 8601 UTC timestamp, e.g. <code>2014-05-13T16:53:20.000Z</code>.
+     * Only the date part goes through a date formatter, and only when the day changes.
+     */
+    protected void appendTime(long timeMillis) throws IOException {
+        if (timeMillis < mDayStartMillis || timeMillis >= mDayStartMillis + MILLIS_PER_DAY) {
+            mDayStartMillis = timeMillis - ((timeMillis % MILLIS_PER_DAY) + MILLIS_PER_DAY) % MILLIS_PER_DAY;
+            mDate.setTime(mDayStartMillis);
+            mDayPrefix = mDayFormat.format(mDate);
+        }
+        append(mDayPrefix);
+        final int millisOfDay = (int)(timeMillis - mDayStartMillis);
+        appendTwoDigits(millisOfDay / (60 * 60 * 1000));
+        append(':');
+        appendTwoDigits(millisOfDay / (60 * 1000) % 60);
+        append(':');
+        appendTwoDigits(millisOfDay / 1000 % 60);
+        append('.');
+        final int millis = millisOfDay % 1000;
+        append((char)('0' + millis / 100));
+        appendTwoDigits(millis % 100);
+        append('Z');
+    }
+
+    private void appendTwoDigits(int value) throws IOException {
+        append((char)('0' + value / 10));
+        append((char)('0' + value % 10));
+    }
+
+    protected void appendXmlEscaped(@Nonnull String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '<':
+                    append("&lt;");
+                    break;
+                case '>':
+                    append("&gt;");
+                    break;
+                case '&':
+                    append("&amp;");
+                    break;
+                case '"':
+                    append("&quot;");
+                    break;
+                default:
+                    append(c);
+            }
+        }
+    }
+
+    protected void appendJsonString(@Nonnull String s) throws IOException {
+        append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                append('\\');
+                append(c);
+            } else if (c < 0x20) {
+                append(String.format(Locale.US, "\\u%04x", (int)c));
+            } else {
+                append(c);
+            }
+        }
+        append('"');
+    }
+
+    private void flushBuffer() throws IOException {
+        mOut.write(mBuffer, 0, mLength);
+        mLength = 0;
+    }
+
+    /**
+     * GPS Exchange Format 1.1, with one track per path.
+     */
+    private static class Gpx extends PathExportWriter {
+
+        Gpx(Writer out) {
+            super(out);
+        }
+
+        @Override
+        protected void writeHeader() throws IOException {
+            append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<gpx version=\"1.1\" creator=\"Embarcadero\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+        }
+
+        @Override
+        protected int appendPath(@Nonnull String pathRecordId, long startTime, long stopTime,
+                @Nonnull CoordSource coords) throws IOException {
+            append("<trk><name>");
+            appendPathName(startTime);
+            append("</name><trkseg>\n");
+            int count = 0;
+            for (PathCoordBuffer batch; !(batch = coords.read(count)).isEmpty(); ) {
+                for (int i = 0; i < batch.size(); i++) {
+                    append("<trkpt lat=\"");
+                    appendDegrees(batch.getLatitude(i));
+                    append("\" lon=\"");
+                    appendDegrees(batch.getLongitude(i));
+                    append("\"><ele>");
+                    appendMeters(batch.getAltitude(i));
+                    append("</ele><time>");
+                    appendTime(batch.getTime(i));
+                    append("</time></trkpt>\n");
+                }
+                count += batch.size();
+            }
+            append("</trkseg></trk>\n");
+            return count;
+        }
+
+        @Override
+        protected void writeFooter() throws IOException {
+            append("</gpx>\n");
+        }
+    }
+
+    /**
+     * KML 2.2, with one placemark per path holding a line string and the time span it covers.
+     * Per-coordinate times would need a second pass over the coordinates, so they're left out.
+     */
+    private static class Kml extends PathExportWriter {
+
+        Kml(Writer out) {
+            super(out);
+        }
+
+        @Override
+        protected void writeHeader() throws IOException {
+            append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document>\n");
+        }
+
+        @Override
+        protected int appendPath(@Nonnull String pathRecordId, long startTime, long stopTime,
+                @Nonnull CoordSource coords) throws IOException {
+            append("<Placemark><name>");
+            appendPathName(startTime);
+            append("</name><TimeSpan><begin>");
+            appendTime(startTime);
+            append("</begin>");
+            if (stopTime >= 0) {
+                append("<end>");
+                appendTime(stopTime);
+                append("</end>");
+            }
+            append("</TimeSpan><LineString><altitudeMode>absolute</altitudeMode><coordinates>\n");
+            int count = 0;
+            for (PathCoordBuffer batch; !(batch = coords.read(count)).isEmpty(); ) {
+                for (int i = 0; i < batch.size(); i++) {
+                    appendDegrees(batch.getLongitude(i));
+                    append(',');
+                    appendDegrees(batch.getLatitude(i));
+                    append(',');
+                    appendMeters(batch.getAltitude(i));
+                    append('\n');
+                }
+                count += batch.size();
+            }
+            append("</coordinates></LineString></Placemark>\n");
+            return count;
+        }
+
+        @Override
+        protected void writeFooter() throws IOException {
+            append("</Document></kml>\n");
+        }
+    }
+
+    /**
+     * GeoJSON feature collection, with one line string feature per path. Per-coordinate times go
+     * in a <code>coordTimes</code> property, as used by other GPX and KML converters, which takes
+     * a second pass over the coordinates.
+     */
+    private static class GeoJson extends PathExportWriter {
+
+        private boolean mFirstFeature = true;
+
+        GeoJson(Writer out) {
+            super(out);
+        }
+
+        @Override
+        protected void writeHeader() throws IOException {
+            append("{\"type\":\"FeatureCollection\",\"features\":[");
+        }
+
+        @Override
+        protected int appendPath(@Nonnull String pathRecordId, long startTime, long stopTime,
+                @Nonnull CoordSource coords) throws IOException {
+            if (!mFirstFeature) {
+                append(',');
+            }
+            mFirstFeature = false;
+            append("\n{\"type\":\"Feature\",\"id\":");
+            appendJsonString(pathRecordId);
+            append(",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+            int count = 0;
+            for (PathCoordBuffer batch; !(batch = coords.read(count)).isEmpty(); ) {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (count + i > 0) {
+                        append(',');
+                    }
+                    append('[');
+                    appendDegrees(batch.getLongitude(i));
+                    append(',');
+                    appendDegrees(batch.getLatitude(i));
+                    append(',');
+                    appendMeters(batch.getAltitude(i));
+                    append(']');
+                }
+                count += batch.size();
+            }
+            append("]},\"properties\":{\"name\":\"");
+            appendPathName(startTime);
+            append("\",\"startTime\":\"");
+            appendTime(startTime);
+            append('"');
+            if (stopTime >= 0) {
+                append(",\"stopTime\":\"");
+                appendTime(stopTime);
+                append('"');
+            }
+            append(",\"coordTimes\":[");
+            // Only as many times as coordinates, in case the path grew while they were written
+            int timeCount = 0;
+            for (PathCoordBuffer batch; timeCount < count && !(batch = coords.read(timeCount)).isEmpty(); ) {
+                for (int i = 0; i < batch.size() && timeCount < count; i++, timeCount++) {
+                    if (timeCount > 0) {
+                        append(',');
+                    }
+                    append('"');
+                    appendTime(batch.getTime(i));
+                    append('"');
+                }
+            }
+            append("]}}");
+            return count;
+        }
+
+        @Override
+        protected void writeFooter() throws IOException {
+            append("\n]}\n");
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.scottbezek.embarcadero.app.model.geo;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Douglas-Peucker path simplification with precomputed detail levels for each map zoom level.
+ * <p>
+ * Rather than running Douglas-Peucker separately for each tolerance, each point is assigned an
+ * importance: the largest tolerance (in meters) at which Douglas-Peucker would still keep it. The
+ * simplified path for any tolerance is then just the points whose importance exceeds it.
+ * <p>
+ * To support paths that are still being recorded, the path is simplified in fixed-size windows
+ * that share their endpoints. Appending points only recomputes the last, still open, window, so
+ * importances (and the simplified points) before {@link #getStableCount()} never change.
+ */
+@NotThreadSafe
+public class PathSimplifier {
+
+    public static final int MAX_ZOOM = 21;
+
+    private static final int WINDOW_SIZE = 256;
+
+    private static final double EARTH_RADIUS_METERS = 6371009;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+
+    /**
+     * Ground resolution of a Google Maps pixel at zoom level 0 on the equator.
+     */
+    private static final double EQUATOR_METERS_PER_PIXEL_AT_ZOOM_0 = 156543.03392;
+
+    /**
+     * How far (in screen pixels) the simplified path may stray from the original.
+     */
+    private static final double TOLERANCE_PIXELS = 1;
+
+    // Points projected to meters, using an equirectangular projection around the first point
+    private double[] mX = new double[WINDOW_SIZE];
+    private double[] mY = new double[WINDOW_SIZE];
+    private double[] mImportance = new double[WINDOW_SIZE];
+    private int mSize = 0;
+    private double mLongitudeScale;
+    private double mReferenceLatitude;
+
+    /**
+     * Index of the first point whose importance needs to be recomputed, or mSize if none.
+     */
+    private int mDirtyFrom = 0;
+
+    private final DetailLevel[] mLevels = new DetailLevel[MAX_ZOOM + 1];
+
+    // Scratch space for the Douglas-Peucker segment stack
+    private int[] mStack = new int[64];
+
+    public void clear() {
+        mSize = 0;
+        mDirtyFrom = 0;
+        Arrays.fill(mLevels, null);
+    }
+
+    public void append(double latitude, double longitude) {
+        if (mSize == 0) {
+            mReferenceLatitude = latitude;
+            mLongitudeScale = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        }
+        // The window holding the current last point will need to be recomputed
+        mDirtyFrom = Math.min(mDirtyFrom, getStableCount());
+        if (mSize == mX.length) {
+            final int capacity = mSize * 2;
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+            mImportance = Arrays.copyOf(mImportance, capacity);
+        }
+        mX[mSize] = longitude * mLongitudeScale;
+        mY[mSize] = latitude * METERS_PER_DEGREE;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Number of leading points whose importance is final, i.e. won't be affected by appending more
+     * points.
+     */
+    public int getStableCount() {
+        if (mSize == 0) {
+            return 0;
+        }
+        // Everything before the start of the last window is final
+        return ((mSize - 1) / WINDOW_SIZE) * WINDOW_SIZE;
+    }
+
+    /**
+     * Returns the largest tolerance, in meters, at which the point at the given index is kept.
+     */
+    public double getImportance(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+        update();
+        return mImportance[index];
+    }
+
+    /**
+     * Returns the tolerance, in meters, at which a path at the given map zoom level is simplified.
+     */
+    public double getToleranceMeters(int zoom) {
+        final double metersPerPixel = EQUATOR_METERS_PER_PIXEL_AT_ZOOM_0
+                * Math.cos(Math.toRadians(mReferenceLatitude)) / (1L << zoom);
+        return metersPerPixel * TOLERANCE_PIXELS;
+    }
+
+    /**
+     * Returns the simplified points to show at the given map zoom level (clamped to
+     * [0, {@link #MAX_ZOOM}]). The returned level is updated in place by later calls.
+     */
+    @Nonnull
+    public DetailLevel getLevel(float zoom) {
+        final int level = Math.max(0, Math.min(MAX_ZOOM, (int)Math.floor(zoom)));
+        update();
+        if (mLevels[level] == null) {
+            mLevels[level] = new DetailLevel(getToleranceMeters(level));
+        }
+        mLevels[level].refresh();
+        return mLevels[level];
+    }
+
+    private void update() {
+        if (mDirtyFrom >= mSize) {
+            return;
+        }
+        int start = (mDirtyFrom / WINDOW_SIZE) * WINDOW_SIZE;
+        while (start < mSize - 1) {
+            final int end = Math.min(start + WINDOW_SIZE, mSize - 1);
+            computeImportance(start, end);
+            start = end;
+        }
+        mImportance[0] = Double.POSITIVE_INFINITY;
+        mImportance[mSize - 1] = Double.POSITIVE_INFINITY;
+        mDirtyFrom = mSize;
+    }
+
+    /**
+     * Runs Douglas-Peucker over [first, last], recording each interior point's importance as the
+     * smallest split distance along its chain of enclosing segments.
+     */
+    private void computeImportance(int first, int last) {
+        mImportance[first] = Double.POSITIVE_INFINITY;
+        mImportance[last] = Double.POSITIVE_INFINITY;
+
+        int stackSize = 0;
+        stackSize = push(stackSize, first, last);
+        while (stackSize > 0) {
+            final int b = mStack[--stackSize];
+            final int a = mStack[--stackSize];
+            if (b - a < 2) {
+                continue;
+            }
+            final double parentImportance = Math.min(mImportance[a], mImportance[b]);
+
+            int split = -1;
+            double maxDistance = -1;
+            for (int i = a + 1; i < b; i++) {
+                final double d = distanceToSegment(i, a, b);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    split = i;
+                }
+            }
+            mImportance[split] = Math.min(maxDistance, parentImportance);
+            stackSize = push(stackSize, a, split);
+            stackSize = push(stackSize, split, b);
+        }
+    }
+
+    private int push(int stackSize, int a, int b) {
+        if (stackSize + 2 > mStack.length) {
+            mStack = Arrays.copyOf(mStack, mStack.length * 2);
+        }
+        mStack[stackSize] = a;
+        mStack[stackSize + 1] = b;
+        return stackSize + 2;
+    }
+
+    private double distanceToSegment(int p, int a, int b) {
+        final double dx = mX[b] - mX[a];
+        final double dy = mY[b] - mY[a];
+        final double px = mX[p] - mX[a];
+        final double py = mY[p] - mY[a];
+        final double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.sqrt(px * px + py * py);
+        }
+        final double t = Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+        final double ex = px - t * dx;
+        final double ey = py - t * dy;
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    /**
+     * Indices of the points kept at one tolerance, in path order.
+     */
+    @NotThreadSafe
+    public class DetailLevel {
+
+        private final double mToleranceMeters;
+        private int[] mIndices = new int[64];
+        private int mCount = 0;
+
+        /**
+         * Number of leading path points that were stable the last time this level was refreshed.
+         */
+        private int mFilteredThrough = 0;
+
+        DetailLevel(double toleranceMeters) {
+            mToleranceMeters = toleranceMeters;
+        }
+
+        void refresh() {
+            // Drop points from windows that may have been recomputed, then re-filter from there
+            while (mCount > 0 && mIndices[mCount - 1] >= mFilteredThrough) {
+                mCount--;
+            }
+            for (int i = mFilteredThrough; i < mSize; i++) {
+                if (mImportance[i] > mToleranceMeters) {
+                    if (mCount == mIndices.length) {
+                        mIndices = Arrays.copyOf(mIndices, mCount * 2);
+                    }
+                    mIndices[mCount++] = i;
+                }
+            }
+            mFilteredThrough = getStableCount();
+        }
+
+        public double getToleranceMeters() {
+            return mToleranceMeters;
+        }
+
+        public int size() {
+            return mCount;
+        }
+
+        /**
+         * Returns the path index of the <code>i</code>th point kept at this level.
+         */
+        public int getIndex(int i) {
+            if (i < 0 || i >= mCount) {
+                throw new IndexOutOfBoundsException("Index " + i + ", size " + mCount);
+            }
+            return mIndices[i];
+        }
+
+        /**
+         * Returns how many of this level's points come before the given path index. Points before
+         * {@link PathSimplifier#getStableCount()} never change.
+         */
+        public int countBefore(int pathIndex) {
+            int lo = 0;
+            int hi = mCount;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (mIndices[mid] < pathIndex) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.scottbezek.embarcadero.app.model.location;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.location.LocationRequest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * {@link LocationUpdateProvider} for recording, which changes how often it asks for updates to
+ * suit how fast the device is moving, as decided by an {@link AdaptiveSamplingController}. The
+ * underlying request is only replaced when the {@link SamplingTier} actually changes.
+ */
+public class AdaptiveLocationUpdateProvider implements LocationUpdateProvider {
+
+    private static final String TAG = AdaptiveLocationUpdateProvider.class.getName();
+
+    private final GooglePlayServicesLocationUpdateProvider mProvider;
+
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final Set<LocationUpdateListener> mListenersToNotify = new HashSet<>();
+    @GuardedBy("mLock")
+    private AdaptiveSamplingController mController = new AdaptiveSamplingController();
+
+    private final LocationUpdateListener mUnderlyingListener = new LocationUpdateListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            final List<LocationUpdateListener> toNotify;
+            synchronized (mLock) {
+                final SamplingTier previousTier = mController.getTier();
+                final SamplingTier tier = mController.onFix(location.getTime(),
+                        location.getLatitude(), location.getLongitude(),
+                        location.hasAccuracy() ? location.getAccuracy() : 0);
+                if (tier != previousTier) {
+                    Log.d(TAG, "Sampling tier " + previousTier + " -> " + tier);
+                    mProvider.setLocationRequest(createLocationRequest(tier));
+                }
+                toNotify = new ArrayList<>(mListenersToNotify);
+            }
+            for (LocationUpdateListener listener : toNotify) {
+                listener.onLocationChanged(location);
+            }
+        }
+    };
+
+    /**
+     * @param looper A {@link android.os.Looper} to use for callback invocations.
+     */
+    public AdaptiveLocationUpdateProvider(Context context, Looper looper) {
+        mProvider = new GooglePlayServicesLocationUpdateProvider(context,
+                createLocationRequest(mController.getTier()), looper);
+    }
+
+    @Nonnull
+    static LocationRequest createLocationRequest(@Nonnull SamplingTier tier) {
+        return new LocationRequest()
+                .setInterval(tier.getIntervalMillis())
+                .setFastestInterval(tier.getIntervalMillis())
+                .setSmallestDisplacement(tier.getSmallestDisplacementMeters())
+                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+    }
+
+    @Override
+    public void startLocationUpdates(LocationUpdateListener listener) {
+        synchronized (mLock) {
+            if (!mListenersToNotify.add(listener)) {
+                throw new IllegalStateException("Can't add listener: listener already registered");
+            }
+            if (mListenersToNotify.size() == 1) {
+                // Each run of updates starts afresh, rather than from wherever the last one left off
+                mController = new AdaptiveSamplingController();
+                mProvider.setLocationRequest(createLocationRequest(mController.getTier()));
+                mProvider.startLocationUpdates(mUnderlyingListener);
+            }
+        }
+    }
+
+    @Override
+    public void stopLocationUpdates(LocationUpdateListener listener) {
+        synchronized (mLock) {
+            if (!mListenersToNotify.remove(listener)) {
+                throw new IllegalStateException("Can't remove listener: listener not registered");
+            }
+            if (mListenersToNotify.isEmpty()) {
+                mProvider.stopLocationUpdates(mUnderlyingListener);
+                Log.d(TAG, "Stopped location updates: " + mController);
+            }
+        }
+    }
+
+    @Override
+    @CheckForNull
+    public Location getLastLocation() {
+        return mProvider.getLastLocation();
+    }
+}
@@ -0,0 +1,316 @@
+package com.scottbezek.embarcadero.app.model.location;
+
+import com.scottbezek.embarcadero.app.model.data.PathStats;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Picks the {@link SamplingTier} to request location updates at, from the speed and heading of the
+ * fixes received so far. Moves to a faster tier as soon as the movement calls for it, but only to a
+ * slower one once the movement has stayed slower for a while, so that brief stops (e.g. at traffic
+ * lights) don't cost detail when moving off again. Sharp turns temporarily bump the tier up one, so
+ * corners aren't cut.
+ * <p>
+ * Fixes for a device that isn't moving still wander around by about their accuracy, so, much as
+ * {@link LocationFilter.Stationary} does, movement only counts once a fix is further from the last
+ * one that moved than their accuracies can account for. Until then, the device is only taken to be
+ * stationary once even slow movement would have shown, and a single fix that moves while stationary
+ * has to be confirmed by the next one.
+ * <p>
+ * Doesn't depend on where the fixes come from, so a recorded fix stream can be replayed through it.
+ * Also keeps track of how many fixes and how much time were spent in each tier.
+ */
+@NotThreadSafe
+public class AdaptiveSamplingController {
+
+    /**
+     * Speeds below which each tier is enough, in meters per second.
+     */
+    private static final double STATIONARY_MAX_SPEED = 0.5;
+    private static final double WALKING_MAX_SPEED = 3;
+    private static final double MOVING_MAX_SPEED = 12;
+
+    /**
+     * Weight of the newest fix in the smoothed speed.
+     */
+    private static final double SPEED_SMOOTHING = 0.3;
+
+    private static final long SLOWER_TIER_AFTER_MILLIS = 20 * 1000;
+    private static final long STATIONARY_AFTER_MILLIS = 60 * 1000;
+
+    private static final double TURN_DEGREES = 30;
+    private static final long TURN_BOOST_MILLIS = 10 * 1000;
+
+    /**
+     * Segments shorter than this are too noisy to tell the heading from.
+     */
+    private static final double MIN_HEADING_DISTANCE_METERS = 5;
+
+    private final boolean mAdaptive;
+    private SamplingTier mTier;
+
+    private boolean mHasFix = false;
+    private long mLastTime;
+    private double mLastLatitude;
+    private double mLastLongitude;
+
+    /**
+     * Last fix that was known to have moved, which movement is measured from.
+     */
+    private long mAnchorTime;
+    private double mAnchorLatitude;
+    private double mAnchorLongitude;
+    private float mAnchorAccuracy;
+
+    private double mSmoothedSpeed = 0;
+    private double mLastBearing = Double.NaN;
+    private long mTurnBoostUntil = 0;
+    private long mSlowerSince = -1;
+
+    /**
+     * Whether the tier was raised from stationary on the strength of a single fix, which the next
+     * fix has to confirm. While set, the anchor stays where the device was stationary.
+     */
+    private boolean mUnconfirmedMove = false;
+
+    private int mTierChanges = 0;
+    private final long[] mMillisInTier = new long[SamplingTier.values().length];
+    private final int[] mFixesInTier = new int[SamplingTier.values().length];
+
+    public AdaptiveSamplingController() {
+        this(SamplingTier.MOVING, true);
+    }
+
+    private AdaptiveSamplingController(SamplingTier tier, boolean adaptive) {
+        mTier = tier;
+        mAdaptive = adaptive;
+    }
+
+    /**
+     * Returns a controller that always stays at the given tier, to compare against.
+     */
+    @Nonnull
+    public static AdaptiveSamplingController fixed(@Nonnull SamplingTier tier) {
+        return new AdaptiveSamplingController(tier, false);
+    }
+
+    @Nonnull
+    public SamplingTier getTier() {
+        return mTier;
+    }
+
+    /**
+     * Takes a newly received fix into account.
+     *
+     * @param accuracyMeters the fix's accuracy radius, or 0 if it's unknown
+     * @return the tier to sample at from now on
+     */
+    @Nonnull
+    public SamplingTier onFix(long timeMillis, double latitude, double longitude, float accuracyMeters) {
+        mFixesInTier[mTier.ordinal()]++;
+        if (!mHasFix) {
+            mHasFix = true;
+            setLast(timeMillis, latitude, longitude);
+            setAnchor(timeMillis, latitude, longitude, accuracyMeters);
+            return mTier;
+        }
+        final long elapsedMillis = timeMillis - mLastTime;
+        if (elapsedMillis <= 0) {
+            return mTier;
+        }
+        mMillisInTier[mTier.ordinal()] += elapsedMillis;
+        final double lastLatitude = mLastLatitude;
+        final double lastLongitude = mLastLongitude;
+        setLast(timeMillis, latitude, longitude);
+
+        final double distance = PathStats.distanceMeters(mAnchorLatitude, mAnchorLongitude, latitude, longitude);
+        // Each fix may be off by up to the larger accuracy, in opposite directions
+        final double noiseMeters = 2 * Math.max(accuracyMeters, mAnchorAccuracy);
+        final boolean moved = distance > noiseMeters;
+        final boolean confirmingMove = mUnconfirmedMove;
+        if (mUnconfirmedMove) {
+            mUnconfirmedMove = false;
+            if (!moved) {
+                // Back within the noise of where the device was stationary, so the move was just an
+                // outlier. Go straight back rather than waiting out the usual delay.
+                mSmoothedSpeed = 0;
+                setTier(SamplingTier.STATIONARY);
+                return mTier;
+            }
+        }
+        if (moved) {
+            final double speed;
+            if (confirmingMove) {
+                // Both this fix and the last one moved, so the speed between them is the real one
+                speed = PathStats.distanceMeters(lastLatitude, lastLongitude, latitude, longitude)
+                        * 1000 / elapsedMillis;
+            } else if (mTier == SamplingTier.STATIONARY) {
+                // The anchor is where the device stopped, possibly long ago, and while it stayed put
+                // there may have been no fixes at all (see the tier's smallest displacement). It can
+                // only have set off since the last update interval began, though.
+                speed = distance * 1000 / Math.min(timeMillis - mAnchorTime, mTier.getIntervalMillis());
+            } else {
+                speed = distance * 1000 / (timeMillis - mAnchorTime);
+            }
+            if (distance >= MIN_HEADING_DISTANCE_METERS) {
+                final double bearing = bearingDegrees(mAnchorLatitude, mAnchorLongitude, latitude, longitude);
+                if (!Double.isNaN(mLastBearing) && headingChange(mLastBearing, bearing) >= TURN_DEGREES) {
+                    mTurnBoostUntil = timeMillis + TURN_BOOST_MILLIS;
+                }
+                mLastBearing = bearing;
+            }
+            onSpeed(timeMillis, speed);
+            if (!mUnconfirmedMove) {
+                // Until it's confirmed, a move is measured from where the device was stationary
+                setAnchor(timeMillis, latitude, longitude, accuracyMeters);
+            }
+        } else if ((timeMillis - mAnchorTime) * STATIONARY_MAX_SPEED / 1000 >= noiseMeters) {
+            // Still within the fixes' noise after long enough that even slow movement would have
+            // left it, so as far as we can tell the device isn't moving
+            onSpeed(timeMillis, 0);
+        }
+        // Otherwise it's too soon to tell slow movement from noise
+        return mTier;
+    }
+
+    private void onSpeed(long timeMillis, double speed) {
+        mSmoothedSpeed = SPEED_SMOOTHING * speed + (1 - SPEED_SMOOTHING) * mSmoothedSpeed;
+        if (mAdaptive) {
+            updateTier(timeMillis, speed);
+        }
+    }
+
+    private void setLast(long timeMillis, double latitude, double longitude) {
+        mLastTime = timeMillis;
+        mLastLatitude = latitude;
+        mLastLongitude = longitude;
+    }
+
+    private void setAnchor(long timeMillis, double latitude, double longitude, float accuracyMeters) {
+        mAnchorTime = timeMillis;
+        mAnchorLatitude = latitude;
+        mAnchorLongitude = longitude;
+        mAnchorAccuracy = accuracyMeters;
+    }
+
+    private void updateTier(long timeMillis, double speed) {
+        SamplingTier target = tierForSpeed(mSmoothedSpeed);
+        if (mTier == SamplingTier.STATIONARY && speed > STATIONARY_MAX_SPEED) {
+            // Fixes are rare while stationary, so react to a single one showing movement, but only
+            // until the next fix shows whether it was real (see onFix)
+            target = max(target, tierForSpeed(speed));
+            mUnconfirmedMove = target != SamplingTier.STATIONARY;
+        }
+        if (timeMillis < mTurnBoostUntil && target != SamplingTier.STATIONARY) {
+            target = target.faster();
+        }
+
+        if (target.compareTo(mTier) > 0) {
+            setTier(target);
+        } else if (target.compareTo(mTier) < 0) {
+            if (mSlowerSince < 0) {
+                mSlowerSince = timeMillis;
+            }
+            final long waitMillis = target == SamplingTier.STATIONARY
+                    ? STATIONARY_AFTER_MILLIS : SLOWER_TIER_AFTER_MILLIS;
+            if (timeMillis - mSlowerSince >= waitMillis) {
+                setTier(target);
+            }
+        } else {
+            mSlowerSince = -1;
+        }
+    }
+
+    private void setTier(SamplingTier tier) {
+        mTier = tier;
+        mSlowerSince = -1;
+        mTierChanges++;
+    }
+
+    private static SamplingTier tierForSpeed(double speed) {
+        if (speed < STATIONARY_MAX_SPEED) {
+            return SamplingTier.STATIONARY;
+        } else if (speed < WALKING_MAX_SPEED) {
+            return SamplingTier.WALKING;
+        } else if (speed < MOVING_MAX_SPEED) {
+            return SamplingTier.MOVING;
+        } else {
+            return SamplingTier.FAST;
+        }
+    }
+
+    private static SamplingTier max(SamplingTier a, SamplingTier b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static double bearingDegrees(double lat1, double lng1, double lat2, double lng2) {
+        final double phi1 = Math.toRadians(lat1);
+        final double phi2 = Math.toRadians(lat2);
+        final double dLng = Math.toRadians(lng2 - lng1);
+        final double y = Math.sin(dLng) * Math.cos(phi2);
+        final double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLng);
+        return Math.toDegrees(Math.atan2(y, x));
+    }
+
+    private static double headingChange(double fromDegrees, double toDegrees) {
+        final double change = Math.abs(toDegrees - fromDegrees) % 360;
+        return change > 180 ? 360 - change : change;
+    }
+
+    public int getTierChangeCount() {
+        return mTierChanges;
+    }
+
+    public int getFixCount() {
+        int count = 0;
+        for (int fixes : mFixesInTier) {
+            count += fixes;
+        }
+        return count;
+    }
+
+    public long getMillisIn(@Nonnull SamplingTier tier) {
+        return mMillisInTier[tier.ordinal()];
+    }
+
+    public int getFixesIn(@Nonnull SamplingTier tier) {
+        return mFixesInTier[tier.ordinal()];
+    }
+
+    public double getPointsPerHour() {
+        long totalMillis = 0;
+        for (long millis : mMillisInTier) {
+            totalMillis += millis;
+        }
+        return totalMillis > 0 ? getFixCount() * (double)TimeUnit.HOURS.toMillis(1) / totalMillis : 0;
+    }
+
+    /**
+     * Roughly how many times the location provider had to wake up to take a fix: one per interval
+     * spent in each tier, whether or not the fix was far enough away to be delivered.
+     */
+    public long getEstimatedWakeups() {
+        long wakeups = 0;
+        for (SamplingTier tier : SamplingTier.values()) {
+            wakeups += getMillisIn(tier) / tier.getIntervalMillis();
+        }
+        return wakeups;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AdaptiveSamplingController{tier=").append(mTier)
+                .append(", fixes=").append(getFixCount())
+                .append(", pointsPerHour=").append(Math.round(getPointsPerHour()))
+                .append(", estimatedWakeups=").append(getEstimatedWakeups())
+                .append(", tierChanges=").append(mTierChanges);
+        for (SamplingTier tier : SamplingTier.values()) {
+            sb.append(", ").append(tier).append('=').append(getFixesIn(tier)).append(" fixes/")
+                    .append(TimeUnit.MILLISECONDS.toSeconds(getMillisIn(tier))).append('s');
+        }
+        return sb.append('}').toString();
+    }
+}
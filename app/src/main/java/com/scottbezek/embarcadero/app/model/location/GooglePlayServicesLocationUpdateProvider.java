@@ -18,12 +18,15 @@ import java.util.List;
 import java.util.Set;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
 
 public class GooglePlayServicesLocationUpdateProvider implements
         LocationUpdateProvider {
 
     private final LocationClient mLocationClient;
-    private final LocationRequest mLocationRequest;
+    @GuardedBy("mListenerLock")
+    private LocationRequest mLocationRequest;
     private final Looper mLooper;
 
     private final Object mListenerLock = new Object();
@@ -103,6 +106,21 @@ public class GooglePlayServicesLocationUpdateProvider implements
     }
 
 
+    /**
+     * Switches to a different request. If updates are currently being received, they're
+     * re-requested with the new one.
+     */
+    public void setLocationRequest(@Nonnull LocationRequest locationRequest) {
+        synchronized (mListenerLock) {
+            mLocationRequest = locationRequest;
+            if (mConnectedToLocationClient && mListenersToNotify.size() > 0) {
+                // Replaces the listener's previous request
+                mLocationClient.requestLocationUpdates(mLocationRequest, mUnderlyingListener,
+                        Looper.getMainLooper());
+            }
+        }
+    }
+
     @Override
     public void stopLocationUpdates(LocationUpdateListener listener) {
         synchronized (mListenerLock) {
@@ -0,0 +1,231 @@
+package com.scottbezek.embarcadero.app.model.location;
+
+import android.annotation.TargetApi;
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A rule deciding whether a location update is worth recording, given the last one that was. Rules
+ * are stateless so that one list of them can be shared between recordings; see
+ * {@link LocationFilterChain} for applying them.
+ */
+public interface LocationFilter {
+
+    /**
+     * Short name identifying the rule in stats.
+     */
+    @Nonnull
+    String getName();
+
+    /**
+     * @param lastAccepted the most recent update that was recorded, or null if none has been
+     * @return true if the update should be recorded
+     */
+    boolean accept(@Nonnull Location location, @CheckForNull Location lastAccepted);
+
+    /**
+     * The rules used while recording unless others are given: fixes less accurate than 50 meters
+     * are dropped, as are repeated timestamps, moves over 100 m/s, and fixes that can't be told
+     * apart from the last one within 30 seconds.
+     */
+    List<LocationFilter> DEFAULT = Collections.unmodifiableList(Arrays.<LocationFilter>asList(
+            new MaxAccuracy(50),
+            new IncreasingTime(),
+            new MaxSpeed(100),
+            new Stationary(30 * 1000),
+            new MinDistanceOrTime(5, 5 * 1000)));
+
+    /**
+     * Applied to the last known location a recording starts from, before the recording's own rules:
+     * it's dropped if more than two minutes old. Live fixes don't need checking, since they're
+     * always fresh.
+     */
+    LocationFilter LAST_KNOWN_MAX_AGE = new MaxAge(2 * 60 * 1000);
+
+    /**
+     * Drops fixes older than a limit, such as a stale last known location. Ages are measured on the
+     * elapsed realtime clock where possible (API 17+), since a fix's time comes from GPS while the
+     * device's wall clock can be set to anything.
+     */
+    @Immutable
+    class MaxAge implements LocationFilter {
+
+        private final long mMaxAgeMillis;
+
+        public MaxAge(long maxAgeMillis) {
+            mMaxAgeMillis = maxAgeMillis;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "stale";
+        }
+
+        @Override
+        public boolean accept(@Nonnull Location location, @CheckForNull Location lastAccepted) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                final long elapsedRealtimeNanos = getElapsedRealtimeNanos(location);
+                if (elapsedRealtimeNanos > 0) {
+                    return TimeUnit.NANOSECONDS.toMillis(SystemClock.elapsedRealtimeNanos() - elapsedRealtimeNanos)
+                            <= mMaxAgeMillis;
+                }
+            }
+            return System.currentTimeMillis() - location.getTime() <= mMaxAgeMillis;
+        }
+
+        /**
+         * @return 0 if the provider didn't set it
+         */
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+        private static long getElapsedRealtimeNanos(Location location) {
+            return location.getElapsedRealtimeNanos();
+        }
+    }
+
+    /**
+     * Drops fixes whose reported accuracy radius is larger than a limit. Fixes that don't report
+     * an accuracy are kept.
+     */
+    @Immutable
+    class MaxAccuracy implements LocationFilter {
+
+        private final float mMaxAccuracyMeters;
+
+        public MaxAccuracy(float maxAccuracyMeters) {
+            mMaxAccuracyMeters = maxAccuracyMeters;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "inaccurate";
+        }
+
+        @Override
+        public boolean accept(@Nonnull Location location, @CheckForNull Location lastAccepted) {
+            return !location.hasAccuracy() || location.getAccuracy() <= mMaxAccuracyMeters;
+        }
+    }
+
+    /**
+     * Drops fixes with the same or an earlier timestamp than the last one recorded.
+     */
+    @Immutable
+    class IncreasingTime implements LocationFilter {
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "duplicate";
+        }
+
+        @Override
+        public boolean accept(@Nonnull Location location, @CheckForNull Location lastAccepted) {
+            return lastAccepted == null || location.getTime() > lastAccepted.getTime();
+        }
+    }
+
+    /**
+     * Drops fixes that would mean moving impossibly fast since the last one recorded. Since the
+     * speed is measured from the last recorded fix, a real jump is accepted once enough time has
+     * passed.
+     */
+    @Immutable
+    class MaxSpeed implements LocationFilter {
+
+        private final float mMaxMetersPerSecond;
+
+        public MaxSpeed(float maxMetersPerSecond) {
+            mMaxMetersPerSecond = maxMetersPerSecond;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "outlier";
+        }
+
+        @Override
+        public boolean accept(@Nonnull Location location, @CheckForNull Location lastAccepted) {
+            if (lastAccepted == null) {
+                return true;
+            }
+            final long elapsedMillis = location.getTime() - lastAccepted.getTime();
+            if (elapsedMillis <= 0) {
+                return true;
+            }
+            return lastAccepted.distanceTo(location) * 1000 / elapsedMillis <= mMaxMetersPerSecond;
+        }
+    }
+
+    /**
+     * Drops fixes that are within the accuracy radius of the last one recorded, i.e. where any
+     * movement is indistinguishable from noise, unless a keep-alive interval has passed.
+     */
+    @Immutable
+    class Stationary implements LocationFilter {
+
+        private final long mKeepAliveMillis;
+
+        public Stationary(long keepAliveMillis) {
+            mKeepAliveMillis = keepAliveMillis;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "stationary";
+        }
+
+        @Override
+        public boolean accept(@Nonnull Location location, @CheckForNull Location lastAccepted) {
+            if (lastAccepted == null || !location.hasAccuracy() || !lastAccepted.hasAccuracy()) {
+                return true;
+            }
+            if (location.getTime() - lastAccepted.getTime() >= mKeepAliveMillis) {
+                return true;
+            }
+            final float noiseMeters = Math.max(location.getAccuracy(), lastAccepted.getAccuracy());
+            return lastAccepted.distanceTo(location) > noiseMeters;
+        }
+    }
+
+    /**
+     * Drops fixes that are both closer and sooner than the limits to the last one recorded.
+     */
+    @Immutable
+    class MinDistanceOrTime implements LocationFilter {
+
+        private final float mMinDistanceMeters;
+        private final long mMinMillis;
+
+        public MinDistanceOrTime(float minDistanceMeters, long minMillis) {
+            mMinDistanceMeters = minDistanceMeters;
+            mMinMillis = minMillis;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "tooClose";
+        }
+
+        @Override
+        public boolean accept(@Nonnull Location location, @CheckForNull Location lastAccepted) {
+            return lastAccepted == null
+                    || location.getTime() - lastAccepted.getTime() >= mMinMillis
+                    || lastAccepted.distanceTo(location) >= mMinDistanceMeters;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.scottbezek.embarcadero.app.model.location;
+
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Applies a list of {@link LocationFilter}s, in order, to the location updates of one recording,
+ * remembering the last update accepted and counting how many each rule rejected.
+ */
+@NotThreadSafe
+public class LocationFilterChain {
+
+    private final List<LocationFilter> mFilters;
+    private final long[] mRejectedCounts;
+    private long mAcceptedCount = 0;
+
+    @CheckForNull
+    private Location mLastAccepted = null;
+
+    public LocationFilterChain(@Nonnull List<? extends LocationFilter> filters) {
+        mFilters = new ArrayList<>(filters);
+        mRejectedCounts = new long[mFilters.size()];
+    }
+
+    /**
+     * Returns true if the update passes every filter, in which case it becomes the last accepted
+     * update.
+     */
+    public boolean accept(@Nonnull Location location) {
+        for (int i = 0; i < mFilters.size(); i++) {
+            if (!mFilters.get(i).accept(location, mLastAccepted)) {
+                mRejectedCounts[i]++;
+                return false;
+            }
+        }
+        mAcceptedCount++;
+        mLastAccepted = location;
+        return true;
+    }
+
+    /**
+     * Removes the updates that don't pass, in place, keeping the order of the rest.
+     */
+    public void filter(@Nonnull List<Location> locations) {
+        final Iterator<Location> it = locations.iterator();
+        while (it.hasNext()) {
+            if (!accept(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    @CheckForNull
+    public Location getLastAccepted() {
+        return mLastAccepted;
+    }
+
+    public long getAcceptedCount() {
+        return mAcceptedCount;
+    }
+
+    /**
+     * How many updates the named rule rejected. Updates are only counted against the first rule
+     * that rejected them.
+     */
+    public long getRejectedCount(@Nonnull String filterName) {
+        long count = 0;
+        for (int i = 0; i < mFilters.size(); i++) {
+            if (mFilters.get(i).getName().equals(filterName)) {
+                count += mRejectedCounts[i];
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("LocationFilterChain{accepted=").append(mAcceptedCount);
+        for (int i = 0; i < mFilters.size(); i++) {
+            sb.append(", ").append(mFilters.get(i).getName()).append('=').append(mRejectedCounts[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
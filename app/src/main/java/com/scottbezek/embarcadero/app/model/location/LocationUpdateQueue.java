@@ -2,29 +2,93 @@ package com.scottbezek.embarcadero.app.model.location;
 
 import com.scottbezek.embarcadero.app.model.location.LocationUpdateProvider;
 import com.scottbezek.embarcadero.app.model.location.LocationUpdateProvider.LocationUpdateListener;
+import com.scottbezek.embarcadero.app.util.SpscRingBuffer;
 
 import android.location.Location;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
 
 /**
- * Registers for location updates and acts as a {@link java.util.concurrent.BlockingQueue}, allowing them to be processed in a blocking fashion from another thread via {@link #take()}.
+ * Registers for location updates and queues them, allowing them to be processed in a blocking
+ * fashion from another thread via {@link #take()}. Only one thread may consume updates.
+ * <p>
+ * The queue is bounded, so a consumer that falls behind (e.g. waiting on a slow datastore) can't
+ * use up memory; what happens to updates that arrive while it's full is decided by an
+ * {@link OverflowPolicy}.
  */
 public class LocationUpdateQueue {
 
-    private final BlockingQueue<Location> mQueue = new LinkedBlockingDeque<>();
+    /**
+     * Several minutes' worth of fixes at typical update rates.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final SpscRingBuffer<Location> mQueue;
+    private final OverflowPolicy mOverflowPolicy;
     private final LocationUpdateProvider mLocationUpdateProvider;
 
+    private final AtomicLong mCoalesced = new AtomicLong();
+
+    /**
+     * The most recently queued update. Only used on the thread delivering updates.
+     */
+    @CheckForNull
+    private Location mLastQueued = null;
+
     private final LocationUpdateListener mLocationUpdateListener = new LocationUpdateListener() {
         @Override
         public void onLocationChanged(Location location) {
-            mQueue.offer(location);
+            enqueue(location);
         }
     };
 
     public LocationUpdateQueue(LocationUpdateProvider locationUpdateProvider) {
+        this(locationUpdateProvider, DEFAULT_CAPACITY, OverflowPolicy.DEFAULT);
+    }
+
+    /**
+     * @param capacity how many updates can be queued before the overflow policy applies
+     */
+    public LocationUpdateQueue(LocationUpdateProvider locationUpdateProvider, int capacity,
+            @Nonnull OverflowPolicy overflowPolicy) {
         mLocationUpdateProvider = locationUpdateProvider;
+        mQueue = new SpscRingBuffer<>(capacity);
+        mOverflowPolicy = overflowPolicy;
+    }
+
+    private void enqueue(Location location) {
+        if (mQueue.offer(location)) {
+            mLastQueued = location;
+            return;
+        }
+        switch (mOverflowPolicy.mMode) {
+            case BLOCK:
+                try {
+                    mQueue.put(location);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                break;
+            case COALESCE:
+                if (mLastQueued != null && mOverflowPolicy.canCoalesce(mLastQueued, location)) {
+                    // Close enough to the last update that's already queued to be left out
+                    mCoalesced.incrementAndGet();
+                    return;
+                }
+                mQueue.offerDroppingOldest(location);
+                break;
+            case DROP_OLDEST:
+                mQueue.offerDroppingOldest(location);
+                break;
+        }
+        mLastQueued = location;
     }
 
     public void enableProducer() {
@@ -35,7 +99,104 @@ public class LocationUpdateQueue {
         return mQueue.take();
     }
 
+    /**
+     * Waits up to the specified time for a location update, returning <code>null</code> if none
+     * arrived in time.
+     */
+    @CheckForNull
+    public Location poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return mQueue.poll(timeout, unit);
+    }
+
+    /**
+     * Removes all currently queued location updates without blocking and adds them to the given
+     * collection, in the order they were received.
+     *
+     * @return the number of location updates transferred
+     */
+    public int drainTo(Collection<? super Location> destination) {
+        return mQueue.drainTo(destination);
+    }
+
+    /**
+     * Like {@link #drainTo(Collection)}, but transfers at most <code>maxUpdates</code>.
+     */
+    public int drainTo(Collection<? super Location> destination, int maxUpdates) {
+        return mQueue.drainTo(destination, maxUpdates);
+    }
+
     public void disableProducer() {
         mLocationUpdateProvider.stopLocationUpdates(mLocationUpdateListener);
     }
+
+    /**
+     * Depth and latency counters for the underlying queue.
+     */
+    @Nonnull
+    public SpscRingBuffer.Stats getQueueStats() {
+        return mQueue.getStats();
+    }
+
+    /**
+     * How many updates were left out under {@link OverflowPolicy#coalesce}.
+     */
+    public long getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    /**
+     * What to do with a location update that arrives while the queue is full.
+     */
+    @Immutable
+    public static class OverflowPolicy {
+
+        private enum Mode {
+            BLOCK,
+            DROP_OLDEST,
+            COALESCE,
+        }
+
+        /**
+         * Waits for the consumer to make room. Updates are normally delivered on the main thread,
+         * so this can stall the UI; only use it with a provider that delivers on its own thread.
+         */
+        public static final OverflowPolicy BLOCK = new OverflowPolicy(Mode.BLOCK, 0, 0);
+
+        /**
+         * Drops the oldest queued update.
+         */
+        public static final OverflowPolicy DROP_OLDEST = new OverflowPolicy(Mode.DROP_OLDEST, 0, 0);
+
+        /**
+         * Coalesces updates within 10 seconds and 20 meters of the last queued one.
+         */
+        public static final OverflowPolicy DEFAULT = coalesce(10 * 1000, 20);
+
+        private final Mode mMode;
+        private final long mMaxMillis;
+        private final float mMaxDistanceMeters;
+
+        private OverflowPolicy(Mode mode, long maxMillis, float maxDistanceMeters) {
+            mMode = mode;
+            mMaxMillis = maxMillis;
+            mMaxDistanceMeters = maxDistanceMeters;
+        }
+
+        /**
+         * Leaves out the new update if it's within both limits of the most recently queued one,
+         * since it adds little to the path; otherwise drops the oldest queued update.
+         */
+        @Nonnull
+        public static OverflowPolicy coalesce(long maxMillis, float maxDistanceMeters) {
+            if (maxMillis < 0 || maxDistanceMeters < 0) {
+                throw new IllegalArgumentException("Limits must not be negative");
+            }
+            return new OverflowPolicy(Mode.COALESCE, maxMillis, maxDistanceMeters);
+        }
+
+        private boolean canCoalesce(@Nonnull Location lastQueued, @Nonnull Location location) {
+            return Math.abs(location.getTime() - lastQueued.getTime()) <= mMaxMillis
+                    && lastQueued.distanceTo(location) <= mMaxDistanceMeters;
+        }
+    }
 }
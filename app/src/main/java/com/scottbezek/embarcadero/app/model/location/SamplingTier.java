@@ -0,0 +1,45 @@
+package com.scottbezek.embarcadero.app.model.location;
+
+/**
+ * How often location updates are requested while recording, from slowest to fastest. Faster
+ * movement needs more frequent fixes to keep the path's shape, while a stationary device only needs
+ * enough to notice when it starts moving again.
+ * <p>
+ * Every tier uses GPS. Network fixes would be cheaper while stationary, but they're far too coarse
+ * to notice moving off from, and are dropped by the recording's accuracy filter anyway, so the
+ * stationary tier saves power with a long interval instead.
+ */
+public enum SamplingTier {
+
+    STATIONARY(30 * 1000, 10),
+    WALKING(5 * 1000, 3),
+    MOVING(2 * 1000, 5),
+    FAST(1000, 10);
+
+    private final long mIntervalMillis;
+    private final float mSmallestDisplacementMeters;
+
+    SamplingTier(long intervalMillis, float smallestDisplacementMeters) {
+        mIntervalMillis = intervalMillis;
+        mSmallestDisplacementMeters = smallestDisplacementMeters;
+    }
+
+    public long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    /**
+     * Updates closer than this to the previous one aren't delivered.
+     */
+    public float getSmallestDisplacementMeters() {
+        return mSmallestDisplacementMeters;
+    }
+
+    /**
+     * Returns the next faster tier, or this one if it's the fastest.
+     */
+    public SamplingTier faster() {
+        final SamplingTier[] tiers = values();
+        return tiers[Math.min(ordinal() + 1, tiers.length - 1)];
+    }
+}
@@ -0,0 +1,147 @@
+package com.scottbezek.embarcadero.app.model.store;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The ids of the records changed by one or more syncs, grouped by table. May also stand for
+ * "anything could have changed", e.g. for the initial load of a query.
+ */
+@Immutable
+public final class ChangeSet {
+
+    public static final ChangeSet NONE = new ChangeSet(Collections.<String, Set<String>>emptyMap());
+
+    private static final ChangeSet EVERYTHING = new ChangeSet(null);
+
+    /**
+     * Record ids by table id, or null if everything may have changed.
+     */
+    @CheckForNull
+    private final Map<String, Set<String>> mRecordIdsByTable;
+
+    private ChangeSet(@CheckForNull Map<String, Set<String>> recordIdsByTable) {
+        mRecordIdsByTable = recordIdsByTable;
+    }
+
+    /**
+     * Returns a change set that affects every table and record.
+     */
+    @Nonnull
+    public static ChangeSet everything() {
+        return EVERYTHING;
+    }
+
+    /**
+     * Returns a change set for the given record ids, keyed by table id. Tables with no changed
+     * records are ignored.
+     */
+    @Nonnull
+    public static ChangeSet of(@Nonnull Map<String, Set<String>> recordIdsByTable) {
+        final Map<String, Set<String>> copy = new HashMap<>();
+        for (Entry<String, Set<String>> entry : recordIdsByTable.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                copy.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<>(entry.getValue())));
+            }
+        }
+        return copy.isEmpty() ? NONE : new ChangeSet(Collections.unmodifiableMap(copy));
+    }
+
+    public boolean isEverything() {
+        return mRecordIdsByTable == null;
+    }
+
+    public boolean isEmpty() {
+        return mRecordIdsByTable != null && mRecordIdsByTable.isEmpty();
+    }
+
+    public boolean affectsTable(@Nonnull String tableId) {
+        return mRecordIdsByTable == null || mRecordIdsByTable.containsKey(tableId);
+    }
+
+    public boolean affectsRecord(@Nonnull String tableId, @Nonnull String recordId) {
+        if (mRecordIdsByTable == null) {
+            return true;
+        }
+        final Set<String> recordIds = mRecordIdsByTable.get(tableId);
+        return recordIds != null && recordIds.contains(recordId);
+    }
+
+    /**
+     * Returns the ids of the changed records in the given table.
+     *
+     * @throws IllegalStateException if this is {@link #everything()}, which doesn't list records
+     */
+    @Nonnull
+    public Set<String> getRecordIds(@Nonnull String tableId) {
+        if (mRecordIdsByTable == null) {
+            throw new IllegalStateException("Everything changed");
+        }
+        final Set<String> recordIds = mRecordIdsByTable.get(tableId);
+        return recordIds != null ? recordIds : Collections.<String>emptySet();
+    }
+
+    /**
+     * Returns a change set containing the changes of both this and the other change set.
+     */
+    @Nonnull
+    public ChangeSet merge(@Nonnull ChangeSet other) {
+        if (isEverything() || other.isEmpty()) {
+            return this;
+        } else if (other.isEverything() || isEmpty()) {
+            return other;
+        }
+        final Map<String, Set<String>> merged = new HashMap<>(mRecordIdsByTable);
+        for (Entry<String, Set<String>> entry : other.mRecordIdsByTable.entrySet()) {
+            final Set<String> existing = merged.get(entry.getKey());
+            if (existing == null) {
+                merged.put(entry.getKey(), entry.getValue());
+            } else {
+                final Set<String> union = new HashSet<>(existing);
+                union.addAll(entry.getValue());
+                merged.put(entry.getKey(), Collections.unmodifiableSet(union));
+            }
+        }
+        return new ChangeSet(Collections.unmodifiableMap(merged));
+    }
+
+    @Override
+    public String toString() {
+        return isEverything() ? "ChangeSet{everything}" : "ChangeSet" + mRecordIdsByTable;
+    }
+
+    /**
+     * Collects changes until they're taken, e.g. by the next execution of a query. Starts out
+     * holding {@link #everything()}, since nothing has been seen yet.
+     */
+    @ThreadSafe
+    public static class Pending {
+
+        @GuardedBy("this")
+        private ChangeSet mChanges = EVERYTHING;
+
+        public synchronized void add(@Nonnull ChangeSet changes) {
+            mChanges = mChanges.merge(changes);
+        }
+
+        /**
+         * Returns everything added since the previous call, and clears it.
+         */
+        @Nonnull
+        public synchronized ChangeSet take() {
+            final ChangeSet changes = mChanges;
+            mChanges = NONE;
+            return changes;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.scottbezek.embarcadero.app.model.store;
+
+import com.dropbox.sync.android.DbxDatastore;
+import com.dropbox.sync.android.DbxException;
+import com.dropbox.sync.android.DbxList;
+import com.dropbox.sync.android.DbxRecord;
+import com.dropbox.sync.android.DbxTable;
+import com.scottbezek.embarcadero.app.util.DatastoreUtils.PotentialIncomingDataListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * {@link Store} backed by a Dropbox {@link DbxDatastore}.
+ */
+public class DbxStore implements Store {
+
+    private final DbxDatastore mDatastore;
+
+    /**
+     * Records modified through this store since the last sync, by table id. Only modified while
+     * holding the datastore write lock.
+     */
+    private final Map<String, Set<String>> mLocalChanges = new HashMap<>();
+
+    @GuardedBy("mListeners")
+    private final Map<IncomingChangeListener, DbxDatastore.SyncStatusListener> mListeners = new HashMap<>();
+
+    public DbxStore(@Nonnull DbxDatastore datastore) {
+        mDatastore = datastore;
+    }
+
+    @Nonnull
+    public DbxDatastore getDatastore() {
+        return mDatastore;
+    }
+
+    @Nonnull
+    @Override
+    public StoreTable getTable(@Nonnull String tableId) {
+        return new Table(mDatastore.getTable(tableId));
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Set<String>> sync() throws StoreException {
+        final Map<String, Set<DbxRecord>> incoming;
+        try {
+            incoming = mDatastore.sync();
+        } catch (DbxException e) {
+            throw wrap(e);
+        }
+        final Map<String, Set<String>> changes = new HashMap<>(mLocalChanges);
+        mLocalChanges.clear();
+        for (Entry<String, Set<DbxRecord>> entry : incoming.entrySet()) {
+            for (DbxRecord record : entry.getValue()) {
+                addChange(changes, entry.getKey(), record.getId());
+            }
+        }
+        return changes;
+    }
+
+    private static void addChange(Map<String, Set<String>> changes, String tableId, String recordId) {
+        Set<String> recordIds = changes.get(tableId);
+        if (recordIds == null) {
+            recordIds = new HashSet<>();
+            changes.put(tableId, recordIds);
+        }
+        recordIds.add(recordId);
+    }
+
+    @Override
+    public void addIncomingChangeListener(@Nonnull final IncomingChangeListener listener) {
+        final DbxDatastore.SyncStatusListener statusListener = new PotentialIncomingDataListener() {
+            @Override
+            public void onPotentialNewIncomingData(DbxDatastore datastore) {
+                listener.onIncomingChangesAvailable(DbxStore.this);
+            }
+        };
+        synchronized (mListeners) {
+            if (mListeners.containsKey(listener)) {
+                throw new IllegalStateException("Already registered");
+            }
+            mListeners.put(listener, statusListener);
+        }
+        mDatastore.addSyncStatusListener(statusListener);
+    }
+
+    @Override
+    public void removeIncomingChangeListener(@Nonnull IncomingChangeListener listener) {
+        final DbxDatastore.SyncStatusListener statusListener;
+        synchronized (mListeners) {
+            statusListener = mListeners.remove(listener);
+        }
+        if (statusListener == null) {
+            throw new IllegalStateException("Not registered");
+        }
+        mDatastore.removeSyncStatusListener(statusListener);
+    }
+
+    @Override
+    public void close() {
+        mDatastore.close();
+    }
+
+    private static StoreException wrap(DbxException e) {
+        if (e instanceof DbxException.NotFound) {
+            return new StoreException.NotFound(e);
+        }
+        return new StoreException(e);
+    }
+
+    private class Table implements StoreTable {
+
+        private final DbxTable mTable;
+
+        Table(DbxTable table) {
+            mTable = table;
+        }
+
+        @Nonnull
+        @Override
+        public String getId() {
+            return mTable.getId();
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord insert() {
+            final Record record = new Record(mTable.insert());
+            record.onModified();
+            return record;
+        }
+
+        @CheckForNull
+        @Override
+        public StoreRecord get(@Nonnull String recordId) throws StoreException {
+            final DbxRecord record;
+            try {
+                record = mTable.get(recordId);
+            } catch (DbxException e) {
+                throw wrap(e);
+            }
+            return record == null ? null : new Record(record);
+        }
+
+        @Nonnull
+        @Override
+        public List<StoreRecord> query() throws StoreException {
+            final List<StoreRecord> records = new ArrayList<>();
+            try {
+                for (DbxRecord record : mTable.query()) {
+                    records.add(new Record(record));
+                }
+            } catch (DbxException e) {
+                throw wrap(e);
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Wraps a {@link DbxRecord}, noting each modification as a local change. Wrappers are created
+     * as needed, so equality follows the underlying record.
+     */
+    private class Record implements StoreRecord {
+
+        private final DbxRecord mRecord;
+
+        Record(DbxRecord record) {
+            mRecord = record;
+        }
+
+        void onModified() {
+            addChange(mLocalChanges, mRecord.getTable().getId(), mRecord.getId());
+        }
+
+        @Nonnull
+        @Override
+        public String getId() {
+            return mRecord.getId();
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return mRecord.isDeleted();
+        }
+
+        @Override
+        public void deleteRecord() {
+            onModified();
+            mRecord.deleteRecord();
+        }
+
+        @Override
+        public boolean hasField(@Nonnull String name) {
+            return mRecord.hasField(name);
+        }
+
+        @Override
+        public long getLong(@Nonnull String name) {
+            return mRecord.getLong(name);
+        }
+
+        @Override
+        public double getDouble(@Nonnull String name) {
+            return mRecord.getDouble(name);
+        }
+
+        @Nonnull
+        @Override
+        public String getString(@Nonnull String name) {
+            return mRecord.getString(name);
+        }
+
+        @Nonnull
+        @Override
+        public StoreList getList(@Nonnull String name) {
+            return new ListField(this, mRecord.getList(name));
+        }
+
+        @Nonnull
+        @Override
+        public StoreList getOrCreateList(@Nonnull String name) {
+            return new ListField(this, mRecord.getOrCreateList(name));
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord set(@Nonnull String name, long value) {
+            onModified();
+            mRecord.set(name, value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord set(@Nonnull String name, double value) {
+            onModified();
+            mRecord.set(name, value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord set(@Nonnull String name, @Nonnull String value) {
+            onModified();
+            mRecord.set(name, value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord setBytesList(@Nonnull String name, @Nonnull List<byte[]> values) {
+            final DbxList list = new DbxList();
+            for (byte[] value : values) {
+                list.add(value);
+            }
+            onModified();
+            mRecord.set(name, list);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord deleteField(@Nonnull String name) {
+            onModified();
+            mRecord.deleteField(name);
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Record && mRecord.equals(((Record)o).mRecord);
+        }
+
+        @Override
+        public int hashCode() {
+            return mRecord.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return mRecord.toString();
+        }
+    }
+
+    private static class ListField implements StoreList {
+
+        private final Record mRecord;
+        private final DbxList mList;
+
+        ListField(Record record, DbxList list) {
+            mRecord = record;
+            mList = list;
+        }
+
+        @Override
+        public int size() {
+            return mList.size();
+        }
+
+        @Override
+        public long getLong(int index) {
+            return mList.getLong(index);
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return mList.getDouble(index);
+        }
+
+        @Nonnull
+        @Override
+        public byte[] getBytes(int index) {
+            return mList.getBytes(index);
+        }
+
+        @Nonnull
+        @Override
+        public StoreList add(long value) {
+            mRecord.onModified();
+            mList.add(value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreList add(double value) {
+            mRecord.onModified();
+            mList.add(value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreList add(@Nonnull byte[] value) {
+            mRecord.onModified();
+            mList.add(value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreList set(int index, @Nonnull byte[] value) {
+            mRecord.onModified();
+            mList.set(index, value);
+            return this;
+        }
+    }
+}
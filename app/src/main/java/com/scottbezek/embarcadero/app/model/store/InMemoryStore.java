@@ -0,0 +1,341 @@
+package com.scottbezek.embarcadero.app.model.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * {@link Store} held entirely in memory, with no remote side: syncing only reports local changes.
+ * Useful for running the model layer offline, e.g. for benchmarks. On a plain JVM, use it directly
+ * with your own locking: the
+ * {@link com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreWithLock} that the rest of
+ * the model layer goes through still needs the Android runtime.
+ * <p>
+ * Byte arrays are stored and returned without copying, so callers must not modify them. Reads may
+ * run concurrently with each other, but writes must be exclusive.
+ */
+@NotThreadSafe
+public class InMemoryStore implements Store {
+
+    @GuardedBy("mTables")
+    private final Map<String, Table> mTables = new HashMap<>();
+    private final List<IncomingChangeListener> mListeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Set<String>> mLocalChanges = new HashMap<>();
+    private long mNextRecordId = 0;
+    private boolean mClosed = false;
+
+    @Nonnull
+    @Override
+    public StoreTable getTable(@Nonnull String tableId) {
+        checkOpen();
+        // Tables are created on first use, which can happen during a concurrent read
+        synchronized (mTables) {
+            Table table = mTables.get(tableId);
+            if (table == null) {
+                table = new Table(tableId);
+                mTables.put(tableId, table);
+            }
+            return table;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Set<String>> sync() throws StoreException {
+        checkOpen();
+        if (mLocalChanges.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Set<String>> changes = new HashMap<>(mLocalChanges);
+        mLocalChanges.clear();
+        return changes;
+    }
+
+    @Override
+    public void addIncomingChangeListener(@Nonnull IncomingChangeListener listener) {
+        if (mListeners.contains(listener)) {
+            throw new IllegalStateException("Already registered");
+        }
+        mListeners.add(listener);
+    }
+
+    @Override
+    public void removeIncomingChangeListener(@Nonnull IncomingChangeListener listener) {
+        if (!mListeners.remove(listener)) {
+            throw new IllegalStateException("Not registered");
+        }
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Store is closed");
+        }
+    }
+
+    private void onModified(Record record) {
+        checkOpen();
+        Set<String> recordIds = mLocalChanges.get(record.mTable.mId);
+        if (recordIds == null) {
+            recordIds = new HashSet<>();
+            mLocalChanges.put(record.mTable.mId, recordIds);
+        }
+        recordIds.add(record.mId);
+    }
+
+    private class Table implements StoreTable {
+
+        private final String mId;
+
+        // Keeps query results in insertion order
+        private final Map<String, Record> mRecords = new LinkedHashMap<>();
+
+        Table(String id) {
+            mId = id;
+        }
+
+        @Nonnull
+        @Override
+        public String getId() {
+            return mId;
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord insert() {
+            checkOpen();
+            final Record record = new Record(this, "r" + Long.toString(mNextRecordId++, 36));
+            mRecords.put(record.mId, record);
+            onModified(record);
+            return record;
+        }
+
+        @CheckForNull
+        @Override
+        public StoreRecord get(@Nonnull String recordId) throws StoreException {
+            checkOpen();
+            return mRecords.get(recordId);
+        }
+
+        @Nonnull
+        @Override
+        public List<StoreRecord> query() throws StoreException {
+            checkOpen();
+            return new ArrayList<StoreRecord>(mRecords.values());
+        }
+    }
+
+    private class Record implements StoreRecord {
+
+        private final Table mTable;
+        private final String mId;
+        private final Map<String, Object> mFields = new HashMap<>();
+        private boolean mDeleted = false;
+
+        Record(Table table, String id) {
+            mTable = table;
+            mId = id;
+        }
+
+        @Nonnull
+        @Override
+        public String getId() {
+            return mId;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return mDeleted;
+        }
+
+        @Override
+        public void deleteRecord() {
+            onModified(this);
+            mTable.mRecords.remove(mId);
+            mFields.clear();
+            mDeleted = true;
+        }
+
+        @Override
+        public boolean hasField(@Nonnull String name) {
+            return mFields.containsKey(name);
+        }
+
+        @Override
+        public long getLong(@Nonnull String name) {
+            return getField(name, Long.class);
+        }
+
+        @Override
+        public double getDouble(@Nonnull String name) {
+            return getField(name, Double.class);
+        }
+
+        @Nonnull
+        @Override
+        public String getString(@Nonnull String name) {
+            return getField(name, String.class);
+        }
+
+        @Nonnull
+        @Override
+        public StoreList getList(@Nonnull String name) {
+            return getField(name, ListField.class);
+        }
+
+        @Nonnull
+        @Override
+        public StoreList getOrCreateList(@Nonnull String name) {
+            if (!mFields.containsKey(name)) {
+                setField(name, new ListField(this, 0));
+            }
+            return getList(name);
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord set(@Nonnull String name, long value) {
+            setField(name, value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord set(@Nonnull String name, double value) {
+            setField(name, value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord set(@Nonnull String name, @Nonnull String value) {
+            setField(name, value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord setBytesList(@Nonnull String name, @Nonnull List<byte[]> values) {
+            final ListField list = new ListField(this, values.size());
+            list.mValues.addAll(values);
+            setField(name, list);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreRecord deleteField(@Nonnull String name) {
+            checkNotDeleted();
+            onModified(this);
+            mFields.remove(name);
+            return this;
+        }
+
+        private <T> T getField(String name, Class<T> type) {
+            final Object value = mFields.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("No field " + name + " in record " + mId);
+            }
+            if (!type.isInstance(value)) {
+                throw new IllegalArgumentException("Field " + name + " is not a " + type.getSimpleName());
+            }
+            return type.cast(value);
+        }
+
+        private void setField(String name, Object value) {
+            checkNotDeleted();
+            onModified(this);
+            mFields.put(name, value);
+        }
+
+        private void checkNotDeleted() {
+            if (mDeleted) {
+                throw new IllegalStateException("Record " + mId + " was deleted");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mTable.mId + "/" + mId + mFields.keySet();
+        }
+    }
+
+    private class ListField implements StoreList {
+
+        private final Record mRecord;
+        private final List<Object> mValues;
+
+        ListField(Record record, int initialCapacity) {
+            mRecord = record;
+            mValues = new ArrayList<>(initialCapacity);
+        }
+
+        @Override
+        public int size() {
+            return mValues.size();
+        }
+
+        @Override
+        public long getLong(int index) {
+            return (Long)mValues.get(index);
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return (Double)mValues.get(index);
+        }
+
+        @Nonnull
+        @Override
+        public byte[] getBytes(int index) {
+            return (byte[])mValues.get(index);
+        }
+
+        @Nonnull
+        @Override
+        public StoreList add(long value) {
+            onModified(mRecord);
+            mValues.add(value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreList add(double value) {
+            onModified(mRecord);
+            mValues.add(value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreList add(@Nonnull byte[] value) {
+            onModified(mRecord);
+            mValues.add(value);
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public StoreList set(int index, @Nonnull byte[] value) {
+            onModified(mRecord);
+            mValues.set(index, value);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.scottbezek.embarcadero.app.model.store;
+
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The table/record/list operations the app needs from a datastore. Implemented on top of the
+ * Dropbox datastore by {@link DbxStore}, and without any network by {@link InMemoryStore}.
+ * <p>
+ * Callers synchronize through the read/write lock of
+ * {@link com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreWithLock}, so implementations
+ * must allow concurrent reads but can assume writes are exclusive.
+ */
+public interface Store {
+
+    @Nonnull
+    StoreTable getTable(@Nonnull String tableId);
+
+    /**
+     * Commits local changes and applies any incoming changes.
+     *
+     * @return ids of the records changed locally since the last sync or by incoming changes,
+     *         keyed by table id
+     */
+    @Nonnull
+    Map<String, Set<String>> sync() throws StoreException;
+
+    /**
+     * Registers a listener for when incoming changes may be available to {@link #sync()}. Listeners
+     * may be called on any thread.
+     */
+    void addIncomingChangeListener(@Nonnull IncomingChangeListener listener);
+
+    void removeIncomingChangeListener(@Nonnull IncomingChangeListener listener);
+
+    void close();
+
+    interface IncomingChangeListener {
+        void onIncomingChangesAvailable(@Nonnull Store store);
+    }
+}
@@ -0,0 +1,37 @@
+package com.scottbezek.embarcadero.app.model.store;
+
+/**
+ * Thrown when a {@link Store} can't be read or synced.
+ */
+public class StoreException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public StoreException(String message) {
+        super(message);
+    }
+
+    public StoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public StoreException(Throwable cause) {
+        super(cause);
+    }
+
+    /**
+     * The store no longer exists, e.g. because it was deleted remotely.
+     */
+    public static class NotFound extends StoreException {
+
+        private static final long serialVersionUID = 1L;
+
+        public NotFound(String message) {
+            super(message);
+        }
+
+        public NotFound(Throwable cause) {
+            super(cause);
+        }
+    }
+}
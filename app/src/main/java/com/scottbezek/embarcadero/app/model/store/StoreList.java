@@ -0,0 +1,30 @@
+package com.scottbezek.embarcadero.app.model.store;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A list field of a {@link StoreRecord}. Changes are written through to the record.
+ */
+public interface StoreList {
+
+    int size();
+
+    long getLong(int index);
+
+    double getDouble(int index);
+
+    @Nonnull
+    byte[] getBytes(int index);
+
+    @Nonnull
+    StoreList add(long value);
+
+    @Nonnull
+    StoreList add(double value);
+
+    @Nonnull
+    StoreList add(@Nonnull byte[] value);
+
+    @Nonnull
+    StoreList set(int index, @Nonnull byte[] value);
+}
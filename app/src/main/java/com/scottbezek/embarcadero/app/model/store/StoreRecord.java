@@ -0,0 +1,56 @@
+package com.scottbezek.embarcadero.app.model.store;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A record in a {@link StoreTable}: a set of named fields holding either a single value or a
+ * {@link StoreList}. Reading a missing field or one of the wrong type throws an unchecked
+ * exception, so check {@link #hasField(String)} for optional fields.
+ */
+public interface StoreRecord {
+
+    @Nonnull
+    String getId();
+
+    boolean isDeleted();
+
+    void deleteRecord();
+
+    boolean hasField(@Nonnull String name);
+
+    long getLong(@Nonnull String name);
+
+    double getDouble(@Nonnull String name);
+
+    @Nonnull
+    String getString(@Nonnull String name);
+
+    @Nonnull
+    StoreList getList(@Nonnull String name);
+
+    /**
+     * Returns the list in the given field, creating an empty one if the field is missing.
+     */
+    @Nonnull
+    StoreList getOrCreateList(@Nonnull String name);
+
+    @Nonnull
+    StoreRecord set(@Nonnull String name, long value);
+
+    @Nonnull
+    StoreRecord set(@Nonnull String name, double value);
+
+    @Nonnull
+    StoreRecord set(@Nonnull String name, @Nonnull String value);
+
+    /**
+     * Replaces the given field with a list of the given byte arrays, as a single change.
+     */
+    @Nonnull
+    StoreRecord setBytesList(@Nonnull String name, @Nonnull List<byte[]> values);
+
+    @Nonnull
+    StoreRecord deleteField(@Nonnull String name);
+}
@@ -0,0 +1,33 @@
+package com.scottbezek.embarcadero.app.model.store;
+
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * A table of records within a {@link Store}.
+ */
+public interface StoreTable {
+
+    @Nonnull
+    String getId();
+
+    /**
+     * Inserts a new, empty record with a generated id.
+     */
+    @Nonnull
+    StoreRecord insert();
+
+    /**
+     * Returns the record with the given id, or <code>null</code> if there isn't one.
+     */
+    @CheckForNull
+    StoreRecord get(@Nonnull String recordId) throws StoreException;
+
+    /**
+     * Returns every record in the table.
+     */
+    @Nonnull
+    List<StoreRecord> query() throws StoreException;
+}
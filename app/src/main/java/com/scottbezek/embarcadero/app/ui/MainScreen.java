@@ -15,14 +15,13 @@ import com.scottbezek.embarcadero.app.model.PathManager;
 import com.scottbezek.embarcadero.app.model.PathManager.RecordingState;
 import com.scottbezek.embarcadero.app.model.UserStateManager.UserState;
 import com.scottbezek.embarcadero.app.model.data.PathCoord;
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.data.PathCoordUpdate;
 import com.scottbezek.embarcadero.app.ui.drawer.NavScreen;
 import com.scottbezek.embarcadero.app.ui.drawer.pathlist.PathListScreen.PathSelectedListener;
 import com.scottbezek.embarcadero.app.ui.map.MapScreen;
 import com.scottbezek.embarcadero.app.util.SubscribeWhileAttached;
 
-import java.util.Collections;
-import java.util.List;
-
 import pl.charmas.android.reactivelocation.observables.location.LastKnownLocationObservable;
 import pl.charmas.android.reactivelocation.observables.location.LocationUpdatesObservable;
 import rx.Observable;
@@ -55,8 +54,7 @@ public class MainScreen extends DrawerLayout {
 //        startClickListener = new ResettableClickListener() {
 //            @Override
 //            protected void onClick() {
-//                pathManager.startRecording(new GooglePlayServicesLocationUpdateProvider(
-//                        context, dummyRequest, Looper.getMainLooper()));
+//                PathRecorderService.startRecording(context);
 //            }
 //        };
 //        startButton.setOnClickListener(startClickListener);
@@ -64,7 +62,7 @@ public class MainScreen extends DrawerLayout {
 //        stopClickListener = new ResettableClickListener() {
 //            @Override
 //            protected void onClick() {
-//                pathManager.stopRecording();
+//                PathRecorderService.stopRecording(context);
 //            }
 //        };
 //        stopButton.setOnClickListener(stopClickListener);
@@ -114,18 +112,19 @@ public class MainScreen extends DrawerLayout {
 //                        stopClickListener.reset();
 
                         if (state.isRecording()) {
-                            mapScreen.setData(pathManager.getPathCoords(state.getPathRecordId(), Schedulers.io()));
+                            mapScreen.setData(pathManager.getPathCoordUpdates(state.getPathRecordId(), Schedulers.io()));
                         } else {
-                            Observable<List<PathCoord>> currentLocation = Observable.concat(
+                            Observable<PathCoordUpdate> currentLocation = Observable.concat(
                                     LastKnownLocationObservable.createObservable(getContext()),
                                     LocationUpdatesObservable.createObservable(getContext(), dummyRequest))
-                                    .map(new Func1<Location, List<PathCoord>>() {
+                                    .map(new Func1<Location, PathCoordUpdate>() {
                                         @Override
-                                        public List<PathCoord> call(Location location) {
+                                        public PathCoordUpdate call(Location location) {
+                                            // Each location replaces the previous one
                                             if (location == null) {
-                                                return Collections.emptyList();
+                                                return new PathCoordUpdate(PathCoordBuffer.EMPTY, 0, true);
                                             } else {
-                                                return Collections.singletonList(PathCoord.from(location));
+                                                return new PathCoordUpdate(PathCoordBuffer.of(PathCoord.from(location)), 0, true);
                                             }
                                         }
                                     });
@@ -6,12 +6,19 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import com.scottbezek.embarcadero.app.R;
+import com.scottbezek.embarcadero.app.model.data.PathListItem;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
 
 public class PathListItemRow extends LinearLayout {
 
     private final TextView mPathDate;
     private final TextView mTextView;
 
+    @CheckForNull
+    private PathListItem mBoundItem = null;
+
     public PathListItemRow(Context context) {
         super(context);
         LayoutInflater.from(context).inflate(R.layout.item_row_path, this, true);
@@ -19,8 +26,16 @@ public class PathListItemRow extends LinearLayout {
         mTextView = (TextView)findViewById(R.id.path_text);
     }
 
-    public void setData(String date, String bogus) {
+    public void setData(@Nonnull PathListItem item, String date, String bogus) {
+        mBoundItem = item;
         mPathDate.setText(date);
         mTextView.setText(bogus);
     }
+
+    /**
+     * Whether the row is already showing exactly this item, so binding it again can be skipped.
+     */
+    public boolean isBoundTo(@Nonnull PathListItem item) {
+        return item.equals(mBoundItem);
+    }
 }
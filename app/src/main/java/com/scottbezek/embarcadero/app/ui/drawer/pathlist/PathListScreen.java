@@ -1,6 +1,7 @@
 package com.scottbezek.embarcadero.app.ui.drawer.pathlist;
 
 import android.content.Context;
+import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
@@ -12,31 +13,56 @@ import android.widget.ListView;
 import com.scottbezek.embarcadero.app.R;
 import com.scottbezek.embarcadero.app.model.data.PathListItem;
 import com.scottbezek.embarcadero.app.util.LocaleUtil;
+import com.scottbezek.embarcadero.app.util.KeysetPager;
+import com.scottbezek.embarcadero.app.util.ListDiff;
 import com.scottbezek.embarcadero.app.util.ObservableUtil;
+import com.scottbezek.embarcadero.app.util.ObservableUtil.DistinctStats;
 import com.scottbezek.embarcadero.app.util.SubscribeWhileAttached;
 
-import java.text.DateFormat;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
 
+import javax.annotation.CheckForNull;
+
 import rx.Observable;
 import rx.Observer;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Func1;
 
 public class PathListScreen extends FrameLayout {
 
     private static final String TAG = PathListScreen.class.getName();
 
+    private static final Func1<PathListItem, String> RECORD_ID = new Func1<PathListItem, String>() {
+        @Override
+        public String call(PathListItem item) {
+            return item.getRecordId();
+        }
+    };
+
+    /**
+     * How many path list snapshots were dropped for being the same as the previous one.
+     */
+    private static final DistinctStats sDistinctStats = new DistinctStats();
+
+    /**
+     * How many rows' labels to format ahead of time when the whole list may have changed, i.e.
+     * enough to fill the screen a couple of times over.
+     */
+    private static final int PRECOMPUTED_LABEL_COUNT = 100;
+
+    private static final int MAX_CACHED_LABELS = 512;
+
     private final PathListAdapter mAdapter;
 
     public PathListScreen(Context context, Observable<List<PathListItem>> pathList, final PathSelectedListener selectionListener) {
         super(context);
 
-        mAdapter = new PathListAdapter(context);
-
+        final PathRowLabels labels = new PathRowLabels(
+                LocaleUtil.getThreadLocalDateFormat(context.getResources(), R.string.date_format_month_day_time),
+                MAX_CACHED_LABELS);
         ListView lv = new ListView(context);
+        mAdapter = new PathListAdapter(context, lv, labels);
         lv.setAdapter(mAdapter);
         addView(lv, ViewGroup.LayoutParams.MATCH_PARENT,
                 ViewGroup.LayoutParams.MATCH_PARENT);
@@ -49,12 +75,28 @@ public class PathListScreen extends FrameLayout {
         });
 
         addOnAttachStateChangeListener(new SubscribeWhileAttached<>(
-                pathList
-                        .distinctUntilChanged()
-                        .map(ObservableUtil.sort(
-                                Collections.reverseOrder(PathListItem.sAscendingStartTimeComparator)))
+                ListDiff.diffs(ObservableUtil.distinctUntilChanged(pathList, sDistinctStats), RECORD_ID)
+                        .filter(new Func1<ListDiff<PathListItem>, Boolean>() {
+                            @Override
+                            public Boolean call(ListDiff<PathListItem> diff) {
+                                return !diff.isEmpty();
+                            }
+                        })
+                        .map(new Func1<ListDiff<PathListItem>, ListDiff<PathListItem>>() {
+                            @Override
+                            public ListDiff<PathListItem> call(ListDiff<PathListItem> diff) {
+                                // Still on the query thread, so format what's about to be bound here
+                                final List<PathListItem> items = diff.getNewList();
+                                if (diff.isStructural()) {
+                                    labels.precompute(items, PRECOMPUTED_LABEL_COUNT);
+                                } else {
+                                    labels.precompute(items, diff.getChangedPositions());
+                                }
+                                return diff;
+                            }
+                        })
                         .observeOn(AndroidSchedulers.mainThread()),
-                new Observer<List<PathListItem>>() {
+                new Observer<ListDiff<PathListItem>>() {
                     @Override
                     public void onCompleted() {
                     }
@@ -65,8 +107,8 @@ public class PathListScreen extends FrameLayout {
                     }
 
                     @Override
-                    public void onNext(List<PathListItem> pathListItems) {
-                        mAdapter.setData(pathListItems);
+                    public void onNext(ListDiff<PathListItem> diff) {
+                        mAdapter.applyDiff(diff);
                     }
                 }
         ));
@@ -78,39 +120,128 @@ public class PathListScreen extends FrameLayout {
         super.onAttachedToWindow();
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        Log.d(TAG, "Path list snapshots: " + sDistinctStats);
+    }
+
     public interface PathSelectedListener {
         void onPathSelected(String pathId);
     }
 
+    /**
+     * Shows the newest paths a page at a time, loading the next page as the list is scrolled near
+     * the end of what's loaded. Each snapshot of the path list is used as-is rather than copied.
+     */
     private static class PathListAdapter extends BaseAdapter {
 
+        private static final int PAGE_SIZE = 50;
+
+        /**
+         * How close to the end of the loaded rows a row can be bound before the next page is loaded.
+         */
+        private static final int PREFETCH_DISTANCE = 10;
+
+        private static final KeysetPager<PathListItem> sPager =
+                new KeysetPager<>(PathListItem.sDescendingStartTimeComparator);
+
         private final Context mContext;
-        private final List<PathListItem> mData = new ArrayList<>();
-        private final DateFormat mMonthDayTimeFormat;
+        private final ListView mListView;
+        private final PathRowLabels mLabels;
+
+        /**
+         * Every path, newest first.
+         */
+        private List<PathListItem> mSnapshot = Collections.emptyList();
+        private int mLoadedCount = 0;
+        @CheckForNull
+        private PathListItem mLastLoaded = null;
+        private boolean mPageLoadPosted = false;
+
+        private final Runnable mLoadNextPage = new Runnable() {
+            @Override
+            public void run() {
+                mPageLoadPosted = false;
+                mLoadedCount += sPager.getPage(mSnapshot, mLastLoaded, PAGE_SIZE).size();
+                onLoadedCountChanged();
+            }
+        };
 
-        public PathListAdapter(Context context) {
+        public PathListAdapter(Context context, ListView listView, PathRowLabels labels) {
             mContext = context;
-            mMonthDayTimeFormat = LocaleUtil.getDateFormat(context.getResources(), R.string.date_format_month_day_time);
+            mListView = listView;
+            mLabels = labels;
+        }
+
+        /**
+         * @param snapshot every path, newest first
+         */
+        public void setData(List<PathListItem> snapshot) {
+            mSnapshot = snapshot;
+            // Keep the same paths loaded, even if newer ones were added or removed in the meantime
+            final int firstPageCount = Math.min(PAGE_SIZE, snapshot.size());
+            mLoadedCount = mLastLoaded == null ? firstPageCount
+                    : Math.max(firstPageCount, sPager.countThrough(snapshot, mLastLoaded));
+            onLoadedCountChanged();
         }
 
-        public void setData(List<PathListItem> data) {
-            mData.clear();
-            mData.addAll(data);
+        /**
+         * Moves to the diff's new snapshot. If no loaded rows were inserted, removed or moved, only
+         * the visible rows that changed are rebound; otherwise the whole list is refreshed.
+         */
+        public void applyDiff(ListDiff<PathListItem> diff) {
+            if (mSnapshot != diff.getOldList() || affectsLoadedPositions(diff)) {
+                setData(diff.getNewList());
+                return;
+            }
+            mSnapshot = diff.getNewList();
+            if (mLoadedCount > 0) {
+                mLastLoaded = mSnapshot.get(mLoadedCount - 1);
+            }
+
+            final int firstVisible = mListView.getFirstVisiblePosition();
+            for (int position : diff.getChangedPositions()) {
+                if (position >= mLoadedCount) {
+                    break;
+                }
+                final View child = mListView.getChildAt(position - firstVisible);
+                if (child != null) {
+                    getView(position, child, mListView);
+                }
+            }
+        }
+
+        private boolean affectsLoadedPositions(ListDiff<PathListItem> diff) {
+            if (diff.hasMoves()) {
+                return true;
+            }
+            final List<Integer> inserted = diff.getInsertedPositions();
+            final List<Integer> removed = diff.getRemovedPositions();
+            // Positions are in increasing order, so checking the first is enough. Items added to the
+            // end of a fully loaded list also need to be shown.
+            final boolean fullyLoaded = mLoadedCount == diff.getOldList().size();
+            return (!inserted.isEmpty() && (inserted.get(0) < mLoadedCount || fullyLoaded))
+                    || (!removed.isEmpty() && removed.get(0) < mLoadedCount);
+        }
+
+        private void onLoadedCountChanged() {
+            mLastLoaded = mLoadedCount > 0 ? mSnapshot.get(mLoadedCount - 1) : null;
             notifyDataSetChanged();
         }
 
         @Override
         public int getCount() {
-            return mData.size();
+            return mLoadedCount;
         }
 
         public PathListItem getTypedItem(int position) {
-            return mData.get(position);
+            return mSnapshot.get(position);
         }
 
         @Override
         public Object getItem(int position) {
-            return mData.get(position);
+            return mSnapshot.get(position);
         }
 
         @Override
@@ -120,16 +251,24 @@ public class PathListScreen extends FrameLayout {
 
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
+            if (!mPageLoadPosted && position >= mLoadedCount - PREFETCH_DISTANCE
+                    && mLoadedCount < mSnapshot.size()) {
+                // Can't change the count while the list is laying out
+                mPageLoadPosted = parent.post(mLoadNextPage);
+            }
+
             final PathListItemRow row;
             if (convertView != null) {
                 row = (PathListItemRow)convertView;
             } else {
                 row = new PathListItemRow(mContext);
             }
-            final PathListItem item = mData.get(position);
-            final Date startDate = new Date(item.getStartTimeMillis());
-            row.setData(mMonthDayTimeFormat.format(startDate),
-                    item.getRecordId().substring(0, 6) + " -- " + item.getPathSegmentCount());
+            final PathListItem item = mSnapshot.get(position);
+            if (row.isBoundTo(item)) {
+                return row;
+            }
+            final PathRowLabels.Label label = mLabels.get(item);
+            row.setData(item, label.mDate, label.mText);
             return row;
         }
     }
@@ -0,0 +1,101 @@
+package com.scottbezek.embarcadero.app.ui.drawer.pathlist;
+
+import com.scottbezek.embarcadero.app.model.data.PathListItem;
+import com.scottbezek.embarcadero.app.util.ThreadLocalDateFormat;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Cache of the text shown in path list rows, so that labels can be formatted ahead of time on the
+ * query thread and binding rows on the main thread doesn't need to allocate.
+ */
+@ThreadSafe
+class PathRowLabels {
+
+    private final ThreadLocalDateFormat mDateFormat;
+    private final int mMaxSize;
+
+    /**
+     * Labels by record id, least recently used first.
+     */
+    @GuardedBy("mLabels")
+    private final LinkedHashMap<String, Label> mLabels;
+
+    PathRowLabels(@Nonnull ThreadLocalDateFormat dateFormat, final int maxSize) {
+        mDateFormat = dateFormat;
+        mMaxSize = maxSize;
+        mLabels = new LinkedHashMap<String, Label>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Label> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the label for the item, formatting it if it isn't cached or is out of date.
+     */
+    @Nonnull
+    Label get(@Nonnull PathListItem item) {
+        synchronized (mLabels) {
+            final Label cached = mLabels.get(item.getRecordId());
+            if (cached != null && cached.isFor(item)) {
+                return cached;
+            }
+        }
+        final Label label = new Label(item, mDateFormat.format(item.getStartTimeMillis()),
+                item.getRecordId().substring(0, 6) + " -- " + item.getPathSegmentCount());
+        synchronized (mLabels) {
+            mLabels.put(item.getRecordId(), label);
+        }
+        return label;
+    }
+
+    /**
+     * Formats and caches the labels for the items at the given positions.
+     */
+    void precompute(@Nonnull List<PathListItem> items, @Nonnull List<Integer> positions) {
+        for (int position : positions) {
+            get(items.get(position));
+        }
+    }
+
+    /**
+     * Formats and caches the labels for the first <code>count</code> items.
+     */
+    void precompute(@Nonnull List<PathListItem> items, int count) {
+        final int end = Math.min(count, items.size());
+        for (int i = 0; i < end; i++) {
+            get(items.get(i));
+        }
+    }
+
+    @Immutable
+    static class Label {
+
+        private final long mStartTimeMillis;
+        private final int mPointCount;
+
+        final String mDate;
+        final String mText;
+
+        Label(PathListItem item, String date, String text) {
+            mStartTimeMillis = item.getStartTimeMillis();
+            mPointCount = item.getPathSegmentCount();
+            mDate = date;
+            mText = text;
+        }
+
+        boolean isFor(PathListItem item) {
+            return mStartTimeMillis == item.getStartTimeMillis()
+                    && mPointCount == item.getPathSegmentCount();
+        }
+    }
+}
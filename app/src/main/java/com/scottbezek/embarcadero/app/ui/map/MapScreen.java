@@ -3,6 +3,7 @@ package com.scottbezek.embarcadero.app.ui.map;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Color;
+import android.util.Log;
 import android.view.ViewGroup;
 import android.widget.RelativeLayout;
 import android.widget.Toast;
@@ -10,17 +11,25 @@ import android.widget.Toast;
 import com.google.android.gms.maps.CameraUpdate;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.GoogleMap.OnCameraChangeListener;
 import com.google.android.gms.maps.GoogleMapOptions;
 import com.google.android.gms.maps.MapView;
 import com.google.android.gms.maps.MapsInitializer;
+import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
 import com.scottbezek.embarcadero.app.R;
-import com.scottbezek.embarcadero.app.model.data.PathCoord;
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.data.PathCoordUpdate;
+import com.scottbezek.embarcadero.app.model.geo.PathSimplifier;
+import com.scottbezek.embarcadero.app.model.geo.PathSimplifier.DetailLevel;
 import com.scottbezek.embarcadero.app.util.LocationUtil;
+import com.scottbezek.embarcadero.app.util.ObservableUtil;
+import com.scottbezek.embarcadero.app.util.ObservableUtil.DistinctStats;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -44,6 +53,11 @@ public class MapScreen extends RelativeLayout {
      */
     private static final double MINIMUM_VIEW_DEGREES = 0.001;
 
+    /**
+     * How many path updates were dropped for being the same as the previous one.
+     */
+    private static final DistinctStats sDistinctStats = new DistinctStats();
+
     private final MapView mMapView;
     private final MapContainer mMapContainer;
 
@@ -51,11 +65,35 @@ public class MapScreen extends RelativeLayout {
 
     private boolean mAttachedToWindow = false;
 
-    private Observable<List<PathCoord>> mPathCoordObservable = null;
+    private Observable<PathCoordUpdate> mPathCoordObservable = null;
     private Subscription mPathCoordSubscription = null;
 
     private boolean mShouldAnimate = false;
 
+    /*
+     * Map objects for the currently displayed path, kept alive between updates so new points can
+     * be appended rather than redrawing everything.
+     */
+    private Polyline mPathLine = null;
+    private Marker mPositionMarker = null;
+    private PathCoordBuffer mPathCoords = PathCoordBuffer.EMPTY;
+
+    /*
+     * Only the simplified points for the current zoom level are drawn. Points displayed from the
+     * simplifier's stable region never change, so updates only replace the tail after them.
+     */
+    private final PathSimplifier mSimplifier = new PathSimplifier();
+    private final List<LatLng> mPathPoints = new ArrayList<>();
+    private int mStablePathPointCount = 0;
+    private int mDisplayedZoomLevel = -1;
+
+    // Bounds of mPathPoints, and the (padded) bounds the camera was last moved to show
+    private double mMinLatitude;
+    private double mMaxLatitude;
+    private double mMinLongitude;
+    private double mMaxLongitude;
+    private LatLngBounds mFramedBounds = null;
+
     public MapScreen(Context context) {
         super(context);
         final Resources resources = context.getResources();
@@ -76,11 +114,21 @@ public class MapScreen extends RelativeLayout {
         addView(mMapContainer, ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
     }
 
+    private final OnCameraChangeListener mCameraChangeListener = new OnCameraChangeListener() {
+        @Override
+        public void onCameraChange(CameraPosition position) {
+            if ((int)Math.floor(position.zoom) != mDisplayedZoomLevel && mPathLine != null) {
+                updateDisplayedPoints(position.zoom);
+                mPathLine.setPoints(mPathPoints);
+            }
+        }
+    };
+
     public void setOffset(int offsetPx) {
         setScrollX(-offsetPx);
     }
 
-    public void setData(Observable<List<PathCoord>> data) {
+    public void setData(Observable<PathCoordUpdate> data) {
         if (mPathCoordSubscription != null) {
             mPathCoordSubscription.unsubscribe();
             mPathCoordSubscription = null;
@@ -95,10 +143,9 @@ public class MapScreen extends RelativeLayout {
         if (mPathCoordSubscription != null) {
             throw new IllegalStateException("Already subscribed");
         }
-        mPathCoordSubscription = mPathCoordObservable
-                .distinctUntilChanged()
+        mPathCoordSubscription = ObservableUtil.distinctUntilChanged(mPathCoordObservable, sDistinctStats)
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new Observer<List<PathCoord>>() {
+                .subscribe(new Observer<PathCoordUpdate>() {
                     @Override
                     public void onCompleted() {
                     }
@@ -109,45 +156,119 @@ public class MapScreen extends RelativeLayout {
                     }
 
                     @Override
-                    public void onNext(List<PathCoord> pathCoords) {
+                    public void onNext(PathCoordUpdate update) {
                         final boolean animate = mShouldAnimate;
                         mShouldAnimate = true;
-                        updateMap(pathCoords, animate);
+                        updateMap(update, animate);
                     }
                 });
     }
 
-    private void updateMap(List<PathCoord> pathCoords, boolean animate) {
-        GoogleMap map = mMapView.getMap();
-        map.clear();
+    private void updateMap(PathCoordUpdate update, boolean animate) {
+        if (update.isReset()) {
+            // Keep the polyline and marker around, they'll be reused if there are any points
+            mSimplifier.clear();
+            mPathPoints.clear();
+            mStablePathPointCount = 0;
+            mFramedBounds = null;
+        }
 
-        LatLngBounds.Builder boundsBuilder = LatLngBounds.builder();
-        List<LatLng> points = new ArrayList<>();
-        for (PathCoord coord : pathCoords) {
-            LatLng ll = new LatLng(coord.getLatitude(), coord.getLongitude());
-            boundsBuilder.include(ll);
-            points.add(ll);
+        final PathCoordBuffer coords = update.getCoords();
+        for (int i = update.getFirstNewIndex(); i < coords.size(); i++) {
+            final double latitude = coords.getLatitude(i);
+            final double longitude = coords.getLongitude(i);
+            if (mSimplifier.size() == 0) {
+                mMinLatitude = mMaxLatitude = latitude;
+                mMinLongitude = mMaxLongitude = longitude;
+            } else {
+                mMinLatitude = Math.min(mMinLatitude, latitude);
+                mMaxLatitude = Math.max(mMaxLatitude, latitude);
+                mMinLongitude = Math.min(mMinLongitude, longitude);
+                mMaxLongitude = Math.max(mMaxLongitude, longitude);
+            }
+            mSimplifier.append(latitude, longitude);
         }
+        mPathCoords = coords;
+
+        if (coords.size() > 0) {
+            final GoogleMap map = mMapView.getMap();
+            if (mPathLine == null) {
+                mPathLine = map.addPolyline(PATH_POLYLINE_OPTIONS);
+            }
+            updateDisplayedPoints(map.getCameraPosition().zoom);
+            mPathLine.setPoints(mPathPoints);
 
-        if (points.size() > 0) {
-            Polyline line = map.addPolyline(PATH_POLYLINE_OPTIONS);
-            line.setPoints(points);
+            final int lastIndex = coords.size() - 1;
+            final LatLng lastPoint = new LatLng(coords.getLatitude(lastIndex), coords.getLongitude(lastIndex));
+            if (mPositionMarker == null) {
+                MarkerOptions markerOpts = new MarkerOptions()
+                        .position(lastPoint)
+                        .visible(true);
+                mPositionMarker = map.addMarker(markerOpts);
+            } else {
+                mPositionMarker.setPosition(lastPoint);
+            }
 
-            MarkerOptions markerOpts = new MarkerOptions()
-                    .position(points.get(points.size() - 1))
-                    .visible(true);
-            map.addMarker(markerOpts);
+            // Only move the camera if the path has grown outside of what's already framed
+            final LatLngBounds pathBounds = new LatLngBounds(
+                    new LatLng(mMinLatitude, mMinLongitude),
+                    new LatLng(mMaxLatitude, mMaxLongitude));
+            if (mFramedBounds == null
+                    || !mFramedBounds.contains(pathBounds.southwest)
+                    || !mFramedBounds.contains(pathBounds.northeast)) {
+                mFramedBounds = LocationUtil.clampMinimumSize(pathBounds, MINIMUM_VIEW_DEGREES);
+                final CameraUpdate cameraUpdate = CameraUpdateFactory.newLatLngBounds(mFramedBounds, mMapPathPaddingPx);
+                mMapContainer.updateMapCamera(cameraUpdate, animate);
+            }
+        } else if (update.isReset()) {
+            clearPath();
 
-            final LatLngBounds bounds = LocationUtil.clampMinimumSize(boundsBuilder.build(),
-                    MINIMUM_VIEW_DEGREES);
-            final CameraUpdate update = CameraUpdateFactory.newLatLngBounds(bounds, mMapPathPaddingPx);
-            mMapContainer.updateMapCamera(update, animate);
-        } else {
             // No path (including no current location), so just show the US zoomed out
-            final CameraUpdate update = CameraUpdateFactory.newLatLngZoom(
+            final CameraUpdate cameraUpdate = CameraUpdateFactory.newLatLngZoom(
                     GEOGRAPHIC_CENTER_OF_CONTIGUOUS_US, 1);
-            mMapContainer.updateMapCamera(update, animate);
+            mMapContainer.updateMapCamera(cameraUpdate, animate);
+        }
+    }
+
+    /**
+     * Brings {@link #mPathPoints} up to date with the simplified path for the given zoom.
+     */
+    private void updateDisplayedPoints(float zoom) {
+        final int zoomLevel = (int)Math.floor(zoom);
+        if (zoomLevel != mDisplayedZoomLevel) {
+            mPathPoints.clear();
+            mStablePathPointCount = 0;
+            mDisplayedZoomLevel = zoomLevel;
+        }
+
+        final DetailLevel level = mSimplifier.getLevel(zoom);
+        while (mPathPoints.size() > mStablePathPointCount) {
+            mPathPoints.remove(mPathPoints.size() - 1);
+        }
+        for (int i = mPathPoints.size(); i < level.size(); i++) {
+            final int index = level.getIndex(i);
+            mPathPoints.add(new LatLng(mPathCoords.getLatitude(index), mPathCoords.getLongitude(index)));
+        }
+        mStablePathPointCount = level.countBefore(mSimplifier.getStableCount());
+    }
+
+    /**
+     * Removes the current path from the map.
+     */
+    private void clearPath() {
+        if (mPathLine != null) {
+            mPathLine.remove();
+            mPathLine = null;
+        }
+        if (mPositionMarker != null) {
+            mPositionMarker.remove();
+            mPositionMarker = null;
         }
+        mSimplifier.clear();
+        mPathPoints.clear();
+        mStablePathPointCount = 0;
+        mPathCoords = PathCoordBuffer.EMPTY;
+        mFramedBounds = null;
     }
 
     @Override
@@ -157,6 +278,7 @@ public class MapScreen extends RelativeLayout {
 
         mMapView.onCreate(null);
         mMapView.onResume();
+        mMapView.getMap().setOnCameraChangeListener(mCameraChangeListener);
 
         if (mPathCoordObservable != null) {
             subscribe();
@@ -174,6 +296,11 @@ public class MapScreen extends RelativeLayout {
             mPathCoordSubscription.unsubscribe();
             mPathCoordSubscription = null;
         }
+        Log.d(TAG, "Path updates: " + sDistinctStats);
+        // The map objects went away along with the MapView
+        mPathLine = null;
+        mPositionMarker = null;
+        clearPath();
         mAttachedToWindow = false;
     }
 }
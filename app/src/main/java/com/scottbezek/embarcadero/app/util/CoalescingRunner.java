@@ -0,0 +1,68 @@
+package com.scottbezek.embarcadero.app.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Runs a task on an {@link Executor} whenever requested, but with at most one run in flight and
+ * at most one more pending. Requests made while a run is already pending are dropped, since the
+ * pending run hasn't started yet and will see the same state.
+ */
+@ThreadSafe
+public class CoalescingRunner {
+
+    private static final int IDLE = 0;
+    private static final int PENDING = 1;
+    private static final int RUNNING = 2;
+    private static final int RUNNING_AND_PENDING = 3;
+
+    private final Executor mExecutor;
+    private final Runnable mTask;
+    private final AtomicInteger mState = new AtomicInteger(IDLE);
+
+    private final Runnable mRunTask = new Runnable() {
+        @Override
+        public void run() {
+            mState.set(RUNNING);
+            try {
+                mTask.run();
+            } finally {
+                if (!mState.compareAndSet(RUNNING, IDLE)) {
+                    // Requested again while running, so go around once more
+                    mState.set(PENDING);
+                    mExecutor.execute(mRunTask);
+                }
+            }
+        }
+    };
+
+    public CoalescingRunner(@Nonnull Executor executor, @Nonnull Runnable task) {
+        mExecutor = executor;
+        mTask = task;
+    }
+
+    /**
+     * Requests that the task be run.
+     */
+    public void request() {
+        while (true) {
+            final int state = mState.get();
+            if (state == IDLE) {
+                if (mState.compareAndSet(IDLE, PENDING)) {
+                    mExecutor.execute(mRunTask);
+                    return;
+                }
+            } else if (state == RUNNING) {
+                if (mState.compareAndSet(RUNNING, RUNNING_AND_PENDING)) {
+                    return;
+                }
+            } else {
+                // Already a run pending
+                return;
+            }
+        }
+    }
+}
@@ -1,45 +1,53 @@
 package com.scottbezek.embarcadero.app.util;
 
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.dropbox.sync.android.DbxDatastore;
 import com.dropbox.sync.android.DbxDatastore.SyncStatusListener;
 import com.dropbox.sync.android.DbxDatastoreStatus;
-import com.dropbox.sync.android.DbxException;
-import com.dropbox.sync.android.DbxException.NotFound;
-import com.dropbox.sync.android.DbxFields;
-import com.dropbox.sync.android.DbxRecord;
-import com.dropbox.sync.android.DbxTable;
-import com.dropbox.sync.android.DbxTable.QueryResult;
+import com.scottbezek.embarcadero.app.model.store.ChangeSet;
+import com.scottbezek.embarcadero.app.model.store.Store;
+import com.scottbezek.embarcadero.app.model.store.Store.IncomingChangeListener;
+import com.scottbezek.embarcadero.app.model.store.StoreException;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+import com.scottbezek.embarcadero.app.model.store.StoreTable;
 import com.scottbezek.embarcadero.app.util.DatastoreUtils.DatastoreWithLock.OnSyncListener;
+import com.scottbezek.embarcadero.app.util.InstrumentedReadWriteLock.CallerStats;
+import com.scottbezek.embarcadero.app.util.InstrumentedReadWriteLock.Hold;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
 
 public class DatastoreUtils {
 
     private DatastoreUtils() {}
 
     /**
-     * Calls {@link com.dropbox.sync.android.DbxDatastore#sync()} and returns true if successful, or false if the datastore was deleted remotely. Throws a {@link java.lang.RuntimeException} if something fails while modifying local state.
+     * Calls {@link Store#sync()} and returns true if successful, or false if the datastore was deleted remotely. Throws a {@link java.lang.RuntimeException} if something fails while modifying local state.
      */
     public static boolean syncQuietly(@Nonnull DatastoreWithLock datastoreWithLock) {
         try {
             datastoreWithLock.doSync();
             return true;
-        } catch (NotFound e) {
+        } catch (StoreException.NotFound e) {
             return false;
-        } catch (DbxException e) {
+        } catch (StoreException e) {
             // TODO(sbezek): Should this just return false?
             throw new RuntimeException(e);
         }
@@ -87,165 +95,533 @@ public class DatastoreUtils {
         public abstract void onPotentialDataChange(DbxDatastore datastore);
     }
 
+    /**
+     * A {@link Store} along with the read/write lock that guards it. Queries take the read lock, so
+     * they run concurrently with each other and only wait for modifications and syncs, which take
+     * the write lock.
+     * <p>
+     * Any {@link Store} can be wrapped, but sync listeners are notified through a {@link Handler}
+     * and timed with {@link SystemClock}, and locking checks for the main {@link Looper}, so this
+     * only runs on Android (or an emulator), not on a plain JVM.
+     */
     public static class DatastoreWithLock {
-        private final DbxDatastore mDatastore;
-        private final Object mLock = new Object();
+        private final Store mStore;
+        private final InstrumentedReadWriteLock mLock = new InstrumentedReadWriteLock();
 
-        private Map<OnSyncListener, Handler> mListeners = new HashMap<>();
+        @GuardedBy("mListeners")
+        private final Map<OnSyncListener, SyncDispatch> mListeners = new HashMap<>();
+        private final DispatchStats mDispatchStats = new DispatchStats();
+        private final QueryStats mQueryStats = new QueryStats();
+        private final SyncStats mSyncStats = new SyncStats();
 
-        public DatastoreWithLock(@Nonnull DbxDatastore datastore) {
-            mDatastore = datastore;
+        public DatastoreWithLock(@Nonnull Store store) {
+            mStore = store;
         }
 
         @Nonnull
-        public DbxDatastore getDatastore() {
-            return mDatastore;
+        public Store getStore() {
+            return mStore;
         }
 
+        /**
+         * Acquires shared access to the store, for reading only. The caller name is used to
+         * attribute lock wait and hold times in {@link #getLockStats()}.
+         */
         @Nonnull
-        public Object getLock() {
-            return mLock;
+        public Hold lockForRead(@Nonnull String caller) {
+            if (!isMainThread()) {
+                return mLock.lockForRead(caller);
+            }
+            final long startNanos = System.nanoTime();
+            final Hold hold = mLock.lockForRead(caller);
+            mSyncStats.onMainThreadWaited(System.nanoTime() - startNanos);
+            return hold;
         }
 
-        public Map<String, Set<DbxRecord>> doSync() throws DbxException {
-            if (!Thread.holdsLock(mLock)) {
-                throw new IllegalStateException("Must hold lock during sync");
+        /**
+         * Acquires exclusive access to the store, for modifying or syncing it. Can't be acquired
+         * while holding the read lock.
+         */
+        @Nonnull
+        public Hold lockForWrite(@Nonnull String caller) {
+            if (!isMainThread()) {
+                return mLock.lockForWrite(caller);
+            }
+            final long startNanos = System.nanoTime();
+            final Hold hold = mLock.lockForWrite(caller);
+            mSyncStats.onMainThreadWaited(System.nanoTime() - startNanos);
+            return hold;
+        }
+
+        private static boolean isMainThread() {
+            return Looper.myLooper() == Looper.getMainLooper();
+        }
+
+        /**
+         * Returns lock wait and hold times, keyed by caller name.
+         */
+        @Nonnull
+        public Map<String, CallerStats> getLockStats() {
+            return mLock.getStats();
+        }
+
+        /**
+         * Syncs the store and notifies the sync listeners of the records that changed. Listeners
+         * aren't notified if nothing changed.
+         */
+        @Nonnull
+        public ChangeSet doSync() throws StoreException {
+            if (!mLock.isWriteLockedByCurrentThread()) {
+                throw new IllegalStateException("Must hold write lock during sync");
+            }
+            final long startNanos = System.nanoTime();
+            final ChangeSet changes;
+            try {
+                changes = ChangeSet.of(mStore.sync());
+            } finally {
+                mSyncStats.onSynced(System.nanoTime() - startNanos);
+            }
+            if (changes.isEmpty()) {
+                return changes;
             }
-            Map<String, Set<DbxRecord>> result = mDatastore.sync();
 
             synchronized (mListeners) {
-                for (Entry<OnSyncListener, Handler> entry : mListeners.entrySet()) {
-                    final OnSyncListener listener = entry.getKey();
-                    entry.getValue().postAtTime(new Runnable() {
-                        @Override
-                        public void run() {
-                            listener.onSynced();
-                        }
-                    }, listener, 0);
+                for (SyncDispatch dispatch : mListeners.values()) {
+                    dispatch.onSynced(changes);
                 }
             }
-            return result;
+            return changes;
         }
 
         public void close() {
-            mDatastore.close();
+            mStore.close();
         }
 
         public void addSyncListener(OnSyncListener listener) {
+            addSyncListener(listener, 0);
+        }
+
+        /**
+         * Registers a listener to be notified of syncs on the calling thread's Looper.
+         * Notifications are coalesced: while one is waiting to be delivered, further syncs are
+         * merged into it rather than queued separately.
+         *
+         * @param minIntervalMillis minimum time between notifications to this listener, or 0 to
+         *            deliver them as soon as possible
+         */
+        public void addSyncListener(OnSyncListener listener, long minIntervalMillis) {
             synchronized (mListeners) {
                 if (mListeners.containsKey(listener)) {
                     throw new IllegalStateException("Already registered");
                 }
-                mListeners.put(listener, new Handler(Looper.myLooper()));
+                mListeners.put(listener, new SyncDispatch(listener, new Handler(Looper.myLooper()),
+                        minIntervalMillis, mDispatchStats));
             }
         }
 
         public void removeSyncListener(OnSyncListener listener) {
             synchronized (mListeners) {
-                Handler removed = mListeners.remove(listener);
+                SyncDispatch removed = mListeners.remove(listener);
                 if (removed == null) {
                     throw new IllegalStateException("Not registered");
                 }
-                if (removed.getLooper() != Looper.myLooper()) {
+                if (removed.mHandler.getLooper() != Looper.myLooper()) {
                     throw new IllegalStateException("Must unregister on original Looper");
                 }
-                removed.removeCallbacksAndMessages(listener);
+                removed.mHandler.removeCallbacksAndMessages(removed);
+            }
+        }
+
+        /**
+         * Returns how many sync notifications were delivered, and how many were merged into
+         * another notification instead.
+         */
+        @Nonnull
+        public DispatchStats getDispatchStats() {
+            return mDispatchStats;
+        }
+
+        /**
+         * Executes the query against this datastore, counting it in {@link #getQueryStats()}.
+         *
+         * @param changes everything that changed since the caller last executed this query
+         */
+        public <T> T executeQuery(@Nonnull DatastoreQuery<T> query, @Nonnull ChangeSet changes) throws StoreException {
+            mQueryStats.mExecuted.incrementAndGet();
+            return query.executeOnDatastore(this, changes);
+        }
+
+        /**
+         * Returns whether the query needs to be re-executed after a sync with the given changes.
+         * Queries that don't need to be are counted as skipped in {@link #getQueryStats()}.
+         */
+        public boolean needsRequery(@Nonnull DatastoreQuery<?> query, @Nonnull ChangeSet changes) {
+            if (query.isAffectedBy(changes)) {
+                return true;
             }
+            mQueryStats.mSkipped.incrementAndGet();
+            return false;
+        }
+
+        /**
+         * Returns how many queries were executed against this datastore, and how many requeries
+         * were skipped because a sync didn't touch anything they read.
+         */
+        @Nonnull
+        public QueryStats getQueryStats() {
+            return mQueryStats;
+        }
+
+        /**
+         * Returns how long syncs took, and how long the main thread waited for the lock.
+         */
+        @Nonnull
+        public SyncStats getSyncStats() {
+            return mSyncStats;
         }
 
         public interface OnSyncListener {
             /**
              * A reasonable proxy for data within the datastore having changed. Syncs are invoked
              * after local changes are made, or when remote changes become available.
+             *
+             * @param changes the records changed by every sync since the previous notification
              */
-            void onSynced();
+            void onSynced(@Nonnull ChangeSet changes);
+        }
+
+        @ThreadSafe
+        public static class DispatchStats {
+
+            private final AtomicLong mDelivered = new AtomicLong();
+            private final AtomicLong mCoalesced = new AtomicLong();
+
+            public long getDeliveredCount() {
+                return mDelivered.get();
+            }
+
+            public long getCoalescedCount() {
+                return mCoalesced.get();
+            }
+
+            @Override
+            public String toString() {
+                return "DispatchStats{delivered=" + getDeliveredCount()
+                        + ", coalesced=" + getCoalescedCount() + "}";
+            }
+        }
+
+        @ThreadSafe
+        public static class QueryStats {
+
+            private final AtomicLong mExecuted = new AtomicLong();
+            private final AtomicLong mSkipped = new AtomicLong();
+
+            public long getExecutedCount() {
+                return mExecuted.get();
+            }
+
+            public long getSkippedCount() {
+                return mSkipped.get();
+            }
+
+            @Override
+            public String toString() {
+                return "QueryStats{executed=" + getExecutedCount()
+                        + ", skipped=" + getSkippedCount() + "}";
+            }
+        }
+
+        @ThreadSafe
+        public static class SyncStats {
+
+            private final AtomicLong mSyncs = new AtomicLong();
+            private final AtomicLong mTotalSyncNanos = new AtomicLong();
+            private final AtomicLong mMaxSyncNanos = new AtomicLong();
+            private final AtomicLong mIncomingNotifications = new AtomicLong();
+            private final AtomicLong mIncomingSyncs = new AtomicLong();
+            private final AtomicLong mTotalMainThreadWaitNanos = new AtomicLong();
+            private final AtomicLong mMaxMainThreadWaitNanos = new AtomicLong();
+
+            private void onSynced(long nanos) {
+                mSyncs.incrementAndGet();
+                mTotalSyncNanos.addAndGet(nanos);
+                updateMax(mMaxSyncNanos, nanos);
+            }
+
+            private void onMainThreadWaited(long nanos) {
+                mTotalMainThreadWaitNanos.addAndGet(nanos);
+                updateMax(mMaxMainThreadWaitNanos, nanos);
+            }
+
+            private static void updateMax(AtomicLong max, long value) {
+                long current;
+                while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                }
+            }
+
+            public long getSyncCount() {
+                return mSyncs.get();
+            }
+
+            public long getTotalSyncNanos() {
+                return mTotalSyncNanos.get();
+            }
+
+            public long getMaxSyncNanos() {
+                return mMaxSyncNanos.get();
+            }
+
+            /**
+             * How many times the store reported incoming changes.
+             */
+            public long getIncomingNotificationCount() {
+                return mIncomingNotifications.get();
+            }
+
+            /**
+             * How many syncs were run for incoming changes. Notifications that arrive while a sync
+             * is already pending share it.
+             */
+            public long getIncomingSyncCount() {
+                return mIncomingSyncs.get();
+            }
+
+            public long getTotalMainThreadWaitNanos() {
+                return mTotalMainThreadWaitNanos.get();
+            }
+
+            /**
+             * The longest the main thread was blocked waiting for the lock.
+             */
+            public long getMaxMainThreadWaitNanos() {
+                return mMaxMainThreadWaitNanos.get();
+            }
+
+            @Override
+            public String toString() {
+                return "SyncStats{syncs=" + getSyncCount()
+                        + ", totalSync=" + TimeUnit.NANOSECONDS.toMillis(getTotalSyncNanos())
+                        + "ms, maxSync=" + TimeUnit.NANOSECONDS.toMillis(getMaxSyncNanos())
+                        + "ms, incomingNotifications=" + getIncomingNotificationCount()
+                        + ", incomingSyncs=" + getIncomingSyncCount()
+                        + ", totalMainThreadWait=" + TimeUnit.NANOSECONDS.toMillis(getTotalMainThreadWaitNanos())
+                        + "ms, maxMainThreadWait=" + TimeUnit.NANOSECONDS.toMillis(getMaxMainThreadWaitNanos())
+                        + "ms}";
+            }
+        }
+
+        /**
+         * Delivers sync notifications to one listener, with at most one notification posted to its
+         * Handler at a time.
+         */
+        @ThreadSafe
+        private static class SyncDispatch implements Runnable {
+
+            private final OnSyncListener mListener;
+            private final Handler mHandler;
+            private final long mMinIntervalMillis;
+            private final DispatchStats mStats;
+
+            @GuardedBy("this")
+            @CheckForNull
+            private ChangeSet mPendingChanges = null;
+            @GuardedBy("this")
+            private long mLastDeliveredUptimeMillis = 0;
+
+            SyncDispatch(OnSyncListener listener, Handler handler, long minIntervalMillis, DispatchStats stats) {
+                mListener = listener;
+                mHandler = handler;
+                mMinIntervalMillis = minIntervalMillis;
+                mStats = stats;
+            }
+
+            void onSynced(ChangeSet changes) {
+                final long deliverAtMillis;
+                synchronized (this) {
+                    if (mPendingChanges != null) {
+                        mPendingChanges = mPendingChanges.merge(changes);
+                        mStats.mCoalesced.incrementAndGet();
+                        return;
+                    }
+                    mPendingChanges = changes;
+                    deliverAtMillis = Math.max(SystemClock.uptimeMillis(),
+                            mLastDeliveredUptimeMillis + mMinIntervalMillis);
+                }
+                mHandler.postAtTime(this, this, deliverAtMillis);
+            }
+
+            @Override
+            public void run() {
+                final ChangeSet changes;
+                synchronized (this) {
+                    changes = mPendingChanges;
+                    mPendingChanges = null;
+                    mLastDeliveredUptimeMillis = SystemClock.uptimeMillis();
+                }
+                if (changes != null) {
+                    mStats.mDelivered.incrementAndGet();
+                    mListener.onSynced(changes);
+                }
+            }
         }
     }
 
+    /**
+     * {@link DatastoreWithLock} that syncs as soon as the store reports incoming changes, on a
+     * {@link HandlerThread} of its own. Needs the Android runtime, like its superclass.
+     */
     public static class AutoSyncingDatastoreWithLock extends DatastoreWithLock {
 
         private final String TAG = AutoSyncingDatastoreWithLock.class.getName();
 
-        private final SyncStatusListener mSyncListener = new PotentialIncomingDataListener() {
+        /**
+         * Runs the syncs for incoming changes, so that the thread delivering the notifications
+         * (normally the main thread) never waits for the lock.
+         */
+        private final HandlerThread mSyncThread = new HandlerThread("DatastoreSync");
+        private final CoalescingRunner mIncomingSync;
+
+        @GuardedBy("write lock")
+        private boolean mClosed = false;
+
+        private final IncomingChangeListener mSyncListener = new IncomingChangeListener() {
             @Override
-            public void onPotentialNewIncomingData(DbxDatastore datastore) {
-                // TODO(sbezek): XXX don't do this on the main thread!
-                final DbxDatastore expectedDatastore = getDatastore();
-                if (datastore != expectedDatastore) {
+            public void onIncomingChangesAvailable(@Nonnull Store store) {
+                final Store expectedStore = getStore();
+                if (store != expectedStore) {
                     throw new IllegalStateException();
                 }
-                synchronized (getLock()) {
-                    Log.d(TAG, "Data potentially changed, going to sync...");
-                    syncQuietly(AutoSyncingDatastoreWithLock.this);
-                }
+                getSyncStats().mIncomingNotifications.incrementAndGet();
+                mIncomingSync.request();
             }
         };
 
-        public AutoSyncingDatastoreWithLock(DbxDatastore datastore) {
-            super(datastore);
-            datastore.addSyncStatusListener(mSyncListener);
+        public AutoSyncingDatastoreWithLock(Store store) {
+            super(store);
+            mSyncThread.start();
+            final Handler syncHandler = new Handler(mSyncThread.getLooper());
+            mIncomingSync = new CoalescingRunner(new Executor() {
+                @Override
+                public void execute(@Nonnull Runnable command) {
+                    syncHandler.post(command);
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    final Hold hold = lockForWrite("autoSync");
+                    try {
+                        if (mClosed) {
+                            return;
+                        }
+                        Log.d(TAG, "Data potentially changed, going to sync...");
+                        getSyncStats().mIncomingSyncs.incrementAndGet();
+                        syncQuietly(AutoSyncingDatastoreWithLock.this);
+                    } finally {
+                        hold.release();
+                    }
+                }
+            });
+            store.addIncomingChangeListener(mSyncListener);
         }
 
         @Override
         public void close() {
-            getDatastore().removeSyncStatusListener(mSyncListener);
+            getStore().removeIncomingChangeListener(mSyncListener);
+            // Waits out any sync in progress; later ones will see that the store is closed
+            final Hold hold = lockForWrite("close");
+            try {
+                mClosed = true;
+            } finally {
+                hold.release();
+            }
+            mSyncThread.quit();
             super.close();
         }
     }
 
     public interface DatastoreQuery<T> {
-        T executeOnDatastore(DatastoreWithLock datastoreWithLock) throws DbxException;
+        /**
+         * @param changes everything that changed since the caller last executed this query, or
+         *            {@link ChangeSet#everything()} the first time. Queries that keep state between
+         *            executions can use this to only re-read what changed.
+         */
+        T executeOnDatastore(DatastoreWithLock datastoreWithLock, @Nonnull ChangeSet changes) throws StoreException;
+
+        /**
+         * Returns whether the given changes could alter the result of this query, i.e. whether
+         * any of the tables or records it reads were changed.
+         */
+        boolean isAffectedBy(@Nonnull ChangeSet changes);
     }
 
     public abstract static class DatastoreTableQuery<T> implements DatastoreQuery<T> {
 
         private final String mTableId;
-        private final DbxFields mQuery;
+        private final String mLockCaller;
 
-        public DatastoreTableQuery(String tableId, DbxFields query) {
+        public DatastoreTableQuery(String tableId) {
             mTableId = tableId;
-            mQuery = query;
+            mLockCaller = "tableQuery:" + tableId;
         }
 
         /**
-         * Given a query result, returns an <b>IMMUTABLE</b> snapshot of that data. The input {@link com.dropbox.sync.android.DbxTable.QueryResult}, while mutable, will not change throughout the duration of this call.
+         * Given every record in the table, returns an <b>IMMUTABLE</b> snapshot of that data. The input records, while mutable, will not change throughout the duration of this call.
          */
-        public abstract T createImmutableSnapshot(@Nonnull QueryResult result);
+        public abstract T createImmutableSnapshot(@Nonnull List<StoreRecord> result);
 
         @Override
-        public final T executeOnDatastore(DatastoreWithLock datastoreWithLock) throws DbxException {
-            synchronized (datastoreWithLock.getLock()) {
-                DbxTable table = datastoreWithLock.getDatastore().getTable(mTableId);
-                return createImmutableSnapshot(table.query(mQuery));
+        public final T executeOnDatastore(DatastoreWithLock datastoreWithLock, @Nonnull ChangeSet changes) throws StoreException {
+            final Hold hold = datastoreWithLock.lockForRead(mLockCaller);
+            try {
+                StoreTable table = datastoreWithLock.getStore().getTable(mTableId);
+                return createImmutableSnapshot(table.query());
+            } finally {
+                hold.release();
             }
         }
+
+        @Override
+        public boolean isAffectedBy(@Nonnull ChangeSet changes) {
+            return changes.affectsTable(mTableId);
+        }
     }
 
     public abstract static class DatastoreRowQuery<T> implements DatastoreQuery<T> {
 
         private final String mTableId;
         private final String mRecordId;
+        private final String mLockCaller;
 
         public DatastoreRowQuery(String tableId, String recordId) {
             mTableId = tableId;
             mRecordId = recordId;
+            mLockCaller = "rowQuery:" + tableId;
         }
 
         /**
-         * Given a query result, returns an <b>IMMUTABLE</b> snapshot of that data. The input {@link com.dropbox.sync.android.DbxRecord}, while mutable, will not change throughout the duration of this call.
+         * Given a query result, returns an <b>IMMUTABLE</b> snapshot of that data. The input {@link StoreRecord}, while mutable, will not change throughout the duration of this call.
          */
-        public abstract T createImmutableSnapshot(@CheckForNull DbxRecord result);
+        public abstract T createImmutableSnapshot(@CheckForNull StoreRecord result);
 
         @Override
-        public final T executeOnDatastore(DatastoreWithLock datastoreWithLock) throws DbxException {
-            synchronized (datastoreWithLock.getLock()) {
-                DbxTable table = datastoreWithLock.getDatastore().getTable(mTableId);
+        public final T executeOnDatastore(DatastoreWithLock datastoreWithLock, @Nonnull ChangeSet changes) throws StoreException {
+            final Hold hold = datastoreWithLock.lockForRead(mLockCaller);
+            try {
+                StoreTable table = datastoreWithLock.getStore().getTable(mTableId);
                 Log.d("FOOBAR", "GOING TO GET " + mRecordId);
-                DbxRecord result = table.get(mRecordId);
+                StoreRecord result = table.get(mRecordId);
                 Log.d("FOOBAR", "GOT " + result);
                 return createImmutableSnapshot(result);
+            } finally {
+                hold.release();
             }
         }
+
+        @Override
+        public boolean isAffectedBy(@Nonnull ChangeSet changes) {
+            return changes.affectsRecord(mTableId, mRecordId);
+        }
     }
 
     public interface DataStream<T> {
@@ -259,6 +635,10 @@ public class DatastoreUtils {
         void stop();
     }
 
+    /**
+     * {@link DataStream} that re-executes a query whenever a sync changes what it reads. Queries
+     * run on a background thread, and results are posted to the callback's {@link Looper}.
+     */
     public static class QueryLoader<T> implements DataStream<T> {
 
         private static final String TAG = QueryLoader.class.getName();
@@ -275,11 +655,35 @@ public class DatastoreUtils {
         @GuardedBy("mLock")
         private Handler mCallbackHandler;
 
+        private final ChangeSet.Pending mPendingChanges = new ChangeSet.Pending();
+
+        private final CoalescingRunner mReloader = new CoalescingRunner(mQueryExecutor, new Runnable() {
+            @Override
+            public void run() {
+                final DatastoreWithLock datastore = mDatastoreRef.acquire();
+                try {
+                    notifyCallback(datastore.executeQuery(mQuery, mPendingChanges.take()));
+                } catch (StoreException e) {
+                    // XXX TODO
+                    throw new RuntimeException(e);
+                } finally {
+                    mDatastoreRef.release(datastore);
+                }
+            }
+        });
+
         private final OnSyncListener mChangeListener = new OnSyncListener() {
             @Override
-            public void onSynced() {
-                Log.d(TAG, "Got potential data change, going to trigger reload!");
-                triggerReload();
+            public void onSynced(@Nonnull ChangeSet changes) {
+                final DatastoreWithLock datastore;
+                synchronized (mLock) {
+                    datastore = mLiveDatastore;
+                }
+                if (datastore != null && datastore.needsRequery(mQuery, changes)) {
+                    mPendingChanges.add(changes);
+                    Log.d(TAG, "Got relevant data change, going to trigger reload: " + changes);
+                    mReloader.request();
+                }
             }
         };
 
@@ -297,27 +701,12 @@ public class DatastoreUtils {
                 mCallbackHandler = new Handler(callbackLooper);
                 mLiveDatastore = mDatastoreRef.acquire();
                 mLiveDatastore.addSyncListener(mChangeListener);
-                triggerReload();
+                // Changes made while stopped weren't tracked
+                mPendingChanges.add(ChangeSet.everything());
+                mReloader.request();
             }
         }
 
-        private void triggerReload() {
-            mQueryExecutor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    final DatastoreWithLock datastore = mDatastoreRef.acquire();
-                    try {
-                        notifyCallback(mQuery.executeOnDatastore(datastore));
-                    } catch (DbxException e) {
-                        // XXX TODO
-                        throw new RuntimeException(e);
-                    } finally {
-                        mDatastoreRef.release(datastore);
-                    }
-                }
-            });
-        }
-
         private void notifyCallback(final T data) {
             mCallbackHandler.post(new Runnable() {
                 @Override
@@ -0,0 +1,168 @@
+package com.scottbezek.embarcadero.app.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * {@link ReentrantReadWriteLock} that records, per named caller, how long it waited for and then
+ * held the lock. Each lock call returns a {@link Hold} that must be released in a
+ * <code>finally</code> block:
+ * <pre>
+ * final Hold hold = lock.lockForRead("caller");
+ * try {
+ *     ...
+ * } finally {
+ *     hold.release();
+ * }
+ * </pre>
+ * The read lock can't be upgraded: acquiring the write lock while holding the read lock deadlocks.
+ */
+@ThreadSafe
+public class InstrumentedReadWriteLock {
+
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final ConcurrentMap<String, CallerStats> mStats = new ConcurrentHashMap<>();
+
+    /**
+     * Acquires the shared lock, blocking while any thread holds the write lock.
+     */
+    @Nonnull
+    public Hold lockForRead(@Nonnull String caller) {
+        return acquire(mLock.readLock(), caller);
+    }
+
+    /**
+     * Acquires the exclusive lock, blocking while any other thread holds either lock.
+     */
+    @Nonnull
+    public Hold lockForWrite(@Nonnull String caller) {
+        return acquire(mLock.writeLock(), caller);
+    }
+
+    public boolean isWriteLockedByCurrentThread() {
+        return mLock.isWriteLockedByCurrentThread();
+    }
+
+    /**
+     * Returns a snapshot of the stats for each caller, sorted by caller name.
+     */
+    @Nonnull
+    public Map<String, CallerStats> getStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(mStats));
+    }
+
+    private Hold acquire(Lock lock, String caller) {
+        CallerStats stats = mStats.get(caller);
+        if (stats == null) {
+            final CallerStats newStats = new CallerStats();
+            stats = mStats.putIfAbsent(caller, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        final long requestedNanos = System.nanoTime();
+        lock.lock();
+        final long acquiredNanos = System.nanoTime();
+        stats.onAcquired(acquiredNanos - requestedNanos);
+        return new Hold(lock, stats, acquiredNanos);
+    }
+
+    /**
+     * A single acquisition of the lock.
+     */
+    public static final class Hold {
+
+        private final Lock mLock;
+        private final CallerStats mStats;
+        private final long mAcquiredNanos;
+        private boolean mReleased = false;
+
+        private Hold(Lock lock, CallerStats stats, long acquiredNanos) {
+            mLock = lock;
+            mStats = stats;
+            mAcquiredNanos = acquiredNanos;
+        }
+
+        /**
+         * Releases the lock. Must be called exactly once, on the thread that acquired it.
+         */
+        public void release() {
+            if (mReleased) {
+                throw new IllegalStateException("Already released");
+            }
+            mReleased = true;
+            mStats.onReleased(System.nanoTime() - mAcquiredNanos);
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Lock wait and hold times for one caller.
+     */
+    @ThreadSafe
+    public static class CallerStats {
+
+        private final AtomicLong mAcquisitions = new AtomicLong();
+        private final AtomicLong mTotalWaitNanos = new AtomicLong();
+        private final AtomicLong mMaxWaitNanos = new AtomicLong();
+        private final AtomicLong mTotalHoldNanos = new AtomicLong();
+        private final AtomicLong mMaxHoldNanos = new AtomicLong();
+
+        void onAcquired(long waitNanos) {
+            mAcquisitions.incrementAndGet();
+            mTotalWaitNanos.addAndGet(waitNanos);
+            updateMax(mMaxWaitNanos, waitNanos);
+        }
+
+        void onReleased(long holdNanos) {
+            mTotalHoldNanos.addAndGet(holdNanos);
+            updateMax(mMaxHoldNanos, holdNanos);
+        }
+
+        private static void updateMax(AtomicLong max, long value) {
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        public long getAcquisitions() {
+            return mAcquisitions.get();
+        }
+
+        public long getTotalWaitNanos() {
+            return mTotalWaitNanos.get();
+        }
+
+        public long getMaxWaitNanos() {
+            return mMaxWaitNanos.get();
+        }
+
+        public long getTotalHoldNanos() {
+            return mTotalHoldNanos.get();
+        }
+
+        public long getMaxHoldNanos() {
+            return mMaxHoldNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            final long acquisitions = Math.max(getAcquisitions(), 1);
+            return "{count=" + getAcquisitions()
+                    + ", avgWaitUs=" + getTotalWaitNanos() / acquisitions / 1000
+                    + ", maxWaitUs=" + getMaxWaitNanos() / 1000
+                    + ", avgHoldUs=" + getTotalHoldNanos() / acquisitions / 1000
+                    + ", maxHoldUs=" + getMaxHoldNanos() / 1000 + "}";
+        }
+    }
+}
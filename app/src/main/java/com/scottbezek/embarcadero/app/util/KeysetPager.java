@@ -0,0 +1,45 @@
+package com.scottbezek.embarcadero.app.util;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Keyset pagination over sorted snapshots of a list: pages are located by the last item already
+ * loaded rather than by offset, so inserting or removing items earlier in the list between
+ * snapshots doesn't shift what's been loaded. Lookups are binary searches, so the snapshots must be
+ * {@link java.util.RandomAccess} lists sorted by the pager's comparator, with no two items
+ * comparing equal.
+ */
+@Immutable
+public class KeysetPager<T> {
+
+    private final Comparator<? super T> mComparator;
+
+    public KeysetPager(@Nonnull Comparator<? super T> comparator) {
+        mComparator = comparator;
+    }
+
+    /**
+     * Returns up to <code>limit</code> items following <code>after</code>, or from the start of the
+     * list if it's null. The key itself need not still be in the list.
+     */
+    @Nonnull
+    public List<T> getPage(@Nonnull List<T> sorted, @CheckForNull T after, int limit) {
+        final int start = after == null ? 0 : countThrough(sorted, after);
+        return sorted.subList(start, Math.min(start + limit, sorted.size()));
+    }
+
+    /**
+     * Returns how many items of the sorted list come before or at <code>key</code>, i.e. how many
+     * items are loaded if <code>key</code> was the last one loaded.
+     */
+    public int countThrough(@Nonnull List<T> sorted, @Nonnull T key) {
+        final int index = Collections.binarySearch(sorted, key, mComparator);
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+}
@@ -0,0 +1,162 @@
+package com.scottbezek.embarcadero.app.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.functions.Func2;
+
+/**
+ * Differences between two snapshots of a list whose items have unique keys: which items were
+ * inserted, removed or changed (same key but not equal), and whether the remaining items moved
+ * relative to each other. Computing one is linear in the size of the lists.
+ */
+@Immutable
+public class ListDiff<T> {
+
+    private final List<T> mOldList;
+    private final List<T> mNewList;
+    private final List<Integer> mInsertedPositions;
+    private final List<Integer> mRemovedPositions;
+    private final List<Integer> mChangedPositions;
+    private final boolean mMoved;
+
+    private ListDiff(List<T> oldList, List<T> newList, List<Integer> insertedPositions,
+            List<Integer> removedPositions, List<Integer> changedPositions, boolean moved) {
+        mOldList = oldList;
+        mNewList = newList;
+        mInsertedPositions = insertedPositions;
+        mRemovedPositions = removedPositions;
+        mChangedPositions = changedPositions;
+        mMoved = moved;
+    }
+
+    /**
+     * Computes the differences between two lists. Neither list may contain two items with the same
+     * key, and neither may be modified afterwards.
+     *
+     * @param keyOf returns the key identifying an item across snapshots, e.g. a record id
+     */
+    @Nonnull
+    public static <T> ListDiff<T> compute(@Nonnull List<T> oldList, @Nonnull List<T> newList,
+            @Nonnull Func1<? super T, ?> keyOf) {
+        final Map<Object, Integer> oldPositions = new HashMap<>(oldList.size() * 2);
+        for (int i = 0; i < oldList.size(); i++) {
+            oldPositions.put(keyOf.call(oldList.get(i)), i);
+        }
+
+        final List<Integer> inserted = new ArrayList<>();
+        final List<Integer> changed = new ArrayList<>();
+        final boolean[] kept = new boolean[oldList.size()];
+        int lastOldPosition = -1;
+        boolean moved = false;
+        for (int i = 0; i < newList.size(); i++) {
+            final T newItem = newList.get(i);
+            final Integer oldPosition = oldPositions.get(keyOf.call(newItem));
+            if (oldPosition == null) {
+                inserted.add(i);
+                continue;
+            }
+            kept[oldPosition] = true;
+            // Kept items are in the same relative order iff their old positions keep increasing
+            moved |= oldPosition < lastOldPosition;
+            lastOldPosition = oldPosition;
+            final T oldItem = oldList.get(oldPosition);
+            if (oldItem != newItem && !oldItem.equals(newItem)) {
+                changed.add(i);
+            }
+        }
+
+        final List<Integer> removed = new ArrayList<>();
+        for (int i = 0; i < kept.length; i++) {
+            if (!kept[i]) {
+                removed.add(i);
+            }
+        }
+        return new ListDiff<>(oldList, newList, Collections.unmodifiableList(inserted),
+                Collections.unmodifiableList(removed), Collections.unmodifiableList(changed), moved);
+    }
+
+    /**
+     * Turns a stream of list snapshots into a stream of the differences between each one and the
+     * previous, starting from an empty list. The diffs are computed on the thread emitting the
+     * snapshots.
+     */
+    @Nonnull
+    public static <T> Observable<ListDiff<T>> diffs(@Nonnull Observable<List<T>> snapshots,
+            @Nonnull final Func1<? super T, ?> keyOf) {
+        final List<T> empty = Collections.emptyList();
+        return snapshots.scan(compute(empty, empty, keyOf), new Func2<ListDiff<T>, List<T>, ListDiff<T>>() {
+            @Override
+            public ListDiff<T> call(ListDiff<T> previous, List<T> snapshot) {
+                return compute(previous.getNewList(), snapshot, keyOf);
+            }
+        });
+    }
+
+    @Nonnull
+    public List<T> getOldList() {
+        return mOldList;
+    }
+
+    @Nonnull
+    public List<T> getNewList() {
+        return mNewList;
+    }
+
+    /**
+     * Positions in the new list of items that weren't in the old list, in increasing order.
+     */
+    @Nonnull
+    public List<Integer> getInsertedPositions() {
+        return mInsertedPositions;
+    }
+
+    /**
+     * Positions in the old list of items that aren't in the new list, in increasing order.
+     */
+    @Nonnull
+    public List<Integer> getRemovedPositions() {
+        return mRemovedPositions;
+    }
+
+    /**
+     * Positions in the new list of items that are in both lists but aren't equal, in increasing
+     * order.
+     */
+    @Nonnull
+    public List<Integer> getChangedPositions() {
+        return mChangedPositions;
+    }
+
+    /**
+     * Whether items in both lists are in a different order relative to each other.
+     */
+    public boolean hasMoves() {
+        return mMoved;
+    }
+
+    /**
+     * Whether items were inserted, removed or moved, i.e. positions may have shifted.
+     */
+    public boolean isStructural() {
+        return mMoved || !mInsertedPositions.isEmpty() || !mRemovedPositions.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return !isStructural() && mChangedPositions.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ListDiff{inserted=" + mInsertedPositions.size() + ", removed=" + mRemovedPositions.size()
+                + ", changed=" + mChangedPositions.size() + ", moved=" + mMoved + "}";
+    }
+}
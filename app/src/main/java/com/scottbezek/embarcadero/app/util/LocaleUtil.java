@@ -25,4 +25,11 @@ public class LocaleUtil {
     public static DateFormat getDateFormat(Resources resources, int formatStringRes) {
         return new SimpleDateFormat(resources.getString(formatStringRes), getSupportedLocale(resources));
     }
+
+    /**
+     * Like {@link #getDateFormat}, but safe to use from any thread.
+     */
+    public static ThreadLocalDateFormat getThreadLocalDateFormat(Resources resources, int formatStringRes) {
+        return new ThreadLocalDateFormat(resources.getString(formatStringRes), getSupportedLocale(resources));
+    }
 }
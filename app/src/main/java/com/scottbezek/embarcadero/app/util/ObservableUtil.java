@@ -8,11 +8,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
 
 import rx.Observable;
 import rx.Observable.OnSubscribe;
 import rx.Subscriber;
 import rx.functions.Action0;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.subscriptions.Subscriptions;
 
@@ -50,6 +54,54 @@ public class ObservableUtil {
         });
     }
 
+    /**
+     * Like {@link Observable#distinctUntilChanged()}, but counts how many items were passed through
+     * and how many were suppressed for being equal to the previous one.
+     */
+    public static <T> Observable<T> distinctUntilChanged(final Observable<T> source, final DistinctStats stats) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                // Each subscription compares against its own previous item
+                return source.filter(new Func1<T, Boolean>() {
+                    private boolean mHasPrevious = false;
+                    private T mPrevious;
+
+                    @Override
+                    public Boolean call(T item) {
+                        final boolean distinct = !mHasPrevious
+                                || (mPrevious == null ? item != null : !mPrevious.equals(item));
+                        mHasPrevious = true;
+                        mPrevious = item;
+                        (distinct ? stats.mPassed : stats.mSuppressed).incrementAndGet();
+                        return distinct;
+                    }
+                });
+            }
+        });
+    }
+
+    @ThreadSafe
+    public static class DistinctStats {
+
+        private final AtomicLong mPassed = new AtomicLong();
+        private final AtomicLong mSuppressed = new AtomicLong();
+
+        public long getPassedCount() {
+            return mPassed.get();
+        }
+
+        public long getSuppressedCount() {
+            return mSuppressed.get();
+        }
+
+        @Override
+        public String toString() {
+            return "DistinctStats{passed=" + getPassedCount()
+                    + ", suppressed=" + getSuppressedCount() + "}";
+        }
+    }
+
     public static <T> Func1<List<T>, List<T>>  sort(final Comparator<T> comparator) {
         return new Func1<List<T>, List<T>>() {
             @Override
@@ -0,0 +1,327 @@
+package com.scottbezek.embarcadero.app.util;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded, lock-free queue for handing items from exactly one producer thread to exactly one
+ * consumer thread. Items are stored in a preallocated ring, so enqueueing doesn't allocate, and
+ * either side may block until the other makes progress.
+ * <p>
+ * Slots aren't cleared once consumed, so up to <code>capacity</code> already consumed items may
+ * stay reachable until they're overwritten.
+ */
+@ThreadSafe
+public class SpscRingBuffer<T> {
+
+    private final Object[] mItems;
+    private final long[] mEnqueueNanos;
+    private final int mMask;
+
+    /**
+     * Index of the next item to consume. Normally only advanced by the consumer, but the producer
+     * may also advance it to drop the oldest item, so it's always advanced by compare-and-set.
+     */
+    private final AtomicLong mHead = new AtomicLong();
+
+    /**
+     * Index of the next slot to fill. Only advanced by the producer.
+     */
+    private final AtomicLong mTail = new AtomicLong();
+
+    @CheckForNull
+    private volatile Thread mWaitingConsumer = null;
+    @CheckForNull
+    private volatile Thread mWaitingProducer = null;
+
+    private final Stats mStats = new Stats();
+
+    /**
+     * @param capacity the most items that can be queued at once, rounded up to a power of two
+     */
+    public SpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        mItems = new Object[Math.max(size, 1)];
+        mEnqueueNanos = new long[mItems.length];
+        mMask = mItems.length - 1;
+    }
+
+    public int capacity() {
+        return mItems.length;
+    }
+
+    /**
+     * Number of items currently queued. Only a snapshot if the other thread is active.
+     */
+    public int size() {
+        return (int)(mTail.get() - mHead.get());
+    }
+
+    /**
+     * Adds an item if there's room. Must only be called from the producer thread.
+     *
+     * @return false if the queue was full, in which case the item wasn't added
+     */
+    public boolean offer(@Nonnull T item) {
+        final long tail = mTail.get();
+        if (tail - mHead.get() >= mItems.length) {
+            return false;
+        }
+        publish(tail, item);
+        return true;
+    }
+
+    /**
+     * Adds an item, waiting for room if the queue is full. Must only be called from the producer
+     * thread.
+     */
+    public void put(@Nonnull T item) throws InterruptedException {
+        if (offer(item)) {
+            return;
+        }
+        mStats.mProducerWaits++;
+        mWaitingProducer = Thread.currentThread();
+        try {
+            while (!offer(item)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            mWaitingProducer = null;
+        }
+    }
+
+    /**
+     * Adds an item, dropping the oldest queued item to make room if the queue is full. Must only be
+     * called from the producer thread.
+     *
+     * @return true if an item was dropped
+     */
+    public boolean offerDroppingOldest(@Nonnull T item) {
+        final long tail = mTail.get();
+        boolean dropped = false;
+        while (true) {
+            final long head = mHead.get();
+            if (tail - head < mItems.length) {
+                break;
+            }
+            // If this fails, the consumer just took the oldest item, which also makes room
+            if (mHead.compareAndSet(head, head + 1)) {
+                mStats.mDropped++;
+                dropped = true;
+                break;
+            }
+        }
+        publish(tail, item);
+        return dropped;
+    }
+
+    private void publish(long tail, T item) {
+        final int index = (int)tail & mMask;
+        mItems[index] = item;
+        mEnqueueNanos[index] = System.nanoTime();
+        // A full volatile write, rather than lazySet, so a consumer about to park can't miss it
+        mTail.set(tail + 1);
+
+        mStats.mOffered++;
+        mStats.mMaxDepth = Math.max(mStats.mMaxDepth, tail + 1 - mHead.get());
+        final Thread waiter = mWaitingConsumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Removes the oldest item without blocking. Must only be called from the consumer thread.
+     *
+     * @return the item, or null if the queue was empty
+     */
+    @CheckForNull
+    public T poll() {
+        while (true) {
+            final long head = mHead.get();
+            if (head >= mTail.get()) {
+                return null;
+            }
+            final int index = (int)head & mMask;
+            @SuppressWarnings("unchecked")
+            final T item = (T)mItems[index];
+            final long enqueueNanos = mEnqueueNanos[index];
+            // Fails if the producer dropped this item (and may have reused its slot) meanwhile
+            if (mHead.compareAndSet(head, head + 1)) {
+                mStats.onTaken(System.nanoTime() - enqueueNanos);
+                final Thread waiter = mWaitingProducer;
+                if (waiter != null) {
+                    LockSupport.unpark(waiter);
+                }
+                return item;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest item, waiting for one if the queue is empty. Must only be called from the
+     * consumer thread.
+     */
+    @Nonnull
+    public T take() throws InterruptedException {
+        T item = poll();
+        if (item != null) {
+            return item;
+        }
+        mWaitingConsumer = Thread.currentThread();
+        try {
+            while ((item = poll()) == null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.park(this);
+            }
+            return item;
+        } finally {
+            mWaitingConsumer = null;
+        }
+    }
+
+    /**
+     * Removes the oldest item, waiting up to the specified time for one if the queue is empty. Must
+     * only be called from the consumer thread.
+     *
+     * @return the item, or null if none arrived in time
+     */
+    @CheckForNull
+    public T poll(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        T item = poll();
+        if (item != null || timeout <= 0) {
+            return item;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        mWaitingConsumer = Thread.currentThread();
+        try {
+            while ((item = poll()) == null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return item;
+        } finally {
+            mWaitingConsumer = null;
+        }
+    }
+
+    /**
+     * Removes up to <code>maxItems</code> queued items without blocking and adds them to the
+     * collection, oldest first. Must only be called from the consumer thread.
+     *
+     * @return the number of items transferred
+     */
+    public int drainTo(@Nonnull Collection<? super T> destination, int maxItems) {
+        int count = 0;
+        T item;
+        while (count < maxItems && (item = poll()) != null) {
+            destination.add(item);
+            count++;
+        }
+        return count;
+    }
+
+    public int drainTo(@Nonnull Collection<? super T> destination) {
+        return drainTo(destination, Integer.MAX_VALUE);
+    }
+
+    @Nonnull
+    public Stats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Counters for how the queue has been used. Each counter is only written by one side of the
+     * queue, so reads from elsewhere are approximate but never torn.
+     */
+    @ThreadSafe
+    public static class Stats {
+
+        // Written only by the producer
+        private volatile long mOffered = 0;
+        private volatile long mDropped = 0;
+        private volatile long mProducerWaits = 0;
+        private volatile long mMaxDepth = 0;
+
+        // Written only by the consumer
+        private volatile long mTaken = 0;
+        private volatile long mTotalLatencyNanos = 0;
+        private volatile long mMaxLatencyNanos = 0;
+
+        private void onTaken(long latencyNanos) {
+            mTaken++;
+            mTotalLatencyNanos += latencyNanos;
+            mMaxLatencyNanos = Math.max(mMaxLatencyNanos, latencyNanos);
+        }
+
+        public long getOfferedCount() {
+            return mOffered;
+        }
+
+        /**
+         * How many items were dropped to make room for newer ones.
+         */
+        public long getDroppedCount() {
+            return mDropped;
+        }
+
+        /**
+         * How many times the producer had to wait for room.
+         */
+        public long getProducerWaitCount() {
+            return mProducerWaits;
+        }
+
+        /**
+         * The most items that were queued at once.
+         */
+        public long getMaxDepth() {
+            return mMaxDepth;
+        }
+
+        public long getTakenCount() {
+            return mTaken;
+        }
+
+        /**
+         * Average time between an item being added and taken.
+         */
+        public long getAverageLatencyNanos() {
+            final long taken = mTaken;
+            return taken > 0 ? mTotalLatencyNanos / taken : 0;
+        }
+
+        public long getMaxLatencyNanos() {
+            return mMaxLatencyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{offered=" + getOfferedCount() + ", taken=" + getTakenCount()
+                    + ", dropped=" + getDroppedCount() + ", producerWaits=" + getProducerWaitCount()
+                    + ", maxDepth=" + getMaxDepth()
+                    + ", avgLatency=" + TimeUnit.NANOSECONDS.toMicros(getAverageLatencyNanos())
+                    + "us, maxLatency=" + TimeUnit.NANOSECONDS.toMicros(getMaxLatencyNanos()) + "us}";
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.scottbezek.embarcadero.app.util;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Date format that can be shared between threads. {@link SimpleDateFormat} isn't thread-safe, so
+ * each thread gets its own, along with a reusable {@link Date} so that formatting only allocates
+ * the resulting string.
+ */
+@ThreadSafe
+public class ThreadLocalDateFormat {
+
+    private final ThreadLocal<PerThread> mPerThread;
+
+    public ThreadLocalDateFormat(@Nonnull final String pattern, @Nonnull final Locale locale) {
+        mPerThread = new ThreadLocal<PerThread>() {
+            @Override
+            protected PerThread initialValue() {
+                return new PerThread(new SimpleDateFormat(pattern, locale));
+            }
+        };
+    }
+
+    @Nonnull
+    public String format(long timeMillis) {
+        final PerThread perThread = mPerThread.get();
+        perThread.mDate.setTime(timeMillis);
+        return perThread.mFormat.format(perThread.mDate);
+    }
+
+    private static class PerThread {
+        final DateFormat mFormat;
+        final Date mDate = new Date();
+
+        PerThread(DateFormat format) {
+            mFormat = format;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.data.PathStats;
+import com.scottbezek.embarcadero.app.model.location.AdaptiveSamplingController;
+import com.scottbezek.embarcadero.app.model.location.SamplingTier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays an hour-long trip through the sampling policy used while recording, to compare adaptive
+ * sampling against the fixed one-second, high accuracy request that was used before. The time
+ * taken is just the cost of deciding; the interesting output is the fixes recorded, fixes per hour
+ * and estimated location provider wakeups, reported as auxiliary counters.
+ * <p>
+ * JMH reports counters as a rate, like replays, so divide each counter's score by the replayTrip
+ * score to get its value for one replay.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AdaptiveSamplingBenchmark {
+
+    /**
+     * Displacement the fixed one-second request used, in meters.
+     */
+    private static final float ONE_SECOND_DISPLACEMENT = 0.1f;
+
+    @Param({"ADAPTIVE", "ONE_SECOND"})
+    public String policy;
+
+    private PathCoordBuffer mTrip;
+
+    /**
+     * Totals over the replays in an iteration, reported alongside the replay rate.
+     */
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class ReplayCounters {
+        public long fixes;
+        public long pointsPerHour;
+        public long estimatedWakeups;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            fixes = 0;
+            pointsPerHour = 0;
+            estimatedWakeups = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        mTrip = SyntheticPaths.trip(0);
+    }
+
+    @Benchmark
+    public int replayTrip(ReplayCounters counters) {
+        final AdaptiveSamplingController controller;
+        if ("ADAPTIVE".equals(policy)) {
+            controller = new AdaptiveSamplingController();
+            replay(mTrip, controller, -1);
+        } else {
+            controller = AdaptiveSamplingController.fixed(SamplingTier.FAST);
+            replay(mTrip, controller, ONE_SECOND_DISPLACEMENT);
+        }
+        counters.fixes += controller.getFixCount();
+        counters.pointsPerHour += Math.round(controller.getPointsPerHour());
+        counters.estimatedWakeups += controller.getEstimatedWakeups();
+        return controller.getFixCount();
+    }
+
+    /**
+     * Feeds the controller the fixes that would have been delivered from the once-per-second
+     * ground truth, given the interval and displacement of the tier it was in at the time.
+     *
+     * @param displacement overrides the tier's smallest displacement, if not negative
+     */
+    private static void replay(PathCoordBuffer trip, AdaptiveSamplingController controller, float displacement) {
+        int last = 0;
+        SamplingTier tier = controller.onFix(trip.getTime(0), trip.getLatitude(0), trip.getLongitude(0),
+                (float)trip.getAccuracy(0));
+        for (int i = 1; i < trip.size(); i++) {
+            if (trip.getTime(i) - trip.getTime(last) < tier.getIntervalMillis()) {
+                continue;
+            }
+            if (PathStats.distanceMeters(trip.getLatitude(last), trip.getLongitude(last),
+                    trip.getLatitude(i), trip.getLongitude(i))
+                    < (displacement >= 0 ? displacement : tier.getSmallestDisplacementMeters())) {
+                continue;
+            }
+            tier = controller.onFix(trip.getTime(i), trip.getLatitude(i), trip.getLongitude(i),
+                    (float)trip.getAccuracy(i));
+            last = i;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.util.Asserts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the varargs {@link Asserts#assertAllEqual(int, int...)} checks used when reading
+ * legacy path records, compared to comparing the values directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AssertsBenchmark {
+
+    // Non-final so the values aren't constant-folded
+    private int mA = 42;
+    private int mB = 42;
+    private int mC = 42;
+    private int mD = 42;
+    private int mE = 42;
+
+    @Benchmark
+    public void assertAllEqualVarargs() {
+        Asserts.assertAllEqual(mA, mB, mC, mD, mE);
+    }
+
+    @Benchmark
+    public void assertAllEqualInline() {
+        if (mA != mB || mA != mC || mA != mD || mA != mE) {
+            throw new AssertionError();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.util.InstrumentedReadWriteLock;
+import com.scottbezek.embarcadero.app.util.InstrumentedReadWriteLock.Hold;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query threads reading the datastore while the recording thread writes to it, with a single
+ * monitor for everything versus {@link InstrumentedReadWriteLock}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatastoreLockBenchmark {
+
+    // Building a query snapshot takes a lot longer than appending a batch of fixes
+    private static final long QUERY_TOKENS = 2000;
+    private static final long WRITE_TOKENS = 200;
+
+    private final Object mMonitor = new Object();
+    private final InstrumentedReadWriteLock mLock = new InstrumentedReadWriteLock();
+
+    @Benchmark
+    @Group("monitor")
+    @GroupThreads(3)
+    public void monitorQuery() {
+        synchronized (mMonitor) {
+            Blackhole.consumeCPU(QUERY_TOKENS);
+        }
+    }
+
+    @Benchmark
+    @Group("monitor")
+    @GroupThreads(1)
+    public void monitorWrite() {
+        synchronized (mMonitor) {
+            Blackhole.consumeCPU(WRITE_TOKENS);
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public void readWriteQuery() {
+        final Hold hold = mLock.lockForRead("query");
+        try {
+            Blackhole.consumeCPU(QUERY_TOKENS);
+        } finally {
+            hold.release();
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void readWriteWrite() {
+        final Hold hold = mLock.lockForWrite("recording");
+        try {
+            Blackhole.consumeCPU(WRITE_TOKENS);
+        } finally {
+            hold.release();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathListItem;
+import com.scottbezek.embarcadero.app.model.data.PathStats;
+import com.scottbezek.embarcadero.app.util.ListDiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.functions.Func1;
+
+/**
+ * Diffing consecutive path list snapshots, as done off the main thread for every sync while the
+ * path list is shown. The common case is the path being recorded getting a new point count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ListDiffBenchmark {
+
+    private static final Func1<PathListItem, String> RECORD_ID = new Func1<PathListItem, String>() {
+        @Override
+        public String call(PathListItem item) {
+            return item.getRecordId();
+        }
+    };
+
+    @Param({"100", "1000", "10000"})
+    public int itemCount;
+
+    private List<PathListItem> mOldList;
+    private List<PathListItem> mOneChanged;
+    private List<PathListItem> mOneInserted;
+
+    @Setup
+    public void setUp() {
+        mOldList = new ArrayList<>(itemCount);
+        long startTime = 1500000000000L;
+        for (int i = 0; i < itemCount; i++) {
+            startTime -= 60 * 60 * 1000;
+            mOldList.add(new PathListItem("record" + i, null, startTime, startTime + 1000, PathStats.EMPTY));
+        }
+
+        mOneChanged = new ArrayList<>(mOldList);
+        final PathListItem newest = mOldList.get(0);
+        mOneChanged.set(0, new PathListItem(newest.getRecordId(), null, newest.getStartTimeMillis(),
+                null, new PathStats(1, 0, 0, 0, 0, 0, 0, 0, 0, 0)));
+
+        mOneInserted = new ArrayList<>(itemCount + 1);
+        mOneInserted.add(new PathListItem("recordNew", null, 1600000000000L, null, PathStats.EMPTY));
+        mOneInserted.addAll(mOldList);
+    }
+
+    @Benchmark
+    public ListDiff<PathListItem> oneChanged() {
+        return ListDiff.compute(mOldList, mOneChanged, RECORD_ID);
+    }
+
+    @Benchmark
+    public ListDiff<PathListItem> oneInserted() {
+        return ListDiff.compute(mOldList, mOneInserted, RECORD_ID);
+    }
+}
@@ -0,0 +1,91 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoord;
+import com.scottbezek.embarcadero.app.util.SpscRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handoff throughput between the thread delivering location updates and the recording thread,
+ * using the same take-then-drain pattern as the <code>PathManager</code> recording loop, for both
+ * the {@link LinkedBlockingDeque} <code>LocationUpdateQueue</code> used to wrap and the
+ * {@link SpscRingBuffer} it uses now. {@link PathCoord}s stand in for
+ * <code>android.location.Location</code>, which can't be created off-device.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LocationQueueBenchmark {
+
+    private static final PathCoord FIX = new PathCoord(0, 37.7955, -122.3937, 10, 0);
+
+    // Bounded only so a producer outpacing the consumer can't exhaust the heap
+    private final BlockingQueue<PathCoord> mQueue = new LinkedBlockingDeque<>(1024);
+
+    private final SpscRingBuffer<PathCoord> mRingBuffer = new SpscRingBuffer<>(1024);
+
+    @State(Scope.Thread)
+    public static class ConsumerState {
+        final List<PathCoord> mBatch = new ArrayList<>();
+    }
+
+    @Benchmark
+    @Group("linkedDeque")
+    @GroupThreads(1)
+    public boolean produce() {
+        return mQueue.offer(FIX);
+    }
+
+    @Benchmark
+    @Group("linkedDeque")
+    @GroupThreads(1)
+    public int consume(ConsumerState consumer) throws InterruptedException {
+        // Poll rather than take, so the consumer can't block forever once the producer stops
+        final PathCoord first = mQueue.poll(10, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return 0;
+        }
+        consumer.mBatch.clear();
+        consumer.mBatch.add(first);
+        return 1 + mQueue.drainTo(consumer.mBatch);
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public boolean produceRing() {
+        return mRingBuffer.offer(FIX);
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public int consumeRing(ConsumerState consumer) throws InterruptedException {
+        final PathCoord first = mRingBuffer.poll(10, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return 0;
+        }
+        consumer.mBatch.clear();
+        consumer.mBatch.add(first);
+        return 1 + mRingBuffer.drainTo(consumer.mBatch);
+    }
+}
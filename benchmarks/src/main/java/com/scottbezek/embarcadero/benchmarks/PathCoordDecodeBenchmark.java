@@ -0,0 +1,79 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoord;
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.data.PathCoordReader;
+import com.scottbezek.embarcadero.app.model.store.InMemoryStore;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+import com.scottbezek.embarcadero.app.model.store.StoreTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a whole path record, as done on every change to the path being viewed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathCoordDecodeBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int pointCount;
+
+    private StoreRecord mLegacyRecord;
+    private StoreRecord mChunkedRecord;
+
+    @Setup
+    public void setUp() {
+        final PathCoordBuffer coords = SyntheticPaths.walk(pointCount, 0);
+        final StoreTable paths = new InMemoryStore().getTable("paths");
+        mLegacyRecord = PathRecords.insertLegacy(paths, coords);
+        mChunkedRecord = PathRecords.insertChunked(paths, coords);
+    }
+
+    @Benchmark
+    public List<PathCoord> listFromLegacy() {
+        return PathCoord.listFrom(mLegacyRecord);
+    }
+
+    @Benchmark
+    public List<PathCoord> listFromChunked() {
+        return PathCoord.listFrom(mChunkedRecord);
+    }
+
+    @Benchmark
+    public PathCoordBuffer bufferFromLegacy() {
+        return PathCoordBuffer.from(PathCoordReader.from(mLegacyRecord));
+    }
+
+    @Benchmark
+    public PathCoordBuffer bufferFromChunked() {
+        return PathCoordBuffer.from(PathCoordReader.from(mChunkedRecord));
+    }
+
+    /**
+     * Reading just the last few points, as done for incremental updates while recording.
+     */
+    @Benchmark
+    public PathCoordBuffer tailFromChunked() {
+        return new PathCoordBuffer.Builder()
+                .addAll(PathCoordReader.from(mChunkedRecord, pointCount - 5))
+                .build();
+    }
+}
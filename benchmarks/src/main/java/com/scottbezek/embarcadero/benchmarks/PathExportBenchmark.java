@@ -0,0 +1,77 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.export.PathExportFormat;
+import com.scottbezek.embarcadero.app.model.export.PathExportWriter;
+import com.scottbezek.embarcadero.app.model.store.InMemoryStore;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+import com.scottbezek.embarcadero.app.model.store.StoreTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export throughput, in points per second, for a million-point path in each format. The output is
+ * thrown away, so this measures reading and formatting rather than the disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathExportBenchmark {
+
+    private static final int POINT_COUNT = 1000000;
+
+    @Param({"GPX", "KML", "GEOJSON"})
+    public String format;
+
+    private StoreRecord mRecord;
+    private PathExportFormat mFormat;
+
+    @Setup
+    public void setUp() {
+        final StoreTable paths = new InMemoryStore().getTable("paths");
+        mRecord = PathRecords.insertChunked(paths, SyntheticPaths.walk(POINT_COUNT, 0));
+        mFormat = PathExportFormat.valueOf(format);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public long export() throws IOException {
+        final CountingOutputStream out = new CountingOutputStream();
+        final PathExportWriter writer = PathExportWriter.create(mFormat, out);
+        writer.writePath(mRecord);
+        writer.close();
+        return out.mCount;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        long mCount = 0;
+
+        @Override
+        public void write(int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mCount += len;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathListItem;
+import com.scottbezek.embarcadero.app.model.data.PathStats;
+import com.scottbezek.embarcadero.app.util.KeysetPager;
+import com.scottbezek.embarcadero.app.util.ObservableUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import rx.functions.Func1;
+
+/**
+ * Work done for each new snapshot of the path list while the drawer is shown, before the visible
+ * rows are rebound. A device isn't available to measure frame times, so this compares the parts
+ * that scale with the number of paths: the old sort-and-copy on every sync, versus the sorted
+ * index's snapshot (off the main thread) and re-anchoring the loaded pages (on it).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathListPagingBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1000", "10000"})
+    public int itemCount;
+
+    /**
+     * How many pages the user has scrolled through.
+     */
+    @Param({"1", "4"})
+    public int loadedPages;
+
+    private final Func1<List<PathListItem>, List<PathListItem>> mSort =
+            ObservableUtil.sort(PathListItem.sDescendingStartTimeComparator);
+    private final KeysetPager<PathListItem> mPager =
+            new KeysetPager<>(PathListItem.sDescendingStartTimeComparator);
+
+    private List<PathListItem> mUnsortedItems;
+    private TreeSet<PathListItem> mSortedIndex;
+    private List<PathListItem> mSnapshot;
+    private PathListItem mLastLoaded;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        mUnsortedItems = new ArrayList<>(itemCount);
+        long startTime = 1400000000000L;
+        for (int i = 0; i < itemCount; i++) {
+            startTime += random.nextInt(3 * 24 * 60 * 60 * 1000);
+            mUnsortedItems.add(new PathListItem("record" + i, "Path " + i, startTime,
+                    startTime + random.nextInt(60 * 60 * 1000),
+                    new PathStats(random.nextInt(10000), 0, 0, 0, 0, 0, 0, 0, 0, 0)));
+        }
+        Collections.shuffle(mUnsortedItems, random);
+
+        mSortedIndex = new TreeSet<>(PathListItem.sDescendingStartTimeComparator);
+        mSortedIndex.addAll(mUnsortedItems);
+        mSnapshot = Collections.unmodifiableList(new ArrayList<>(mSortedIndex));
+        mLastLoaded = mSnapshot.get(Math.min(loadedPages * PAGE_SIZE, itemCount) - 1);
+    }
+
+    /**
+     * Previously: sort every sync, then copy into the adapter.
+     */
+    @Benchmark
+    public List<PathListItem> sortAndCopy() {
+        return new ArrayList<>(mSort.call(mUnsortedItems));
+    }
+
+    /**
+     * Now, off the main thread: copy the already sorted index into a snapshot.
+     */
+    @Benchmark
+    public List<PathListItem> sortedIndexSnapshot() {
+        return Collections.unmodifiableList(new ArrayList<>(mSortedIndex));
+    }
+
+    /**
+     * Now, on the main thread: find how much of the new snapshot is loaded.
+     */
+    @Benchmark
+    public int keysetReanchor() {
+        return mPager.countThrough(mSnapshot, mLastLoaded);
+    }
+
+    /**
+     * Loading the next page while scrolling.
+     */
+    @Benchmark
+    public List<PathListItem> keysetNextPage() {
+        return mPager.getPage(mSnapshot, mLastLoaded, PAGE_SIZE);
+    }
+}
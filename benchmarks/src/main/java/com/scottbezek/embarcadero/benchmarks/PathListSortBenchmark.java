@@ -0,0 +1,72 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathListItem;
+import com.scottbezek.embarcadero.app.model.data.PathStats;
+import com.scottbezek.embarcadero.app.util.ObservableUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import rx.functions.Func1;
+
+/**
+ * Sorting the path list, as done on every datastore sync while the path list is shown.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathListSortBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int itemCount;
+
+    /**
+     * Whether the input arrives already sorted (true) or in arbitrary order (false).
+     */
+    @Param({"false", "true"})
+    public boolean presorted;
+
+    private final Func1<List<PathListItem>, List<PathListItem>> mSort =
+            ObservableUtil.sort(PathListItem.sAscendingStartTimeComparator);
+
+    private List<PathListItem> mItems;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        mItems = new ArrayList<>(itemCount);
+        long startTime = 1400000000000L;
+        for (int i = 0; i < itemCount; i++) {
+            startTime += random.nextInt(3 * 24 * 60 * 60 * 1000);
+            mItems.add(new PathListItem("record" + i, "Path " + i, startTime,
+                    startTime + random.nextInt(60 * 60 * 1000),
+                    new PathStats(random.nextInt(10000), 0, 0, 0, 0, 0, 0, 0, 0, 0)));
+        }
+        if (!presorted) {
+            Collections.shuffle(mItems, random);
+        }
+    }
+
+    @Benchmark
+    public List<PathListItem> sort() {
+        return mSort.call(mItems);
+    }
+}
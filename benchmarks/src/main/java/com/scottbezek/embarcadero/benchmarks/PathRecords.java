@@ -0,0 +1,56 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.data.PathCoordWriter;
+import com.scottbezek.embarcadero.app.model.data.PathRecordFields;
+import com.scottbezek.embarcadero.app.model.store.StoreList;
+import com.scottbezek.embarcadero.app.model.store.StoreRecord;
+import com.scottbezek.embarcadero.app.model.store.StoreTable;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Creates path records in either storage format.
+ */
+public class PathRecords {
+
+    private PathRecords() {}
+
+    /**
+     * Inserts a path record using the five parallel lists of the legacy format.
+     */
+    @Nonnull
+    public static StoreRecord insertLegacy(@Nonnull StoreTable table, @Nonnull PathCoordBuffer coords) {
+        final StoreRecord record = table.insert();
+        record.set(PathRecordFields.START_TIME, coords.isEmpty() ? 0 : coords.getTime(0));
+        final StoreList times = record.getOrCreateList(PathRecordFields.COORD_TIME);
+        final StoreList latitudes = record.getOrCreateList(PathRecordFields.COORD_LATITUDE);
+        final StoreList longitudes = record.getOrCreateList(PathRecordFields.COORD_LONGITUDE);
+        final StoreList accuracies = record.getOrCreateList(PathRecordFields.COORD_ACCURACY);
+        final StoreList altitudes = record.getOrCreateList(PathRecordFields.COORD_ALTITUDE);
+        for (int i = 0; i < coords.size(); i++) {
+            times.add(coords.getTime(i));
+            latitudes.add(coords.getLatitude(i));
+            longitudes.add(coords.getLongitude(i));
+            accuracies.add(coords.getAccuracy(i));
+            altitudes.add(coords.getAltitude(i));
+        }
+        return record;
+    }
+
+    /**
+     * Inserts a path record using the chunked format, written by {@link PathCoordWriter}.
+     */
+    @Nonnull
+    public static StoreRecord insertChunked(@Nonnull StoreTable table, @Nonnull PathCoordBuffer coords) {
+        final StoreRecord record = table.insert();
+        record.set(PathRecordFields.START_TIME, coords.isEmpty() ? 0 : coords.getTime(0));
+        final PathCoordWriter writer = new PathCoordWriter(record);
+        for (int i = 0; i < coords.size(); i++) {
+            writer.add(coords.getTime(i), coords.getLatitude(i), coords.getLongitude(i),
+                    coords.getAccuracy(i), coords.getAltitude(i));
+        }
+        writer.flush();
+        return record;
+    }
+}
@@ -0,0 +1,69 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.geo.PathSimplifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simplification time against path length, for an already recorded path being opened.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathSimplifierBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int pointCount;
+
+    private PathCoordBuffer mCoords;
+
+    @Setup
+    public void setUp() {
+        mCoords = SyntheticPaths.walk(pointCount, 0);
+    }
+
+    /**
+     * Simplifies the path for a single zoom level.
+     */
+    @Benchmark
+    public int simplifyOneLevel() {
+        return load().getLevel(15).size();
+    }
+
+    /**
+     * Simplifies the path for every zoom level.
+     */
+    @Benchmark
+    public int simplifyAllLevels() {
+        final PathSimplifier simplifier = load();
+        int total = 0;
+        for (int zoom = 0; zoom <= PathSimplifier.MAX_ZOOM; zoom++) {
+            total += simplifier.getLevel(zoom).size();
+        }
+        return total;
+    }
+
+    private PathSimplifier load() {
+        final PathSimplifier simplifier = new PathSimplifier();
+        for (int i = 0; i < mCoords.size(); i++) {
+            simplifier.append(mCoords.getLatitude(i), mCoords.getLongitude(i));
+        }
+        return simplifier;
+    }
+}
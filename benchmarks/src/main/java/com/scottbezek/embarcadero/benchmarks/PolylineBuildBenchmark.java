@@ -0,0 +1,113 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.geo.PathSimplifier;
+import com.scottbezek.embarcadero.app.model.geo.PathSimplifier.DetailLevel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Building the polyline points for <code>MapScreen.updateMap</code> over a whole recording, with
+ * one map update per fix. Each operation is a full recording of <code>pointCount</code> fixes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PolylineBuildBenchmark {
+
+    private static final float ZOOM = 15;
+
+    @Param({"1000", "5000"})
+    public int pointCount;
+
+    private PathCoordBuffer mCoords;
+
+    @Setup
+    public void setUp() {
+        mCoords = SyntheticPaths.walk(pointCount, 0);
+    }
+
+    /**
+     * Rebuilds every point on every update.
+     */
+    @Benchmark
+    public void fullRebuild(Blackhole blackhole) {
+        for (int size = 1; size <= pointCount; size++) {
+            final List<MapPoint> points = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                points.add(new MapPoint(mCoords.getLatitude(i), mCoords.getLongitude(i)));
+            }
+            blackhole.consume(points);
+        }
+    }
+
+    /**
+     * Appends each new point to the existing list.
+     */
+    @Benchmark
+    public void incrementalAppend(Blackhole blackhole) {
+        final List<MapPoint> points = new ArrayList<>();
+        for (int i = 0; i < pointCount; i++) {
+            points.add(new MapPoint(mCoords.getLatitude(i), mCoords.getLongitude(i)));
+            blackhole.consume(points);
+        }
+    }
+
+    /**
+     * Feeds each new point to a {@link PathSimplifier} and replaces only the unstable tail of the
+     * simplified points, as <code>MapScreen</code> does.
+     */
+    @Benchmark
+    public void incrementalSimplified(Blackhole blackhole) {
+        final PathSimplifier simplifier = new PathSimplifier();
+        final List<MapPoint> points = new ArrayList<>();
+        int stableCount = 0;
+        for (int i = 0; i < pointCount; i++) {
+            simplifier.append(mCoords.getLatitude(i), mCoords.getLongitude(i));
+            final DetailLevel level = simplifier.getLevel(ZOOM);
+            while (points.size() > stableCount) {
+                points.remove(points.size() - 1);
+            }
+            for (int j = points.size(); j < level.size(); j++) {
+                final int index = level.getIndex(j);
+                points.add(new MapPoint(mCoords.getLatitude(index), mCoords.getLongitude(index)));
+            }
+            stableCount = level.countBefore(simplifier.getStableCount());
+            blackhole.consume(points);
+        }
+    }
+
+    /**
+     * Stand-in for the Maps API <code>LatLng</code>, which can't be loaded off-device.
+     */
+    @Immutable
+    private static final class MapPoint {
+        private final double mLatitude;
+        private final double mLongitude;
+
+        MapPoint(double latitude, double longitude) {
+            mLatitude = latitude;
+            mLongitude = longitude;
+        }
+    }
+}
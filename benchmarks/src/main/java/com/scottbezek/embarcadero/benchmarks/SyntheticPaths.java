@@ -0,0 +1,108 @@
+package com.scottbezek.embarcadero.benchmarks;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Generates repeatable, roughly realistic recorded paths with one fix per second, starting near the
+ * Embarcadero.
+ */
+public class SyntheticPaths {
+
+    private static final double METERS_PER_DEGREE_LATITUDE = 111320;
+    private static final long START_TIME_MILLIS = 1400000000000L;
+
+    /**
+     * How much of one fix's GPS error carries over to the next, a second later.
+     */
+    private static final double ERROR_CORRELATION = 0.9;
+
+    private SyntheticPaths() {}
+
+    /**
+     * A walk with a wandering heading.
+     */
+    @Nonnull
+    public static PathCoordBuffer walk(int pointCount, long seed) {
+        final Random random = new Random(seed);
+        final PathCoordBuffer.Builder builder = new PathCoordBuffer.Builder(pointCount);
+
+        double latitude = 37.7955;
+        double longitude = -122.3937;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < pointCount; i++) {
+            heading += random.nextGaussian() * 0.2;
+            final double stepMeters = Math.max(0, 1.4 + random.nextGaussian() * 0.3);
+            latitude += stepMeters * Math.cos(heading) / METERS_PER_DEGREE_LATITUDE;
+            longitude += stepMeters * Math.sin(heading)
+                    / (METERS_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(latitude)));
+            builder.add(START_TIME_MILLIS + i * 1000L, latitude, longitude,
+                    5 + random.nextInt(20), 10 + random.nextGaussian());
+        }
+        return builder.build();
+    }
+
+    /**
+     * An hour-long trip with a mix of movement: waiting, walking, driving through town with stops
+     * and turns, on the highway, and parked indoors. Positions carry GPS error that drifts around
+     * the true position by about the reported accuracy, which is poorer indoors, so a device that
+     * isn't moving still appears to.
+     */
+    @Nonnull
+    public static PathCoordBuffer trip(long seed) {
+        // Seconds spent in each leg, the speed in m/s, and whether it's indoors
+        final int[] legSeconds = {300, 600, 900, 1200, 600};
+        final double[] legSpeeds = {0, 1.4, 8, 28, 0};
+        final boolean[] legIndoors = {false, false, false, false, true};
+        int pointCount = 0;
+        for (int seconds : legSeconds) {
+            pointCount += seconds;
+        }
+
+        final Random random = new Random(seed);
+        final PathCoordBuffer.Builder builder = new PathCoordBuffer.Builder(pointCount);
+        double latitude = 37.7955;
+        double longitude = -122.3937;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        // Error in meters north and east, correlated from one fix to the next
+        double errorNorth = 0;
+        double errorEast = 0;
+        int i = 0;
+        for (int leg = 0; leg < legSeconds.length; leg++) {
+            for (int second = 0; second < legSeconds[leg]; second++, i++) {
+                double speed = legSpeeds[leg];
+                if (speed > 0 && speed < 20) {
+                    if (random.nextInt(120) == 0) {
+                        // Turn a corner
+                        heading += (random.nextBoolean() ? 1 : -1) * Math.PI / 2;
+                    }
+                    if (second % 90 < 20) {
+                        // Waiting at a light or crossing
+                        speed = 0;
+                    }
+                }
+                heading += random.nextGaussian() * 0.02;
+                final double stepMeters = Math.max(0, speed + random.nextGaussian() * 0.3 * speed / 5);
+                latitude += stepMeters * Math.cos(heading) / METERS_PER_DEGREE_LATITUDE;
+                longitude += stepMeters * Math.sin(heading) / metersPerDegreeLongitude(latitude);
+
+                final int accuracy = legIndoors[leg] ? 20 + random.nextInt(30) : 5 + random.nextInt(10);
+                final double errorStep = accuracy / 2.0 * Math.sqrt(1 - ERROR_CORRELATION * ERROR_CORRELATION);
+                errorNorth = ERROR_CORRELATION * errorNorth + random.nextGaussian() * errorStep;
+                errorEast = ERROR_CORRELATION * errorEast + random.nextGaussian() * errorStep;
+                builder.add(START_TIME_MILLIS + i * 1000L,
+                        latitude + errorNorth / METERS_PER_DEGREE_LATITUDE,
+                        longitude + errorEast / metersPerDegreeLongitude(latitude),
+                        accuracy, 10 + random.nextGaussian());
+            }
+        }
+        return builder.build();
+    }
+
+    private static double metersPerDegreeLongitude(double latitude) {
+        return METERS_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(latitude));
+    }
+}
@@ -0,0 +1,152 @@
+package com.scottbezek.embarcadero.app.model.geo;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.geo.PathSimplifier.DetailLevel;
+import com.scottbezek.embarcadero.benchmarks.SyntheticPaths;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PathSimplifierTest {
+
+    private static final double EARTH_RADIUS_METERS = 6371009;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+
+    /**
+     * Slack for rounding differences between the test's projection and the simplifier's.
+     */
+    private static final double EPSILON_METERS = 1e-6;
+
+    /**
+     * Long enough to span several of the simplifier's windows.
+     */
+    private static final int POINT_COUNT = 1500;
+
+    /**
+     * Not a divisor of the window size, so the levels are read with the last window part full.
+     */
+    private static final int APPEND_STEP = 37;
+
+    private static PathCoordBuffer[] tracks() {
+        return new PathCoordBuffer[] {
+                SyntheticPaths.walk(POINT_COUNT, 0),
+                SyntheticPaths.walk(POINT_COUNT, 1),
+                SyntheticPaths.trip(0),
+        };
+    }
+
+    @Test
+    public void incrementalMatchesWholeTrack() {
+        for (PathCoordBuffer track : tracks()) {
+            final PathSimplifier incremental = new PathSimplifier();
+            for (int i = 0; i < track.size(); i++) {
+                incremental.append(track.getLatitude(i), track.getLongitude(i));
+                if (i % APPEND_STEP == 0) {
+                    for (int zoom = 0; zoom <= PathSimplifier.MAX_ZOOM; zoom++) {
+                        incremental.getLevel(zoom);
+                    }
+                }
+            }
+            final PathSimplifier whole = simplify(track, track.size());
+            for (int zoom = 0; zoom <= PathSimplifier.MAX_ZOOM; zoom++) {
+                assertArrayEquals("zoom " + zoom, indices(whole.getLevel(zoom)),
+                        indices(incremental.getLevel(zoom)));
+            }
+        }
+    }
+
+    @Test
+    public void stablePointsNeverChange() {
+        for (PathCoordBuffer track : tracks()) {
+            final PathSimplifier simplifier = new PathSimplifier();
+            final int[][] stableIndices = new int[PathSimplifier.MAX_ZOOM + 1][0];
+            for (int i = 0; i < track.size(); i++) {
+                simplifier.append(track.getLatitude(i), track.getLongitude(i));
+                if (i % APPEND_STEP != 0) {
+                    continue;
+                }
+                final int stableCount = simplifier.getStableCount();
+                for (int zoom = 0; zoom <= PathSimplifier.MAX_ZOOM; zoom++) {
+                    final DetailLevel level = simplifier.getLevel(zoom);
+                    final int[] previous = stableIndices[zoom];
+                    assertTrue(level.size() >= previous.length);
+                    assertArrayEquals("zoom " + zoom + " at " + i, previous,
+                            Arrays.copyOf(indices(level), previous.length));
+                    stableIndices[zoom] = Arrays.copyOf(indices(level), level.countBefore(stableCount));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void droppedPointsWithinTolerance() {
+        for (PathCoordBuffer track : tracks()) {
+            final PathSimplifier simplifier = simplify(track, track.size());
+            final double longitudeScale = METERS_PER_DEGREE * Math.cos(Math.toRadians(track.getLatitude(0)));
+            for (int zoom = 0; zoom <= PathSimplifier.MAX_ZOOM; zoom++) {
+                final DetailLevel level = simplifier.getLevel(zoom);
+                final double tolerance = simplifier.getToleranceMeters(zoom);
+                for (int k = 0; k + 1 < level.size(); k++) {
+                    final int a = level.getIndex(k);
+                    final int b = level.getIndex(k + 1);
+                    for (int p = a + 1; p < b; p++) {
+                        final double distance = distanceToSegment(track, longitudeScale, p, a, b);
+                        assertTrue("zoom " + zoom + ", point " + p + " is " + distance + "m away",
+                                distance <= tolerance + EPSILON_METERS);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void endpointsAlwaysKept() {
+        final PathCoordBuffer track = SyntheticPaths.walk(POINT_COUNT, 0);
+        for (int size = 1; size <= track.size(); size += APPEND_STEP) {
+            final PathSimplifier simplifier = simplify(track, size);
+            for (int zoom = 0; zoom <= PathSimplifier.MAX_ZOOM; zoom++) {
+                final DetailLevel level = simplifier.getLevel(zoom);
+                assertEquals(0, level.getIndex(0));
+                assertEquals(size - 1, level.getIndex(level.size() - 1));
+            }
+        }
+    }
+
+    private static PathSimplifier simplify(PathCoordBuffer track, int count) {
+        final PathSimplifier simplifier = new PathSimplifier();
+        for (int i = 0; i < count; i++) {
+            simplifier.append(track.getLatitude(i), track.getLongitude(i));
+        }
+        return simplifier;
+    }
+
+    private static int[] indices(DetailLevel level) {
+        final int[] indices = new int[level.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = level.getIndex(i);
+        }
+        return indices;
+    }
+
+    /**
+     * Distance in meters, using the same equirectangular projection as the simplifier.
+     */
+    private static double distanceToSegment(PathCoordBuffer track, double longitudeScale, int p, int a, int b) {
+        final double ax = track.getLongitude(a) * longitudeScale;
+        final double ay = track.getLatitude(a) * METERS_PER_DEGREE;
+        final double dx = track.getLongitude(b) * longitudeScale - ax;
+        final double dy = track.getLatitude(b) * METERS_PER_DEGREE - ay;
+        final double px = track.getLongitude(p) * longitudeScale - ax;
+        final double py = track.getLatitude(p) * METERS_PER_DEGREE - ay;
+        final double lengthSquared = dx * dx + dy * dy;
+        final double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+        final double ex = px - t * dx;
+        final double ey = py - t * dy;
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+}
@@ -0,0 +1,184 @@
+package com.scottbezek.embarcadero.app.model.location;
+
+import com.scottbezek.embarcadero.app.model.data.PathCoordBuffer;
+import com.scottbezek.embarcadero.app.model.data.PathStats;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSamplingControllerTest {
+
+    private static final double METERS_PER_DEGREE_LATITUDE = 111320;
+    private static final long START_TIME_MILLIS = 1400000000000L;
+
+    private static final int OUTDOOR_ACCURACY = 5;
+    private static final int INDOOR_ACCURACY = 30;
+
+    private static final double DRIVING_SPEED = 15;
+    private static final double TOWN_SPEED = 8;
+
+    @Test
+    public void leavesStationaryOnFirstFixAfterShortPark() {
+        checkDriveOff(10 * 60);
+    }
+
+    @Test
+    public void leavesStationaryOnFirstFixAfterLongPark() {
+        checkDriveOff(60 * 60);
+    }
+
+    @Test
+    public void noiseWhileParkedIndoorsOnlyCostsSingleFixes() {
+        for (long seed = 0; seed < 5; seed++) {
+            final int parkSeconds = 20 * 60;
+            final SamplingTier[] tiers = replay(new Trace(seed)
+                    .move(120, TOWN_SPEED, OUTDOOR_ACCURACY)
+                    .move(parkSeconds, 0, INDOOR_ACCURACY)
+                    .build());
+            final int stationaryAt = firstSecondAt(tiers, SamplingTier.STATIONARY, 120);
+            assertTrue("seed " + seed + " never became stationary", stationaryAt >= 0);
+            // An outlier can look like the device set off, but the next fix, one walking interval
+            // later, shows it didn't
+            final int maxExcursionSeconds = (int)(2 * SamplingTier.WALKING.getIntervalMillis() / 1000);
+            int excursionSeconds = 0;
+            int totalExcursionSeconds = 0;
+            for (int second = stationaryAt; second < tiers.length; second++) {
+                if (tiers[second] == SamplingTier.STATIONARY) {
+                    excursionSeconds = 0;
+                } else {
+                    excursionSeconds++;
+                    totalExcursionSeconds++;
+                    assertTrue("seed " + seed + " at " + second, excursionSeconds <= maxExcursionSeconds);
+                }
+            }
+            assertTrue("seed " + seed + " out for " + totalExcursionSeconds + "s",
+                    totalExcursionSeconds < (tiers.length - stationaryAt) / 20);
+        }
+    }
+
+    @Test
+    public void turnsBoostTier() {
+        for (long seed = 0; seed < 5; seed++) {
+            final int turnAt = 120;
+            final SamplingTier[] tiers = replay(new Trace(seed)
+                    .move(turnAt, TOWN_SPEED, OUTDOOR_ACCURACY)
+                    .turn(90)
+                    .move(120, TOWN_SPEED, OUTDOOR_ACCURACY)
+                    .build());
+            assertEquals("seed " + seed, SamplingTier.MOVING, tiers[turnAt - 1]);
+            final int boostedAt = firstSecondAt(tiers, SamplingTier.FAST, turnAt);
+            assertTrue("seed " + seed + " boosted at " + boostedAt,
+                    boostedAt >= turnAt && boostedAt <= turnAt + 5);
+            // Back down once the boost and the usual delay for a slower tier are over
+            assertEquals("seed " + seed, SamplingTier.MOVING, tiers[turnAt + 40]);
+            assertEquals("seed " + seed, SamplingTier.MOVING, tiers[tiers.length - 1]);
+        }
+    }
+
+    private static void checkDriveOff(int parkSeconds) {
+        for (long seed = 0; seed < 5; seed++) {
+            final SamplingTier[] tiers = replay(new Trace(seed)
+                    .move(parkSeconds, 0, OUTDOOR_ACCURACY)
+                    .move(120, DRIVING_SPEED, OUTDOOR_ACCURACY)
+                    .build());
+            assertEquals("seed " + seed, SamplingTier.STATIONARY, tiers[parkSeconds - 1]);
+            // Fixes are up to one stationary interval apart, so the first fix after setting off
+            // comes within that, and must leave stationary straight away
+            final int intervalSeconds = (int)(SamplingTier.STATIONARY.getIntervalMillis() / 1000);
+            assertTrue("seed " + seed, tiers[parkSeconds + intervalSeconds] != SamplingTier.STATIONARY);
+            final int fastAt = firstSecondAt(tiers, SamplingTier.FAST, parkSeconds);
+            assertTrue("seed " + seed + " fast at " + fastAt,
+                    fastAt >= 0 && fastAt <= parkSeconds + intervalSeconds + 15);
+            assertEquals("seed " + seed, SamplingTier.FAST, tiers[tiers.length - 1]);
+        }
+    }
+
+    private static int firstSecondAt(SamplingTier[] tiers, SamplingTier tier, int fromSecond) {
+        for (int second = fromSecond; second < tiers.length; second++) {
+            if (tiers[second] == tier) {
+                return second;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replays a once-per-second trace through a controller, delivering only the fixes the location
+     * provider would have, given the interval and displacement of the tier at the time.
+     *
+     * @return the tier in effect at each second of the trace
+     */
+    private static SamplingTier[] replay(PathCoordBuffer trace) {
+        final AdaptiveSamplingController controller = new AdaptiveSamplingController();
+        final SamplingTier[] tiers = new SamplingTier[trace.size()];
+        int last = 0;
+        SamplingTier tier = controller.onFix(trace.getTime(0), trace.getLatitude(0), trace.getLongitude(0),
+                (float)trace.getAccuracy(0));
+        tiers[0] = tier;
+        for (int i = 1; i < trace.size(); i++) {
+            if (trace.getTime(i) - trace.getTime(last) >= tier.getIntervalMillis()
+                    && PathStats.distanceMeters(trace.getLatitude(last), trace.getLongitude(last),
+                            trace.getLatitude(i), trace.getLongitude(i)) >= tier.getSmallestDisplacementMeters()) {
+                tier = controller.onFix(trace.getTime(i), trace.getLatitude(i), trace.getLongitude(i),
+                        (float)trace.getAccuracy(i));
+                last = i;
+            }
+            tiers[i] = tier;
+        }
+        return tiers;
+    }
+
+    /**
+     * Builds a once-per-second trace of straight legs, with GPS error that drifts around the true
+     * position by about the accuracy.
+     */
+    private static class Trace {
+
+        private static final double ERROR_CORRELATION = 0.9;
+
+        private final Random mRandom;
+        private final PathCoordBuffer.Builder mBuilder = new PathCoordBuffer.Builder();
+        private double mLatitude = 37.7955;
+        private double mLongitude = -122.3937;
+        private double mHeading;
+        private double mErrorNorth = 0;
+        private double mErrorEast = 0;
+
+        Trace(long seed) {
+            mRandom = new Random(seed);
+            mHeading = mRandom.nextDouble() * 2 * Math.PI;
+        }
+
+        Trace move(int seconds, double speed, int accuracy) {
+            for (int second = 0; second < seconds; second++) {
+                mLatitude += speed * Math.cos(mHeading) / METERS_PER_DEGREE_LATITUDE;
+                mLongitude += speed * Math.sin(mHeading) / metersPerDegreeLongitude();
+                final double errorStep = accuracy / 2.0 * Math.sqrt(1 - ERROR_CORRELATION * ERROR_CORRELATION);
+                mErrorNorth = ERROR_CORRELATION * mErrorNorth + mRandom.nextGaussian() * errorStep;
+                mErrorEast = ERROR_CORRELATION * mErrorEast + mRandom.nextGaussian() * errorStep;
+                mBuilder.add(START_TIME_MILLIS + mBuilder.size() * 1000L,
+                        mLatitude + mErrorNorth / METERS_PER_DEGREE_LATITUDE,
+                        mLongitude + mErrorEast / metersPerDegreeLongitude(),
+                        accuracy, 10);
+            }
+            return this;
+        }
+
+        Trace turn(double degrees) {
+            mHeading += Math.toRadians(degrees);
+            return this;
+        }
+
+        PathCoordBuffer build() {
+            return mBuilder.build();
+        }
+
+        private double metersPerDegreeLongitude() {
+            return METERS_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(mLatitude));
+        }
+    }
+}